@@ -14,6 +14,7 @@ jdk.sjavac/com/sun/tools/javac/util/StringUtils.java \
 sjavac.transforms/sjavac/transforms/*.java \
 sjavac.test/sjavac/test/*.java \
 sjavac.test/sjavac/test/util/*.java \
+sjavac.bench/sjavac/bench/*.java \
 $ANTSRC
 
 echo Creating jar
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The inventory of the files found in the output directories (bin, gensrc
+ * and headers). The directories are walked in parallel and the result is a
+ * sorted list of file paths.
+ *
+ * The listing of every directory is remembered together with the last
+ * modified timestamp of the directory and stored in the javac_state file.
+ * Adding, removing or renaming an entry in a directory updates the timestamp
+ * of that directory, thus a directory whose timestamp is unchanged since the
+ * previous build does not have to be listed again. On a no-op build this
+ * reduces the inventory to one stat per directory.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class ArtifactInventory {
+
+    // Directory listings loaded from the javac_state file.
+    private Map<String,Listing> recorded = new ConcurrentHashMap<>();
+    // Directory listings found during the latest scan.
+    private Map<String,Listing> found = new ConcurrentHashMap<>();
+
+    private int numThreads;
+
+    // Deletions and moves are handed to the worker threads in batches of this size.
+    private static final int BATCH_SIZE = 256;
+
+    // Statistics for the timing log.
+    private AtomicInteger numListed = new AtomicInteger();
+    private AtomicInteger numReused = new AtomicInteger();
+
+    public ArtifactInventory(int numCores) {
+        numThreads = numCores > 0 ? numCores : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The entries of a single directory, subdirectories are kept apart
+     * from files so that the walk can continue without stat:ing the files.
+     */
+    static class Listing {
+        final long lastModified;
+        final List<String> files;
+        final List<String> dirs;
+
+        Listing(long lastModified, List<String> files, List<String> dirs) {
+            this.lastModified = lastModified;
+            this.files = files;
+            this.dirs = dirs;
+        }
+    }
+
+    /**
+     * Find all files below the given directories. Returns a sorted list of
+     * paths for each directory, in the same order as the directories were given.
+     * A null directory, or a directory that does not exist, gives an empty list.
+     */
+    public List<List<String>> scan(File... dirs) {
+        long start = System.currentTimeMillis();
+        numListed.set(0);
+        numReused.set(0);
+        found.clear();
+        List<List<String>> result = new ArrayList<>();
+        for (File dir : dirs) {
+            List<String> files = new ArrayList<>();
+            if (dir != null && dir.isDirectory()) {
+                files = walk(dir);
+                Collections.sort(files);
+            }
+            result.add(files);
+        }
+        long stop = System.currentTimeMillis();
+        Log.timing("Inventory of output dirs took "+(stop-start)+"ms, listed "+numListed.get()+
+                   " dirs and reused "+numReused.get()+" unchanged listings.");
+        return result;
+    }
+
+    /**
+     * Find all files below the given directory. The directories at the same
+     * depth are listed in parallel.
+     */
+    private List<String> walk(File root) {
+        final List<String> files = Collections.synchronizedList(new ArrayList<String>());
+        List<File> level = Collections.singletonList(root);
+        while (!level.isEmpty()) {
+            final List<File> next = Collections.synchronizedList(new ArrayList<File>());
+            List<Callable<Boolean>> listings = new ArrayList<>();
+            for (final File dir : level) {
+                listings.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        Listing listing = list(dir);
+                        for (String n : listing.files) {
+                            files.add(new File(dir, n).getPath());
+                        }
+                        for (String n : listing.dirs) {
+                            next.add(new File(dir, n));
+                        }
+                        return true;
+                    }
+                });
+            }
+            Util.runAll(listings, numThreads);
+            level = next;
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * List a single directory, unless the listing from the previous build
+     * is still valid.
+     */
+    private Listing list(File dir) {
+        String key = dir.getPath();
+        long lastModified = dir.lastModified();
+        Listing prev = recorded.get(key);
+        if (prev != null && prev.lastModified == lastModified) {
+            numReused.incrementAndGet();
+            found.put(key, prev);
+            return prev;
+        }
+        numListed.incrementAndGet();
+        List<String> files = new ArrayList<>();
+        List<String> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir.toPath())) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                if (Files.isRegularFile(p)) {
+                    files.add(n);
+                } else if (Files.isDirectory(p)) {
+                    dirs.add(n);
+                }
+            }
+        } catch (IOException e) {
+            Log.debug("Could not list "+key+": "+e.getMessage());
+        }
+        Listing l = new Listing(lastModified, files, dirs);
+        found.put(key, l);
+        return l;
+    }
+
+    /**
+     * Delete the given files. A file that does not exist is silently skipped,
+     * thus there is no need to check for existence before calling this method.
+     * Large sets of files are split into batches that are deleted in parallel.
+     */
+    public void deleteAll(Collection<File> files) {
+        forAll("Deleting", files, new FileOperation() {
+            @Override
+            public void apply(File f) throws IOException {
+                Files.deleteIfExists(f.toPath());
+            }
+        });
+    }
+
+    /**
+     * Move the given files aside, to the same name with the suffix appended.
+     * A file that does not exist is silently skipped.
+     */
+    public void moveAsideAll(Collection<File> files, final String suffix) {
+        forAll("Moving aside", files, new FileOperation() {
+            @Override
+            public void apply(File f) throws IOException {
+                try {
+                    Path p = f.toPath();
+                    Files.move(p, p.resolveSibling(p.getFileName()+suffix),
+                               StandardCopyOption.REPLACE_EXISTING);
+                } catch (NoSuchFileException e) {
+                    // Already gone.
+                }
+            }
+        });
+    }
+
+    /**
+     * Move the given files back from where moveAsideAll put them. A file that
+     * has been written again in the meantime is kept, and the file that was
+     * moved aside is removed instead.
+     */
+    public void moveBackAll(Collection<File> files, final String suffix) {
+        forAll("Moving back", files, new FileOperation() {
+            @Override
+            public void apply(File f) throws IOException {
+                Path p = f.toPath();
+                Path aside = p.resolveSibling(p.getFileName()+suffix);
+                if (Files.exists(p)) {
+                    Files.deleteIfExists(aside);
+                    return;
+                }
+                try {
+                    Files.move(aside, p);
+                } catch (NoSuchFileException e) {
+                    // Already gone.
+                }
+            }
+        });
+    }
+
+    private interface FileOperation {
+        void apply(File f) throws IOException;
+    }
+
+    /**
+     * Apply the operation to all files, in batches on the worker threads
+     * if there are many files.
+     */
+    private void forAll(String what, Collection<File> files, final FileOperation op) {
+        if (files.isEmpty()) return;
+        long start = System.currentTimeMillis();
+        final List<File> all = new ArrayList<>(files);
+        if (numThreads == 1 || all.size() <= BATCH_SIZE) {
+            applyBatch(all, op);
+        } else {
+            List<Callable<Boolean>> batches = new ArrayList<>();
+            for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+                final List<File> batch = all.subList(i, Math.min(i+BATCH_SIZE, all.size()));
+                batches.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        applyBatch(batch, op);
+                        return true;
+                    }
+                });
+            }
+            Util.runAll(batches, numThreads);
+        }
+        long stop = System.currentTimeMillis();
+        Log.timing(what+" "+all.size()+" artifacts took "+(stop-start)+"ms");
+    }
+
+    private static void applyBatch(List<File> batch, FileOperation op) {
+        for (File f : batch) {
+            try {
+                op.apply(f);
+            } catch (IOException e) {
+                if (Log.isDebugging()) {
+                    Log.debug("Could not handle "+f.getPath()+": "+e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the last modified timestamps of all files in the given directories,
+     * with a single listing per directory. The directories are not recursed into
+     * and are listed in parallel. Returns a map from file path to timestamp,
+     * files that do not exist are simply not in the map.
+     */
+    public Map<String,Long> listTimestamps(Collection<File> dirs) {
+        final Map<String,Long> timestamps = new ConcurrentHashMap<>();
+        List<Callable<Boolean>> listings = new ArrayList<>();
+        for (final File dir : dirs) {
+            listings.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    listTimestamps(dir, timestamps);
+                    return true;
+                }
+            });
+        }
+        Util.runAll(listings, numThreads);
+        return timestamps;
+    }
+
+    private static void listTimestamps(final File dir, final Map<String,Long> timestamps) {
+        // Walking with depth 1 hands us the attributes of each entry, on some
+        // platforms they even come straight from the directory listing.
+        try {
+            Files.walkFileTree(dir.toPath(), EnumSet.noneOf(FileVisitOption.class), 1,
+                               new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        timestamps.put(new File(dir, p.getFileName().toString()).getPath(),
+                                       attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult visitFileFailed(Path p, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Log.debug("Could not list "+dir.getPath()+": "+e.getMessage());
+        }
+    }
+
+    /**
+     * Load a directory listing line from the javac_state file.
+     * The format is: O dir timestamp file file dir/ ...
+     */
+    public void load(String l) {
+        String[] parts = l.split(" ");
+        if (parts.length < 3) return;
+        long lastModified;
+        try {
+            lastModified = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        List<String> files = new ArrayList<>();
+        List<String> dirs = new ArrayList<>();
+        for (int i = 3; i < parts.length; ++i) {
+            String n = parts[i];
+            if (n.endsWith("/")) {
+                dirs.add(n.substring(0, n.length()-1));
+            } else {
+                files.add(n);
+            }
+        }
+        recorded.put(parts[1], new Listing(lastModified, files, dirs));
+    }
+
+    /**
+     * Save the directory listings found by the latest scan.
+     */
+    public void save(StringBuilder b) {
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>(found.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            Listing l = found.get(key);
+            if (!isStorable(key, l, now)) continue;
+            b.append("O ").append(key).append(" ").append(l.lastModified);
+            for (String n : l.files) {
+                b.append(" ").append(n);
+            }
+            for (String n : l.dirs) {
+                b.append(" ").append(n).append("/");
+            }
+            b.append("\n");
+        }
+    }
+
+    /**
+     * Names with spaces cannot be stored in the line format. Also, if the file
+     * system only records whole seconds, a directory modified within the last
+     * couple of seconds could be modified again without its timestamp changing.
+     * Such directories are listed again in the next build instead.
+     */
+    private static boolean isStorable(String key, Listing l, long now) {
+        if (key.indexOf(' ') != -1 || l.lastModified == 0) return false;
+        if (l.lastModified % 1000 == 0 && now - l.lastModified < 2000) return false;
+        for (String n : l.files) {
+            if (n.indexOf(' ') != -1) return false;
+        }
+        for (String n : l.dirs) {
+            if (n.indexOf(' ') != -1) return false;
+        }
+        return true;
+    }
+}
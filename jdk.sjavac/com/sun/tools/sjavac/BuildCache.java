@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A content addressed cache of compiled packages, shared between builds.
+ *
+ * An entry is found using a key calculated from the package name, the contents
+ * of the sources of the package and the command line stored in javac_state.
+ * The entry stores the artifacts of the package, its pubapi, its dependencies
+ * and fingerprints of the pubapis of the packages and classpath classes it depends
+ * upon. An entry can only be used when these fingerprints still match, it is
+ * JavacState that knows the current pubapis and makes that decision.
+ *
+ * The layout of the cache dir is xx/key/variant/entry, where xx are the first
+ * two characters of the key and the variant is a fingerprint of the pubapis the
+ * package was compiled against. The artifacts are stored next to the entry file,
+ * below b for the bin dir and below h for the header dir.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class BuildCache {
+
+    /**
+     * The result of compiling a single package.
+     */
+    public static class Entry {
+        // The package name, module:pkg
+        String pkg;
+        // The packages this package depends on.
+        Set<String> dependencies = new HashSet<>();
+        // The pubapi of the compiled sources of this package.
+        List<String> pubapi = new ArrayList<>();
+        // Fingerprints of the pubapis of source packages that this package depends on.
+        Map<String,String> fingerprints = new TreeMap<>();
+        // The hashes of the pubapis of the referenced classpath classes, per classpath package.
+        Map<String,Map<String,String>> classpathClasses = new TreeMap<>();
+        // The directory of the stored entry.
+        Path dir;
+        // Artifacts relative to the bin dir and the header dir.
+        List<String> binArtifacts = new ArrayList<>();
+        List<String> headerArtifacts = new ArrayList<>();
+
+        Entry() {
+        }
+
+        public Entry(String pkg) {
+            this.pkg = pkg;
+        }
+
+        public String pkg() { return pkg; }
+        public Set<String> dependencies() { return dependencies; }
+        public List<String> pubapi() { return pubapi; }
+        public Map<String,String> fingerprints() { return fingerprints; }
+        public Map<String,Map<String,String>> classpathClasses() { return classpathClasses; }
+
+        /**
+         * The classpath classes referenced, as a map from package to class names.
+         */
+        public Map<String,Set<String>> classpathDependencies() {
+            Map<String,Set<String>> deps = new HashMap<>();
+            for (Map.Entry<String,Map<String,String>> e : classpathClasses.entrySet()) {
+                deps.put(e.getKey(), new HashSet<>(e.getValue().keySet()));
+            }
+            return deps;
+        }
+    }
+
+    private final Path dir;
+    private final String args;
+
+    public BuildCache(Path dir, String args) {
+        this.dir = dir;
+        // The output dirs are part of the command line. Make them relative to the
+        // current dir, thus builds of the same project in other places, for example
+        // on other machines sharing a remote cache, use the same keys.
+        String cwd = Paths.get("").toAbsolutePath().toString();
+        this.args = args.replace(cwd+File.separator, "");
+    }
+
+    /**
+     * Calculate the key for the package compiled from these sources.
+     */
+    public String key(String pkg, Set<URI> sources) throws IOException {
+        MessageDigest md = newDigest();
+        md.update(args.getBytes(StandardCharsets.UTF_8));
+        md.update((byte)0);
+        md.update(System.getProperty("java.version").getBytes(StandardCharsets.UTF_8));
+        md.update((byte)0);
+        md.update(pkg.getBytes(StandardCharsets.UTF_8));
+        // Sources of a package can come from several source roots, thus only
+        // the file names are part of the key, sorted to get a stable key.
+        Map<String,File> sorted = new TreeMap<>();
+        for (URI u : sources) {
+            File f = new File(u);
+            sorted.put(f.getName(), f);
+        }
+        byte[] buf = new byte[8192];
+        for (Map.Entry<String,File> e : sorted.entrySet()) {
+            md.update((byte)0);
+            md.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+            try (InputStream in = Files.newInputStream(e.getValue().toPath())) {
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    md.update(buf, 0, n);
+                }
+            }
+        }
+        return hex(md.digest());
+    }
+
+    /**
+     * A fingerprint of a pubapi.
+     */
+    public static String fingerprint(List<String> pubapi) {
+        MessageDigest md = newDigest();
+        for (String l : pubapi) {
+            md.update(l.getBytes(StandardCharsets.UTF_8));
+            md.update((byte)'\n');
+        }
+        return hex(md.digest());
+    }
+
+    /**
+     * A fingerprint of the content of a file.
+     */
+    public static String fingerprint(byte[] content) {
+        MessageDigest md = newDigest();
+        md.update(content);
+        return hex(md.digest());
+    }
+
+    /**
+     * The hash of the pubapi of a classpath class, given the pubapi lines
+     * of the class. The hash is found in its PUBAPI line, which also contains
+     * the location and timestamp of the class file. These are ignored, a rebuilt
+     * jar with the same classes should not invalidate the cache.
+     */
+    public static String classpathHash(List<String> api) {
+        for (String s : api) {
+            if (s.startsWith("PUBAPI ")) {
+                int p = s.indexOf(' ', 7);
+                int pp = s.indexOf(' ', p+1);
+                if (p != -1 && pp != -1) {
+                    return s.substring(p+1, pp);
+                }
+            }
+        }
+        return fingerprint(api);
+    }
+
+    private Path keyDir(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Find the entries for the key. There is one entry for every set of pubapis
+     * that the package has been compiled against, e.g. one for each branch.
+     * The most recently stored entry comes first.
+     */
+    public List<Entry> lookup(String key) {
+        List<Entry> entries = new ArrayList<>();
+        Path kd = keyDir(key);
+        if (!Files.isDirectory(kd)) {
+            return entries;
+        }
+        final Map<Entry,Long> stored = new HashMap<>();
+        try (DirectoryStream<Path> variants = Files.newDirectoryStream(kd)) {
+            for (Path v : variants) {
+                Path f = v.resolve("entry");
+                if (!Files.exists(f)) {
+                    continue;
+                }
+                Entry e = load(f);
+                if (e.pkg != null) {
+                    e.dir = v;
+                    entries.add(e);
+                    stored.put(e, Files.getLastModifiedTime(f).toMillis());
+                }
+            }
+        } catch (IOException e) {
+            Log.warn("Could not read the build cache entry "+kd+": "+e.getMessage());
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(stored.get(b), stored.get(a));
+            }
+        });
+        return entries;
+    }
+
+    private static Entry load(Path f) throws IOException {
+        Entry e = new Entry();
+        for (String l : Files.readAllLines(f, StandardCharsets.UTF_8)) {
+            if (l.length() < 2) {
+                continue;
+            }
+            String v = l.substring(2);
+            switch (l.charAt(0)) {
+            case 'P': e.pkg = v; break;
+            case 'D': e.dependencies.add(v); break;
+            case 'I': e.pubapi.add(v); break;
+            case 'F': {
+                int p = v.lastIndexOf(' ');
+                e.fingerprints.put(v.substring(0, p), v.substring(p+1));
+                break;
+            }
+            case 'Z': {
+                int p = v.indexOf(' ');
+                int pp = v.lastIndexOf(' ');
+                Map<String,String> classes = e.classpathClasses.get(v.substring(0, p));
+                if (classes == null) {
+                    classes = new TreeMap<>();
+                    e.classpathClasses.put(v.substring(0, p), classes);
+                }
+                classes.put(v.substring(p+1, pp), v.substring(pp+1));
+                break;
+            }
+            case 'B': e.binArtifacts.add(v); break;
+            case 'H': e.headerArtifacts.add(v); break;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Copy the artifacts of the entry into the output dirs.
+     * Returns the artifacts as they are stored in javac_state.
+     */
+    public Set<URI> restore(Entry e, File binDir, File headerDir) throws IOException {
+        if (!e.headerArtifacts.isEmpty() && headerDir == null) {
+            throw new IOException("the entry has headers but no header dir (-h) was specified");
+        }
+        Set<URI> artifacts = new HashSet<>();
+        for (String a : e.binArtifacts) {
+            artifacts.add(copy(resolveUnder(e.dir.resolve("b"), a), resolveUnder(binDir.toPath(), a)));
+        }
+        for (String a : e.headerArtifacts) {
+            artifacts.add(copy(resolveUnder(e.dir.resolve("h"), a), resolveUnder(headerDir.toPath(), a)));
+        }
+        return artifacts;
+    }
+
+    /**
+     * Resolve the name of an artifact against its root. The names come from
+     * entries that may have been fetched from a remote cache, thus a name
+     * that leads outside of the root is refused.
+     */
+    static Path resolveUnder(Path root, String name) throws IOException {
+        Path r = root.toAbsolutePath().normalize();
+        Path p = r.resolve(name).normalize();
+        if (name.isEmpty() || new File(name).isAbsolute() || p.equals(r) || !p.startsWith(r)) {
+            throw new IOException("the artifact "+name+" is not below "+root);
+        }
+        return p;
+    }
+
+    /**
+     * Store the entry and its artifacts under the key. The entry is first written
+     * into a temporary directory that is then moved into place, thus a concurrent
+     * build never sees a half written entry. Returns the directory of the new entry,
+     * or null if the entry was already stored, or if some artifact could not be
+     * stored, for example because it was not below the bin or header dir.
+     */
+    public Path store(String key, Entry e, Set<URI> artifacts, File binDir, File headerDir) throws IOException {
+        Path binRoot = binDir.toPath().toAbsolutePath().normalize();
+        Path headerRoot = headerDir != null ? headerDir.toPath().toAbsolutePath().normalize() : null;
+        for (URI u : artifacts) {
+            Path a = new File(u).toPath().toAbsolutePath().normalize();
+            if (a.startsWith(binRoot)) {
+                e.binArtifacts.add(binRoot.relativize(a).toString());
+            } else if (headerRoot != null && a.startsWith(headerRoot)) {
+                e.headerArtifacts.add(headerRoot.relativize(a).toString());
+            } else {
+                return null;
+            }
+        }
+        Collections.sort(e.binArtifacts);
+        Collections.sort(e.headerArtifacts);
+
+        // The entries of a key are told apart by the pubapis they were compiled against.
+        StringBuilder against = new StringBuilder();
+        saveDependencies(e, against);
+        Path target = keyDir(key).resolve(fingerprint(Collections.singletonList(against.toString())).substring(0, 16));
+        if (Files.exists(target.resolve("entry"))) {
+            // Compiled against the same pubapis, thus the same as the stored entry.
+            Files.setLastModifiedTime(target.resolve("entry"), FileTime.fromMillis(System.currentTimeMillis()));
+            return null;
+        }
+        Path tmp = dir.resolve("tmp").resolve(key+"."+System.nanoTime());
+        Files.createDirectories(tmp);
+        try {
+            for (String a : e.binArtifacts) {
+                copy(resolveUnder(binRoot, a), resolveUnder(tmp.resolve("b"), a));
+            }
+            for (String a : e.headerArtifacts) {
+                copy(resolveUnder(headerRoot, a), resolveUnder(tmp.resolve("h"), a));
+            }
+            Files.write(tmp.resolve("entry"), save(e).getBytes(StandardCharsets.UTF_8));
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException ex) {
+            // Most likely another build stored the same entry at the same time.
+            deleteRecursively(tmp);
+            if (Files.exists(target.resolve("entry"))) {
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Pack a stored entry and its artifacts into a zip, to be sent to a remote cache.
+     */
+    public static byte[] pack(Path entryDir) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            final Path root = entryDir;
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    // Zip entries always use forward slashes.
+                    zip.putNextEntry(new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, zip);
+                    zip.closeEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Store an entry packed by a remote cache, unless it is already stored.
+     */
+    public void unpack(String key, String variant, byte[] packed) throws IOException {
+        if (!variant.matches("[0-9a-f]+")) {
+            throw new IOException("bad variant "+variant);
+        }
+        Path target = keyDir(key).resolve(variant);
+        if (Files.exists(target.resolve("entry"))) {
+            return;
+        }
+        Path tmp = dir.resolve("tmp").resolve(key+"."+System.nanoTime());
+        Files.createDirectories(tmp);
+        try {
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(packed))) {
+                ZipEntry ze;
+                while ((ze = zip.getNextEntry()) != null) {
+                    Path to = tmp.resolve(ze.getName()).normalize();
+                    if (!to.startsWith(tmp)) {
+                        throw new IOException("bad file name "+ze.getName());
+                    }
+                    Files.createDirectories(to.getParent());
+                    Files.copy(zip, to);
+                }
+            }
+            if (!Files.exists(tmp.resolve("entry"))) {
+                throw new IOException("no entry found");
+            }
+            // Refuse an entry with artifacts outside of the output dirs before it is stored.
+            Entry e = load(tmp.resolve("entry"));
+            for (String a : e.binArtifacts) {
+                resolveUnder(tmp.resolve("b"), a);
+            }
+            for (String a : e.headerArtifacts) {
+                resolveUnder(tmp.resolve("h"), a);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteRecursively(tmp);
+            if (!Files.exists(target.resolve("entry"))) {
+                throw ex;
+            }
+        }
+    }
+
+    private static String save(Entry e) {
+        StringBuilder b = new StringBuilder();
+        b.append("P ").append(e.pkg).append("\n");
+        List<String> deps = new ArrayList<>(e.dependencies);
+        Collections.sort(deps);
+        for (String d : deps) {
+            b.append("D ").append(d).append("\n");
+        }
+        for (String l : e.pubapi) {
+            b.append("I ").append(l).append("\n");
+        }
+        saveDependencies(e, b);
+        for (String a : e.binArtifacts) {
+            b.append("B ").append(a).append("\n");
+        }
+        for (String a : e.headerArtifacts) {
+            b.append("H ").append(a).append("\n");
+        }
+        return b.toString();
+    }
+
+    /**
+     * Save the fingerprints of the pubapis the entry was compiled against.
+     */
+    private static void saveDependencies(Entry e, StringBuilder b) {
+        for (Map.Entry<String,String> f : e.fingerprints.entrySet()) {
+            b.append("F ").append(f.getKey()).append(" ").append(f.getValue()).append("\n");
+        }
+        for (Map.Entry<String,Map<String,String>> z : e.classpathClasses.entrySet()) {
+            for (Map.Entry<String,String> c : new TreeMap<>(z.getValue()).entrySet()) {
+                b.append("Z ").append(z.getKey()).append(" ").append(c.getKey())
+                 .append(" ").append(c.getValue()).append("\n");
+            }
+        }
+    }
+
+    private static URI copy(Path from, Path to) throws IOException {
+        Files.createDirectories(to.getParent());
+        // Not copying the timestamp, the restored artifacts are newer than the sources.
+        Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+        return to.toFile().toURI();
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder b = new StringBuilder(bytes.length*2);
+        for (byte x : bytes) {
+            b.append(Character.forDigit((x >> 4) & 0xf, 16));
+            b.append(Character.forDigit(x & 0xf, 16));
+        }
+        return b.toString();
+    }
+}
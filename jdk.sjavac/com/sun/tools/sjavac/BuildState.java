@@ -281,9 +281,11 @@ public class BuildState {
         long timestamp = Long.parseLong(l.substring(p+1));
         File f = new File(archive);
         if (f.lastModified() == timestamp) {
-            Log.trace("Same timestamp for "+archive);
+            if (Log.isTracing()) {
+                Log.trace("Same timestamp for "+archive);
+            }
             archives.add(archive);
-        } else {
+        } else if (Log.isDebugging()) {
             Log.debug("Timestamp changed for "+archive);
         }
     }
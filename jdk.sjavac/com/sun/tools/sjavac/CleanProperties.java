@@ -26,18 +26,13 @@
 package com.sun.tools.sjavac;
 
 import java.io.*;
-import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 
-import com.sun.tools.sjavac.options.Options;
-import com.sun.tools.sjavac.server.Sjavac;
-
 /**
  * The clean properties transform should not be necessary.
  * Eventually we will cleanup the property file sources in the OpenJDK instead.
@@ -47,58 +42,28 @@ import com.sun.tools.sjavac.server.Sjavac;
  *  This code and its internal interfaces are subject to change or
  *  deletion without notice.</b>
  */
-public class CleanProperties implements Transformer {
+public class CleanProperties implements Translator {
+    public String name() {
+        return "cleanproperties";
+    }
+
     public void setExtra(String e) {
         // Any extra information is ignored for clean properties.
     }
 
-    public void setExtra(Options a) {
-        // Any extra information is ignored for clean properties.
+    public String cacheKey() {
+        return "1";
     }
 
-    public boolean transform(Sjavac sjavac,
-                             Map<String,Set<URI>> pkgSrcs,
-                             Set<URI>             visibleSrcs,
-                             Map<URI,Set<String>> visibleClasses,
-                             Map<String,Set<String>> oldPackageDependencies,
-                             URI destRoot,
-                             Map<String,Set<URI>>    packageArtifacts,
-                             Map<String,Set<String>> packageDependencies,
-                             Map<String,List<String>> packagePublicApis,
-                             Map<String,Set<String>> classpathPackageDependencies,
-                             int debugLevel,
-                             boolean incremental,
-                             int numCores,
-                             PrintStream out,
-                             PrintStream err) {
-        boolean rc = true;
-        for (String pkgName : pkgSrcs.keySet()) {
-            String pkgNameF = pkgName.replace('.',File.separatorChar);
-            for (URI u : pkgSrcs.get(pkgName)) {
-                File src = new File(u);
-                boolean r = clean(pkgName, pkgNameF, src, new File(destRoot), debugLevel,
-                                  packageArtifacts);
-                if (r == false) {
-                    rc = false;
-                }
-            }
-        }
-        return rc;
+    public List<String> outputs(String pkgName, String srcName) {
+        return Collections.singletonList(srcName);
     }
 
-    boolean clean(String pkgName,
-                  String pkgNameF,
-                  File src,
-                  File destRoot,
-                  int debugLevel,
-                  Map<String,Set<URI>> packageArtifacts) {
+    public Map<String,byte[]> translate(String pkgName, File src) throws IOException {
         // Load the properties file.
         Properties p = new Properties();
-        try {
-            p.load(new FileInputStream(src));
-        } catch (IOException e) {
-            Log.error("Error reading file "+src.getPath());
-            return false;
+        try (InputStream in = new FileInputStream(src)) {
+            p.load(in);
         }
 
         // Sort the properties in increasing key order.
@@ -116,39 +81,6 @@ public class CleanProperties implements Transformer {
                 .append(CompileProperties.escape((String) p.get(key)))
                 .append("\n");
         }
-
-        String destFilename = destRoot.getPath()+File.separator+pkgNameF+File.separator+src.getName();
-        File dest = new File(destFilename);
-
-        // Make sure the dest directories exist.
-        if (!dest.getParentFile().isDirectory()) {
-            if (!dest.getParentFile().mkdirs()) {
-                Log.error("Could not create the directory "+dest.getParentFile().getPath());
-                return false;
-            }
-        }
-
-        Set<URI> as = packageArtifacts.get(pkgName);
-        if (as == null) {
-            as = new HashSet<>();
-            packageArtifacts.put(pkgName, as);
-        }
-        as.add(dest.toURI());
-
-        if (dest.exists() && dest.lastModified() > src.lastModified()) {
-            // A cleaned property file exists, and its timestamp is newer than the source.
-            // Assume that we do not need to clean!
-            // Thus we are done.
-            return true;
-        }
-
-        Log.info("Cleaning property file "+pkgNameF+File.separator+src.getName());
-        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dest)))) {
-            writer.write(data.toString());
-        } catch ( IOException e ) {
-            Log.error("Could not write file "+dest.getPath());
-            return false;
-        }
-        return true;
+        return Collections.singletonMap(src.getName(), data.toString().getBytes(Charset.defaultCharset()));
     }
 }
@@ -27,6 +27,8 @@ package com.sun.tools.sjavac;
 
 import java.net.URI;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -42,6 +44,8 @@ public class CompileChunk implements Comparable<CompileChunk> {
     public int numPackages;
     public int numDependents;
     public Set<URI> srcs = new HashSet<>();
+    // The number of sources of each package in the chunk.
+    public Map<String,Integer> pkgSources = new LinkedHashMap<>();
     public StringBuilder pkgNames = new StringBuilder();
     public String pkgFromTos = "";
 
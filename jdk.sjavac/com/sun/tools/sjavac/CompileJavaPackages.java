@@ -29,13 +29,19 @@ package com.sun.tools.sjavac;
 import java.io.File;
 import java.io.PrintStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.sun.tools.sjavac.options.Options;
+import com.sun.tools.sjavac.server.CompilationListener;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.Sjavac;
 import com.sun.tools.sjavac.server.SysInfo;
@@ -89,6 +95,10 @@ public class CompileJavaPackages implements Transformer {
 
         // Fetch the id.
         final String id = Util.extractStringOption("id", sjavac.serverSettings());
+        // Every build of a project has the same id. Name the compile requests
+        // of this build uniquely, thus the cancel of a request of an earlier
+        // build, that just got interrupted, never hits a request of this one.
+        final String build = id+"-"+Long.toHexString((new java.util.Random()).nextLong()&Long.MAX_VALUE);
         // Only keep portfile and sjavac settings..
         String psServerSettings = Util.cleanSubOptions(Util.set("portfile","sjavac","background","keepalive"), sjavac.serverSettings());
 
@@ -99,7 +109,13 @@ public class CompileJavaPackages implements Transformer {
             return false;
         }
         int numMBytes = (int)(sysinfo.maxMemory / ((long)(1024*1024)));
-        Log.debug("Server reports "+numMBytes+"MiB of memory and "+sysinfo.numCores+" cores");
+        // Each server compiles its share of the chunks concurrently.
+        int numServers = Math.max(sysinfo.numServers, 1);
+        if (numServers > 1) {
+            Log.debug(numServers+" servers report "+numMBytes+"MiB of memory and "+sysinfo.numCores+" cores together");
+        } else {
+            Log.debug("Server reports "+numMBytes+"MiB of memory and "+sysinfo.numCores+" cores");
+        }
 
         if (numCores <= 0) {
             // Set the requested number of cores to the number of cores on the server.
@@ -114,7 +130,7 @@ public class CompileJavaPackages implements Transformer {
         if (numCompiles <= 0) {
             numCompiles = numCores;
             // If numCompileChunks not explicitly set using -jj, then max out.
-            if (numCompiles > limitOnConcurrency) numCompiles = limitOnConcurrency;
+            if (numCompiles > limitOnConcurrency*numServers) numCompiles = limitOnConcurrency*numServers;
         }
 
         // Split the work up in chunks to compiled.
@@ -205,6 +221,9 @@ public class CompileJavaPackages implements Transformer {
         final CompilationResult[] rn = new CompilationResult[numCompiles];
         // The requets, might or might not run as a background thread.
         final Thread[] requests  = new Thread[numCompiles];
+        // Set by the first chunk that fails, which then cancels the other chunks.
+        final AtomicBoolean failed = new AtomicBoolean();
+        final int numChunks = numCompiles;
 
         long start = System.currentTimeMillis();
 
@@ -215,12 +234,51 @@ public class CompileJavaPackages implements Transformer {
             requests[i] = new Thread() {
                 @Override
                 public void run() {
+                    // Diagnostics are printed as soon as javac reports them. The stdout
+                    // of the chunk is only of interest if the chunk fails.
+                    final StringBuffer chunkStdout = new StringBuffer();
+                    CompilationListener listener = new CompilationListener() {
+                        public void stdout(String line) {
+                            chunkStdout.append(line).append('\n');
+                        }
+                        public void stderr(String line) {
+                            Log.error(line);
+                        }
+                        public void sourceCompiled(URI source) {
+                            if (Log.isDebugging()) {
+                                Log.debug("Compiled "+source);
+                            }
+                        }
+                    };
+                    Metrics.Span chunk = Metrics.begin("chunk", build + "." + ii);
                     rn[ii] = sjavac.compile("n/a",
-                                                  id + "-" + ii,
+                                                  build + "." + ii,
                                                   args.prepJavacArgs(),
                                                   Collections.<File>emptyList(),
                                                   cc.srcs,
-                                                  visibleSources);
+                                                  visibleSources,
+                                                  listener);
+                    rn[ii].stdout = chunkStdout + rn[ii].stdout;
+                    long chunkMillis = chunk.arg("sources", cc.srcs.size())
+                         .arg("packages", cc.numPackages)
+                         .arg("returnCode", rn[ii].returnCode)
+                         .arg("compiledBy", rn[ii].compiledBy)
+                         .arg("compileMillis", rn[ii].compileMillis)
+                         .arg("allocatedMiB", rn[ii].allocatedBytes >> 20)
+                         .end();
+                    Explain.compiled(cc.pkgSources, rn[ii].compileMillis > 0 ? rn[ii].compileMillis : chunkMillis);
+                    Metrics.count("compile chunks", 1);
+                    Metrics.count("compiled sources", cc.srcs.size());
+                    if (rn[ii].returnCode != 0
+                        && rn[ii].returnCode != CompilationResult.ERROR_CANCELLED
+                        && failed.compareAndSet(false, true)) {
+                        // The build has failed, no point in finishing the other chunks.
+                        for (int j = 0; j < numChunks; j++) {
+                            if (j != ii) {
+                                sjavac.cancel(build + "." + j);
+                            }
+                        }
+                    }
                     packageArtifacts.putAll(rn[ii].packageArtifacts);
                     packageDependencies.putAll(rn[ii].packageDependencies);
                     packagePublicApis.putAll(rn[ii].packagePublicApis);
@@ -247,8 +305,7 @@ public class CompileJavaPackages implements Transformer {
                     requests[ii].run();
                     // If there was an error, then stop early when running single threaded.
                     if (rn[i].returnCode != 0) {
-                        Log.info(rn[i].stdout);
-                        Log.error(rn[i].stderr);
+                        printRemainingOutput(rn[i]);
                         return false;
                     }
                 }
@@ -262,15 +319,24 @@ public class CompileJavaPackages implements Transformer {
         }
 
         // Check the return values.
+        int numUnchanged = 0;
         for (int i=0; i<numCompiles; ++i) {
             if (compileChunks[i].srcs.size() > 0) {
                 if (rn[i].returnCode != 0) {
-                    Log.info(rn[i].stdout);
-                    Log.error(rn[i].stderr);
+                    printRemainingOutput(rn[i]);
                     rc = false;
                 }
+                numUnchanged += rn[i].unchangedArtifacts.size();
             }
         }
+        if (numUnchanged > 0) {
+            // The kept class files are among the artifacts of their packages
+            // like any other, thus javac_state records their old timestamps and
+            // the next build, as well as any step after the build, sees them
+            // as untouched.
+            Log.info("Kept "+numUnchanged+" class files that were generated unchanged.");
+            Metrics.count("unchanged class files", numUnchanged);
+        }
         long duration = System.currentTimeMillis() - start;
         long minutes = duration/60000;
         long seconds = (duration-minutes*60000)/1000;
@@ -279,17 +345,34 @@ public class CompileJavaPackages implements Transformer {
         return rc;
     }
 
+    /**
+     * Print the output of a failed chunk that was not already streamed
+     * through its listener.
+     */
+    private static void printRemainingOutput(CompilationResult cr) {
+        if (cr.returnCode == CompilationResult.ERROR_CANCELLED) {
+            // Cancelled because another chunk failed.
+            return;
+        }
+        if (cr.stdout.length() > 0) {
+            Log.info(cr.stdout);
+        }
+        if (cr.stderr.length() > 0) {
+            Log.error(cr.stderr);
+        }
+    }
 
     /**
      * Split up the sources into compile chunks. If old package dependents information
      * is available, sort the order of the chunks into the most dependent first!
-     * (Typically that chunk contains the java.lang package.) In the future
-     * we could perhaps improve the heuristics to put the sources into even more sensible chunks.
-     * Now the package are simple sorted in alphabetical order and chunked, then the chunks
-     * are sorted on how dependent they are.
+     * (Typically that chunk contains the java.lang package.)
+     * Packages that depend on each other are kept in the same chunk, as long as they
+     * fit, since a chunk otherwise has to parse the sources of the packages it depends
+     * on in other chunks as well. Apart from that the packages are taken in alphabetical
+     * order and chunked, then the chunks are sorted on how dependent they are.
      *
      * @param pkgSrcs The sources to compile.
-     * @param oldPackageDependents Old package dependents, if non-empty, used to sort the chunks.
+     * @param oldPackageDependents Old package dependents, if non-empty, used to group the packages and sort the chunks.
      * @param numCompiles The number of chunks.
      * @param sourcesPerCompile The number of sources per chunk.
      * @return
@@ -304,34 +387,44 @@ public class CompileJavaPackages implements Transformer {
             compileChunks[i] = new CompileChunk();
         }
 
-        // Now go through the packages and spread out the source on the different chunks.
+        // Now go through the groups of packages and spread out the source on the different chunks.
         int ci = 0;
-        // Sort the packages
-        String[] packageNames = pkgSrcs.keySet().toArray(new String[0]);
-        Arrays.sort(packageNames);
         String from = null;
-        for (String pkgName : packageNames) {
-            CompileChunk cc = compileChunks[ci];
-            Set<URI> s = pkgSrcs.get(pkgName);
-            if (cc.srcs.size()+s.size() > sourcesPerCompile && ci < numCompiles-1) {
+        for (List<String> group : groupDependentPackages(pkgSrcs, oldPackageDependents, sourcesPerCompile)) {
+            int groupSize = 0;
+            for (String pkgName : group) {
+                groupSize += pkgSrcs.get(pkgName).size();
+            }
+            // Start the group in a new chunk, rather than splitting it.
+            if (compileChunks[ci].srcs.size() > 0
+                && compileChunks[ci].srcs.size()+groupSize > sourcesPerCompile && ci < numCompiles-1) {
                 from = null;
                 ci++;
-                cc = compileChunks[ci];
             }
-            cc.numPackages++;
-            cc.srcs.addAll(s);
+            for (String pkgName : group) {
+                CompileChunk cc = compileChunks[ci];
+                Set<URI> s = pkgSrcs.get(pkgName);
+                if (cc.srcs.size()+s.size() > sourcesPerCompile && ci < numCompiles-1) {
+                    from = null;
+                    ci++;
+                    cc = compileChunks[ci];
+                }
+                cc.numPackages++;
+                cc.srcs.addAll(s);
+                cc.pkgSources.put(pkgName, s.size());
 
-            // Calculate nice package names to use as information when compiling.
-            String justPkgName = Util.justPackageName(pkgName);
-            // Fetch how many packages depend on this package from the old build state.
-            Set<String> ss = oldPackageDependents.get(pkgName);
-            if (ss != null) {
-                // Accumulate this information onto this chunk.
-                cc.numDependents += ss.size();
+                // Calculate nice package names to use as information when compiling.
+                String justPkgName = Util.justPackageName(pkgName);
+                // Fetch how many packages depend on this package from the old build state.
+                Set<String> ss = oldPackageDependents.get(pkgName);
+                if (ss != null) {
+                    // Accumulate this information onto this chunk.
+                    cc.numDependents += ss.size();
+                }
+                if (from == null || from.trim().equals("")) from = justPkgName;
+                cc.pkgNames.append(justPkgName+"("+s.size()+") ");
+                cc.pkgFromTos = from+" to "+justPkgName;
             }
-            if (from == null || from.trim().equals("")) from = justPkgName;
-            cc.pkgNames.append(justPkgName+"("+s.size()+") ");
-            cc.pkgFromTos = from+" to "+justPkgName;
         }
         // If we are compiling serially, sort the chunks, so that the chunk (with the most dependents) (usually the chunk
         // containing java.lang.Object, is to be compiled first!
@@ -339,4 +432,61 @@ public class CompileJavaPackages implements Transformer {
         Arrays.sort(compileChunks);
         return compileChunks;
     }
+
+    /**
+     * Group the packages to compile that depend on each other, according to the
+     * old package dependents, as long as a group has no more than maxSources sources.
+     * The groups, and the packages within a group, are in alphabetical order.
+     */
+    static List<List<String>> groupDependentPackages(Map<String,Set<URI>> pkgSrcs,
+                                                     Map<String,Set<String>> oldPackageDependents,
+                                                     int maxSources) {
+        String[] packageNames = pkgSrcs.keySet().toArray(new String[0]);
+        Arrays.sort(packageNames);
+        // Union find over the packages, the root of a group knows its number of sources.
+        Map<String,String> parent = new HashMap<>();
+        Map<String,Integer> size = new HashMap<>();
+        for (String pkgName : packageNames) {
+            parent.put(pkgName, pkgName);
+            size.put(pkgName, pkgSrcs.get(pkgName).size());
+        }
+        for (String pkgName : packageNames) {
+            Set<String> dependents = oldPackageDependents.get(pkgName);
+            if (dependents == null) continue;
+            for (String dependent : new TreeSet<>(dependents)) {
+                if (!parent.containsKey(dependent)) continue;
+                String a = findGroup(parent, pkgName);
+                String b = findGroup(parent, dependent);
+                if (a.equals(b) || size.get(a)+size.get(b) > maxSources) continue;
+                // The alphabetically first package stays the root.
+                if (a.compareTo(b) > 0) {
+                    String t = a; a = b; b = t;
+                }
+                parent.put(b, a);
+                size.put(a, size.get(a)+size.get(b));
+            }
+        }
+        Map<String,List<String>> groups = new TreeMap<>();
+        for (String pkgName : packageNames) {
+            String root = findGroup(parent, pkgName);
+            List<String> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(root, group);
+            }
+            group.add(pkgName);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static String findGroup(Map<String,String> parent, String pkgName) {
+        String p = parent.get(pkgName);
+        while (!p.equals(pkgName)) {
+            String gp = parent.get(p);
+            parent.put(pkgName, gp);
+            pkgName = p;
+            p = gp;
+        }
+        return p;
+    }
 }
@@ -26,12 +26,21 @@
  * licensed from Fredrik to you under the above license. */
 package com.sun.tools.sjavac;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.sun.tools.sjavac.options.Options;
 import com.sun.tools.sjavac.server.Sjavac;
@@ -40,6 +49,12 @@ import com.sun.tools.sjavac.server.Sjavac;
  * The copy file transform simply copies a matching file from -src to -d .
  * Such files are typically images, xml documents and other data files.
  *
+ * A copy keeps the timestamp of its source, thus a file whose copy has the
+ * same size and timestamp as the source is not copied again. The packages
+ * are copied in parallel. With -Xlink-copies the copies are hard links to
+ * the sources, when the file system allows it. Such a copy is the source,
+ * writing to it writes to the source.
+ *
  *  <p><b>This is NOT part of any supported API.
  *  If you write code that depends on this, you do so at your own risk.
  *  This code and its internal interfaces are subject to change or
@@ -47,10 +62,13 @@ import com.sun.tools.sjavac.server.Sjavac;
  */
 public class CopyFile implements Transformer {
 
+    boolean linkCopies;
+
     public void setExtra(String e) {
     }
 
     public void setExtra(Options a) {
+        linkCopies = a.isLinkCopies();
     }
 
     public boolean transform(Sjavac sjavac,
@@ -69,55 +87,91 @@ public class CopyFile implements Transformer {
                              PrintStream out,
                              PrintStream err)
     {
-        boolean rc = true;
-        String dest_filename;
-        File dest;
-
-        for (String pkgName : pkgSrcs.keySet()) {
-            String pkgNameF = Util.toFileSystemPath(pkgName);
+        List<Callable<Boolean>> copies = new ArrayList<>();
+        for (final String pkgName : pkgSrcs.keySet()) {
+            final String pkgNameF = Util.toFileSystemPath(pkgName);
+            final File destDir = new File(destRoot.getPath()+File.separator+pkgNameF);
+            final List<File> srcs = new ArrayList<>();
+            final List<File> dests = new ArrayList<>();
+            Set<URI> as = packageArtifacts.get(pkgName);
+            if (as == null) {
+                as = new HashSet<>();
+                packageArtifacts.put(pkgName, as);
+            }
             for (URI u : pkgSrcs.get(pkgName)) {
                 File src = new File(u);
-                File destDir;
-                destDir = new File(destRoot.getPath()+File.separator+pkgNameF);
-                dest_filename = destRoot.getPath()+File.separator+pkgNameF+File.separator+src.getName();
-                dest = new File(dest_filename);
-
-                if (!destDir.isDirectory()) {
-                    if (!destDir.mkdirs()) {
-                       Log.error("Error: The copier could not create the directory "+
-                                           destDir.getPath());
-                        return false;
-                    }
+                File dest = new File(destRoot.getPath()+File.separator+pkgNameF+File.separator+src.getName());
+                as.add(dest.toURI());
+                srcs.add(src);
+                dests.add(dest);
+            }
+            copies.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return copyPackage(pkgNameF, destDir, srcs, dests);
                 }
+            });
+        }
 
-                Set<URI> as = packageArtifacts.get(pkgName);
-                if (as == null) {
-                    as = new HashSet<>();
-                    packageArtifacts.put(pkgName, as);
-                }
-                as.add(dest.toURI());
+        return Util.runAll(copies, numCores);
+    }
 
-                if (dest.exists() && dest.lastModified() > src.lastModified()) {
-                    // A copied file exists, and its timestamp is newer than the source.
+    /**
+     * Copy the files of one package, skipping those whose copy is up to date.
+     */
+    boolean copyPackage(String pkgNameF, File destDir, List<File> srcs, List<File> dests) {
+        if (!destDir.isDirectory()) {
+            if (!destDir.mkdirs() && !destDir.isDirectory()) {
+                Log.error("Error: The copier could not create the directory "+
+                          destDir.getPath());
+                return false;
+            }
+        }
+        boolean rc = true;
+        for (int i = 0; i < srcs.size(); ++i) {
+            File src = srcs.get(i);
+            File dest = dests.get(i);
+            try {
+                if (isUpToDate(src.toPath(), dest.toPath())) {
                     continue;
                 }
 
                 Log.info("Copying "+pkgNameF+File.separator+src.getName());
 
-                try (InputStream fin = new FileInputStream(src);
-                     OutputStream fout = new FileOutputStream(dest)) {
-                    byte[] buf = new byte[1024];
-                    int len;
-                    while ((len = fin.read(buf)) > 0){
-                        fout.write(buf, 0, len);
-                    }
-                }
-                catch(IOException e){
-                    Log.error("Could not copy the file "+src.getPath()+" to "+dest.getPath());
-                    rc = false;
-                }
+                copy(src.toPath(), dest.toPath());
+            } catch (IOException e) {
+                Log.error("Could not copy the file "+src.getPath()+" to "+dest.getPath());
+                rc = false;
             }
         }
         return rc;
     }
+
+    /**
+     * A copy is up to date if it has the same size and timestamp as the source.
+     */
+    private static boolean isUpToDate(Path src, Path dest) throws IOException {
+        BasicFileAttributes destAttrs;
+        try {
+            destAttrs = Files.readAttributes(dest, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        BasicFileAttributes srcAttrs = Files.readAttributes(src, BasicFileAttributes.class);
+        return destAttrs.size() == srcAttrs.size()
+            && destAttrs.lastModifiedTime().equals(srcAttrs.lastModifiedTime());
+    }
+
+    private void copy(Path src, Path dest) throws IOException {
+        if (linkCopies) {
+            try {
+                Files.deleteIfExists(dest);
+                Files.createLink(dest, src);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different file systems perhaps, fall back to copying.
+            }
+        }
+        Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
 }
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records why each package was recompiled and what it cost. A package is
+ * tainted either for a root cause (a modified, added or removed source, a
+ * missing artifact, a changed classpath pubapi) or via another package,
+ * a package it depends upon that was tainted or whose pubapi changed.
+ * The compile time of a chunk is divided over its packages by their
+ * number of sources. With -Xexplain the report is written to the state
+ * dir, with the root causes and the packages whose pubapi changes
+ * caused the most compile time first.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class Explain {
+
+    public final static String REPORT = "javac_explain";
+
+    private static boolean enabled;
+    private static int wave = 1;
+    private static final Map<String,Entry> packages = new LinkedHashMap<>();
+
+    static class Entry {
+        final String pkg;
+        final String because;
+        final String via;
+        final int wave;
+        int sources;
+        long millis;
+        boolean pubapiChanged;
+        boolean restored;
+        // Compile time of the packages recompiled because of this one.
+        long causedMillis;
+        int causedPackages;
+
+        Entry(String pkg, String because, String via, int wave) {
+            this.pkg = pkg;
+            this.because = because;
+            this.via = via;
+            this.wave = wave;
+        }
+    }
+
+    /**
+     * Forget an earlier build, and record this build if enabled.
+     */
+    public static synchronized void reset(boolean enable) {
+        enabled = enable;
+        wave = 1;
+        packages.clear();
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The package was tainted, because of a root cause or via another package.
+     * Only the first taint of a package is recorded.
+     */
+    public static synchronized void tainted(String pkg, String because, String via) {
+        if (!enabled || packages.containsKey(pkg)) return;
+        packages.put(pkg, new Entry(pkg, because, pkg.equals(via) ? null : via, wave));
+    }
+
+    /**
+     * A compile wave has finished, later taints belong to the next wave.
+     */
+    public static synchronized void nextWave() {
+        wave++;
+    }
+
+    /**
+     * The pubapi of the package changed when it was compiled.
+     */
+    public static synchronized void pubapiChanged(String pkg) {
+        Entry e = packages.get(pkg);
+        if (e != null) e.pubapiChanged = true;
+    }
+
+    /**
+     * The package was restored from the build cache instead of compiled.
+     */
+    public static synchronized void restored(String pkg) {
+        Entry e = packages.get(pkg);
+        if (e != null) e.restored = true;
+    }
+
+    /**
+     * A chunk with the given packages, and their number of sources, was compiled.
+     */
+    public static synchronized void compiled(Map<String,Integer> pkgSources, long millis) {
+        if (!enabled) return;
+        int total = 0;
+        for (int n : pkgSources.values()) {
+            total += n;
+        }
+        for (Map.Entry<String,Integer> p : pkgSources.entrySet()) {
+            Entry e = packages.get(p.getKey());
+            if (e == null) {
+                e = new Entry(p.getKey(), null, null, wave);
+                packages.put(p.getKey(), e);
+            }
+            e.sources = p.getValue();
+            e.millis += total > 0 ? millis * p.getValue() / total : 0;
+        }
+    }
+
+    /**
+     * Write the report into the state dir.
+     */
+    public static synchronized void write(File stateDir) throws IOException {
+        // Charge the compile time of every package to the packages it was tainted via.
+        Map<String,long[]> roots = new LinkedHashMap<>();
+        for (Entry e : packages.values()) {
+            e.causedMillis = 0;
+            e.causedPackages = 0;
+        }
+        long totalMillis = 0;
+        int maxWave = 0;
+        for (Entry e : packages.values()) {
+            totalMillis += e.millis;
+            maxWave = Math.max(maxWave, e.wave);
+            String cause = describe(rootOf(e, true));
+            long[] cost = roots.get(cause);
+            if (cost == null) {
+                cost = new long[2];
+                roots.put(cause, cost);
+            }
+            cost[0] += e.millis;
+            cost[1]++;
+        }
+
+        StringBuilder b = new StringBuilder();
+        b.append("# Why each package was recompiled, and the compile time it cost.\n");
+        b.append("Recompiled ").append(packages.size()).append(" packages in ").append(maxWave)
+         .append(" waves, compiling for ").append(totalMillis).append("ms.\n");
+
+        b.append("\nRoot causes, by the compile time they caused:\n");
+        List<Map.Entry<String,long[]>> rs = new ArrayList<>(roots.entrySet());
+        Collections.sort(rs, new Comparator<Map.Entry<String,long[]>>() {
+            public int compare(Map.Entry<String,long[]> a, Map.Entry<String,long[]> b) {
+                return Long.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+        for (Map.Entry<String,long[]> r : rs) {
+            b.append(String.format("%8dms %5d packages  %s%n", r.getValue()[0], r.getValue()[1], r.getKey()));
+        }
+
+        b.append("\nPackages whose pubapi changed, by the compile time of the packages recompiled because of them:\n");
+        List<Entry> es = new ArrayList<>(packages.values());
+        Collections.sort(es, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.causedMillis, a.causedMillis);
+            }
+        });
+        for (Entry e : es) {
+            if (e.pubapiChanged) {
+                b.append(String.format("%8dms %5d packages  %s%n", e.causedMillis, e.causedPackages,
+                                       Util.justPackageName(e.pkg)));
+            }
+        }
+
+        b.append("\nPackages, in the order they were tainted:\n");
+        for (Entry e : packages.values()) {
+            b.append(String.format("%8dms %5d sources  wave %d  %s", e.millis, e.sources, e.wave,
+                                   Util.justPackageName(e.pkg)));
+            if (e.via != null) {
+                Entry parent = packages.get(e.via);
+                b.append(" via ").append(Util.justPackageName(e.via));
+                if (parent != null && parent.pubapiChanged && parent.wave < e.wave) {
+                    b.append(" (pubapi changed)");
+                }
+                b.append(", root cause: ");
+            } else {
+                b.append(": ");
+            }
+            b.append(describe(rootOf(e, false)));
+            if (e.pubapiChanged) b.append(", pubapi changed");
+            if (e.restored) b.append(", restored from the build cache");
+            b.append('\n');
+        }
+        Files.write(new File(stateDir, REPORT).toPath(), b.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Follow the packages that e was tainted via, to the package tainted for a root cause.
+     * Optionally charge the compile time of e to the packages on the way.
+     */
+    private static Entry rootOf(Entry e, boolean charge) {
+        Entry root = e;
+        for (int depth = 0; root.via != null && depth < packages.size(); depth++) {
+            Entry parent = packages.get(root.via);
+            if (parent == null) break;
+            if (charge) {
+                parent.causedMillis += e.millis;
+                parent.causedPackages++;
+            }
+            root = parent;
+        }
+        return root;
+    }
+
+    private static String describe(Entry root) {
+        return root.because != null ? root.because : "not compiled before";
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A remote cache accessed through http. The protocol is:
+ * <pre>
+ * GET url/key/          the variants stored under the key, one per line, 404 if none
+ * GET url/key/variant   the packed entry
+ * PUT url/key/variant   store the packed entry
+ * </pre>
+ * Any web server that can serve and accept files, e.g. through WebDAV,
+ * can be used as a remote cache.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class HttpRemoteCache implements RemoteCache {
+
+    // A slow remote cache must not make the build slower than compiling.
+    private static final int CONNECT_TIMEOUT = 2000;
+    private static final int READ_TIMEOUT = 10000;
+
+    private final String url;
+
+    public HttpRemoteCache(String url) {
+        this.url = url.endsWith("/") ? url : url+"/";
+    }
+
+    @Override
+    public List<String> variants(String key) throws IOException {
+        List<String> variants = new ArrayList<>();
+        HttpURLConnection c = open("GET", key+"/");
+        if (c.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            c.disconnect();
+            return variants;
+        }
+        byte[] index = read(c);
+        for (String l : new String(index, StandardCharsets.UTF_8).split("\n")) {
+            if (!l.trim().isEmpty()) {
+                variants.add(l.trim());
+            }
+        }
+        return variants;
+    }
+
+    @Override
+    public byte[] get(String key, String variant) throws IOException {
+        return read(open("GET", key+"/"+variant));
+    }
+
+    @Override
+    public void put(String key, String variant, byte[] packed) throws IOException {
+        HttpURLConnection c = open("PUT", key+"/"+variant);
+        // Not streaming, thus the request is sent again if the server has closed
+        // the kept alive connection that was reused for it.
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "application/zip");
+        try (OutputStream out = c.getOutputStream()) {
+            out.write(packed);
+        }
+        int rc = c.getResponseCode();
+        c.disconnect();
+        if (rc / 100 != 2) {
+            throw new IOException("PUT "+c.getURL()+" returned "+rc);
+        }
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url+path).openConnection();
+        c.setRequestMethod(method);
+        c.setConnectTimeout(CONNECT_TIMEOUT);
+        c.setReadTimeout(READ_TIMEOUT);
+        c.setUseCaches(false);
+        return c;
+    }
+
+    private static byte[] read(HttpURLConnection c) throws IOException {
+        try (InputStream in = c.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -37,8 +37,13 @@ import java.util.HashMap;
 import java.text.SimpleDateFormat;
 import java.net.URI;
 import java.util.*;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.tools.sjavac.comp.SjavacImpl;
+import com.sun.tools.sjavac.comp.SmartClassFileObject;
 import com.sun.tools.sjavac.options.Options;
 import com.sun.tools.sjavac.options.SourceLocation;
 import com.sun.tools.sjavac.server.Sjavac;
@@ -81,6 +86,9 @@ public class JavacState {
     // * an unknown artifact has appeared, we simply delete it, but we also trigger a recompilation.
     // * a package that is tainted, taints all packages that depend on it.
     private Set<String> taintedPackages;
+    // The packages that were tainted when the sources were copied and translated.
+    // Packages tainted later, by the compiles, keep their copies and translations.
+    private Set<String> transformedPackages;
     // After a compile, the pubapis are compared with the pubapis stored in the javac state file.
     // Any packages where the pubapi differ are added to this set.
     // Later we use this set and the dependency information to taint dependent packages.
@@ -104,10 +112,41 @@ public class JavacState {
     // The output directories filled with tasty artifacts.
     private File binDir, gensrcDir, headerDir, stateDir;
 
-    // The current status of the file system.
-    private Set<File> binArtifacts;
-    private Set<File> gensrcArtifacts;
-    private Set<File> headerArtifacts;
+    // The current status of the file system, sorted lists of paths.
+    private List<String> binArtifacts;
+    private List<String> gensrcArtifacts;
+    private List<String> headerArtifacts;
+
+    // Remembers the listings of the output dirs between builds.
+    private ArtifactInventory inventory;
+
+    // The fingerprint of every source translated by a Translator, by path,
+    // as it was when it was translated.
+    private Map<String,String> translatedSources = new ConcurrentHashMap<>();
+
+    // Artifacts recorded in javac_state that were missing, or had a bad
+    // timestamp, when javac_state was loaded.
+    private Set<String> missingArtifacts = new HashSet<>();
+
+    // Class files moved aside before compiling, when writing only changed class files.
+    private Set<File> movedAsideArtifacts = new HashSet<>();
+
+    // Compiled packages shared between builds, or null if -cache-dir: was not given.
+    private BuildCache buildCache;
+    // The hashes of the pubapis of classpath classes, as looked up for the build cache.
+    private Map<String,String> classpathHashes = new HashMap<>();
+    // Used to look up the pubapis of classpath classes for the build cache.
+    private Sjavac classpathComp;
+    // The build cache shared with other hosts, or null if -remote-cache: was not given.
+    private RemoteCache remoteCache;
+    // Set when the remote cache failed, it is not used again during this build.
+    private volatile boolean remoteCacheFailed;
+    // Fetches packages from the remote cache while the taint analysis is done.
+    private Thread remoteCacheFetcher;
+    // Entries stored in the build cache during this build, to be sent to the remote cache.
+    private List<Path> newCacheEntries = new ArrayList<>();
+    // Sends the new entries to the remote cache after javac_state has been saved.
+    private Thread remoteCacheUploader;
 
     // The status of the sources.
     Set<Source> removedSources = null;
@@ -139,12 +178,19 @@ public class JavacState {
         out = o;
         err = e;
         numCores = options.getNumCores();
+        inventory = new ArtifactInventory(numCores);
         theArgs = options.getStateArgsString();
         binDir = Util.pathToFile(options.getDestDir());
         gensrcDir = Util.pathToFile(options.getGenSrcDir());
         headerDir = Util.pathToFile(options.getHeaderDir());
         stateDir = Util.pathToFile(options.getStateDir());
         javacState = new File(stateDir, "javac_state");
+        if (options.getCacheDir() != null) {
+            buildCache = new BuildCache(options.getCacheDir(), theArgs);
+            if (options.getRemoteCache() != null) {
+                remoteCache = RemoteCache.Factory.create(options.getRemoteCache());
+            }
+        }
         if (removeJavacState && javacState.exists()) {
             javacState.delete();
         }
@@ -233,9 +279,10 @@ public class JavacState {
      * Find all artifacts that exists on disk.
      */
     public void findAllArtifacts() {
-        binArtifacts = findAllFiles(binDir);
-        gensrcArtifacts = findAllFiles(gensrcDir);
-        headerArtifacts = findAllFiles(headerDir);
+        List<List<String>> found = inventory.scan(binDir, gensrcDir, headerDir);
+        binArtifacts = found.get(0);
+        gensrcArtifacts = found.get(1);
+        headerArtifacts = found.get(2);
     }
 
     /**
@@ -253,14 +300,46 @@ public class JavacState {
      * Delete all prev artifacts in the currently tainted packages.
      */
     public void deleteClassArtifactsInTaintedPackages() {
+        List<File> toDelete = new ArrayList<>();
         for (String pkg : taintedPackages) {
             Map<String,File> arts = fetchPrevArtifacts(pkg);
             for (File f : arts.values()) {
-                if (f.exists() && f.getName().endsWith(".class")) {
-                    f.delete();
+                if (f.getName().endsWith(".class")) {
+                    toDelete.add(f);
                 }
             }
         }
+        if (options.isWriteIfChanged() || options.isStageOutput()) {
+            // Move the class files aside instead, the compile puts back
+            // those that are generated with identical content, and all
+            // of them are put back if a compile with staged output fails.
+            inventory.moveAsideAll(toDelete, SmartClassFileObject.PREVIOUS_SUFFIX);
+            movedAsideArtifacts.addAll(toDelete);
+        } else {
+            inventory.deleteAll(toDelete);
+        }
+    }
+
+    /**
+     * Delete the class files that were moved aside before compiling
+     * but were not generated again.
+     */
+    public void deleteMovedAsideArtifacts() {
+        List<File> toDelete = new ArrayList<>();
+        for (File f : movedAsideArtifacts) {
+            toDelete.add(new File(f.getPath()+SmartClassFileObject.PREVIOUS_SUFFIX));
+        }
+        inventory.deleteAll(toDelete);
+        movedAsideArtifacts.clear();
+    }
+
+    /**
+     * Put back the class files that were moved aside before a compile that
+     * failed, except where the compile has already written a new class file.
+     */
+    public void restoreMovedAsideArtifacts() {
+        inventory.moveBackAll(movedAsideArtifacts, SmartClassFileObject.PREVIOUS_SUFFIX);
+        movedAsideArtifacts.clear();
     }
 
     /**
@@ -313,6 +392,12 @@ public class JavacState {
             // When referred classes are stored in a jar/zip, use this timestamp to shortcut
             // and avoid testing all internal classes in the jar, if the timestamp of the jar itself
             // is unchanged.
+            b.append("# T translated_source fingerprint\n");
+            // Tells a translator that its outputs are up to date, without
+            // requiring them to be newer than the source.
+            b.append("# O output_dir timestamp entries\n");
+            // The listing of every output dir, used to avoid listing the dir again
+            // in the next build when its timestamp has not changed.
             b.append("# R arguments\n");
             b.append("R ").append(theArgs).append("\n");
 
@@ -327,12 +412,47 @@ public class JavacState {
             Module.saveModules(now.modules(), b);
             // Save the archive timestamps.
             now.saveArchiveTimestamps(b);
+            // Save the fingerprints of the translated sources.
+            saveTranslatedSources(b);
+            // Save the listings of the output dirs as they look after this build.
+            inventory.scan(binDir, gensrcDir, headerDir);
+            inventory.save(b);
 
             String s = b.toString();
             out.write(s, 0, s.length());
         }
     }
 
+    /**
+     * Load the fingerprint of a translated source from the javac_state file.
+     * The format is: T path fingerprint
+     */
+    private void loadTranslatedSource(String l) {
+        int p = l.lastIndexOf(' ');
+        if (p > 2) {
+            translatedSources.put(l.substring(2, p), l.substring(p+1));
+        }
+    }
+
+    /**
+     * Save the fingerprints of the translated sources that still exist.
+     */
+    private void saveTranslatedSources(StringBuilder b) {
+        Set<String> existing = new HashSet<>();
+        for (Source s : now.sources().values()) {
+            if (s.file() != null) {
+                existing.add(new File(s.file().toURI()).getPath());
+            }
+        }
+        List<String> sorted = new ArrayList<>(translatedSources.keySet());
+        Collections.sort(sorted);
+        for (String path : sorted) {
+            if (existing.contains(path)) {
+                b.append("T "+path+" "+translatedSources.get(path)+"\n");
+            }
+        }
+    }
+
     /**
      * Load a javac_state file.
      */
@@ -370,6 +490,12 @@ public class JavacState {
                     if (c == 'Z') {
                         db.prev.loadArchiveTimestamp(l);
                     } else
+                    if (c == 'O') {
+                        db.inventory.load(l);
+                    } else
+                    if (c == 'T') {
+                        db.loadTranslatedSource(l);
+                    } else
                     if (c == 'A') {
                         if (lastModule == null || lastPackage == null) { syntaxError = true; break; }
                         lastPackage.loadArtifact(l);
@@ -424,23 +550,77 @@ public class JavacState {
             Log.info("Dropping old javac_state since it contains syntax errors.");
             db = new JavacState(options, true, out, err);
         }
+        db.validateArtifacts();
         db.prev.calculateDependents();
         return db;
     }
 
+    /**
+     * Check the artifacts loaded from javac_state against the disk. Each output
+     * package dir is listed once, instead of stat:ing every artifact.
+     * An artifact whose timestamp does not match javac_state is deleted, since
+     * we no longer trust it, and it is remembered as missing together with the
+     * artifacts that are not on disk at all.
+     */
+    private void validateArtifacts() {
+        long start = System.currentTimeMillis();
+        Set<File> dirs = new HashSet<>();
+        int numArtifacts = 0;
+        for (Package pkg : prev.packages().values()) {
+            for (File f : pkg.artifacts().values()) {
+                File dir = f.getParentFile();
+                if (dir != null) dirs.add(dir);
+                numArtifacts++;
+            }
+        }
+        if (numArtifacts == 0) return;
+        Map<String,Long> onDisk = inventory.listTimestamps(dirs);
+        List<File> toDelete = new ArrayList<>();
+        for (Package pkg : prev.packages().values()) {
+            for (Map.Entry<String,Long> e : pkg.loadedArtifactTimestamps().entrySet()) {
+                Long lastModified = onDisk.get(e.getKey());
+                if (lastModified == null) {
+                    missingArtifacts.add(e.getKey());
+                } else if (!lastModified.equals(e.getValue())) {
+                    // Hmm, the artifact on disk does not have the same last modified
+                    // timestamp as the information from the build database.
+                    // We no longer trust the artifact on disk. Delete it.
+                    // The smart javac wrapper will then rebuild the artifact.
+                    if (Log.isDebugging()) {
+                        Log.debug("Removing "+e.getKey()+" since its timestamp does not match javac_state.");
+                    }
+                    toDelete.add(new File(e.getKey()));
+                    missingArtifacts.add(e.getKey());
+                }
+            }
+        }
+        inventory.deleteAll(toDelete);
+        long stop = System.currentTimeMillis();
+        Log.timing("Validating "+numArtifacts+" artifacts in "+dirs.size()+" dirs took "+(stop-start)+"ms");
+    }
+
     /**
      * Mark a java package as tainted, ie it needs recompilation.
      */
     public void taintPackage(String name, String because) {
+        taintPackage(name, because, null);
+    }
+
+    /**
+     * Mark a java package as tainted via another package, ie the package
+     * depends on a tainted package or on a package whose pubapi has changed.
+     */
+    private void taintPackage(String name, String because, String via) {
         if (!taintedPackages.contains(name)) {
-            if (because != null) Log.debug("Tainting "+Util.justPackageName(name)+" because "+because);
+            if (because != null && Log.isDebugging()) Log.debug("Tainting "+Util.justPackageName(name)+" because "+because);
+            Explain.tainted(name, because, via);
             // It has not been tainted before.
             taintedPackages.add(name);
             needsSaving();
             Package nowp = now.packages().get(name);
             if (nowp != null) {
                 for (String d : nowp.dependents()) {
-                    taintPackage(d, because);
+                    taintPackage(d, because, name);
                 }
             }
         }
@@ -510,9 +690,10 @@ public class JavacState {
      * they belong to.
      */
     public void taintPackagesThatMissArtifacts() {
+        if (missingArtifacts.isEmpty()) return;
         for (Package pkg : prev.packages().values()) {
             for (File f : pkg.artifacts().values()) {
-                if (!f.exists()) {
+                if (missingArtifacts.contains(f.getPath())) {
                     // Hmm, the artifact on disk does not exist! Someone has removed it....
                     // Lets rebuild the package.
                     taintPackage(pkg.name(), ""+f+" is missing.");
@@ -529,7 +710,7 @@ public class JavacState {
         for (Package pkg : prev.packages().values()) {
             for (String dep : pkg.dependencies()) {
                 if (pkgs.contains(dep) && !recentlyCompiled.contains(pkg.name())) {
-                    taintPackage(pkg.name(), " its depending on "+dep);
+                    taintPackage(pkg.name(), " its depending on "+dep, dep);
                 }
             }
         }
@@ -571,7 +752,9 @@ public class JavacState {
                     if (archive != null && prev.archives().contains(archive)) {
                         // If it existed, then the timestamp for the archive
                         // is unchanged. Lets skip testing this class inside the archive!
-                        Log.debug("Assume "+cln+" unchanged since "+archive+" is unchanged");
+                        if (Log.isDebugging()) {
+                            Log.debug("Assume "+cln+" unchanged since "+archive+" is unchanged");
+                        }
                         skip = true;
                         current = new ArrayList<String>();
                         i = current.iterator();
@@ -583,14 +766,18 @@ public class JavacState {
                     if (cmp.equals(loc)) {
                         // Equal means that the come from the same class/zip file
                         // and the timestamp is the same. Assume equal!
-                        Log.debug("Assume "+cln+" unchanged since "+loc+" is unchanged");
+                        if (Log.isDebugging()) {
+                            Log.debug("Assume "+cln+" unchanged since "+loc+" is unchanged");
+                        }
                         skip = true;
                         current = new ArrayList<String>();
                         i = current.iterator();
                         continue;
                     }
                     // The timestamps differ, lets check the pubapi.
-                    Log.debug("Timestamp changed for "+cln+" now checking if pubapi is the same.");
+                    if (Log.isDebugging()) {
+                        Log.debug("Timestamp changed for "+cln+" now checking if pubapi is the same.");
+                    }
                     // Add the package to changedClasspathPackages because this
                     // will trigger a regeneration the package information to javac_state
                     // thus updating the timestamps.
@@ -611,7 +798,9 @@ public class JavacState {
                         if (s.equals(ss)) {
                             // The pubapi of a class has identical hash!
                             // We assume it is equals!
-                            Log.debug("Assume "+s.substring(0, pp)+" unchanged since its hash is unchanged");
+                            if (Log.isDebugging()) {
+                                Log.debug("Assume "+s.substring(0, pp)+" unchanged since its hash is unchanged");
+                            }
                             skip = true;
                             current = new ArrayList<String>();
                             i = current.iterator();
@@ -625,11 +814,17 @@ public class JavacState {
             if (tainted) {
                 Log.info("The pubapi of "+Util.justPackageName(pkg.name())+" has changed!");
                 tainteds.add(pkg.name());
-            } else if (pkg.pubapiForLinkedClasses().size() > 0) {
+            } else if (pkg.pubapiForLinkedClasses().size() > 0 && Log.isDebugging()) {
                 Log.debug("The pubapi of "+Util.justPackageName(pkg.name())+" was unchanged!");
             }
         }
-        taintPackagesDependingOnChangedPackages(tainteds, new HashSet<String>());
+        for (Package pkg : prev.packages().values()) {
+            for (String dep : pkg.dependencies()) {
+                if (tainteds.contains(dep)) {
+                    taintPackage(pkg.name(), "the classpath pubapi used by "+Util.justPackageName(dep)+" has changed", dep);
+                }
+            }
+        }
     }
 
     /**
@@ -637,34 +832,40 @@ public class JavacState {
      * that are not recognized as such, in the javac_state file.
      */
     public void removeUnidentifiedArtifacts() {
-        Set<File> allKnownArtifacts = new HashSet<>();
+        Set<String> allKnownArtifacts = new HashSet<>();
         for (Package pkg : prev.packages().values()) {
-            for (File f : pkg.artifacts().values()) {
-                allKnownArtifacts.add(f);
-            }
+            allKnownArtifacts.addAll(pkg.artifacts().keySet());
         }
         // Do not forget about javac_state....
-        allKnownArtifacts.add(javacState);
-
-        for (File f : binArtifacts) {
-            if (!allKnownArtifacts.contains(f) &&
-                !options.isUnidentifiedArtifactPermitted(f.getAbsolutePath())) {
-                Log.debug("Removing "+f.getPath()+" since it is unknown to the javac_state.");
-                f.delete();
+        allKnownArtifacts.add(javacState.getPath());
+
+        List<File> toDelete = new ArrayList<>();
+        for (String p : binArtifacts) {
+            if (!allKnownArtifacts.contains(p) &&
+                !options.isUnidentifiedArtifactPermitted(new File(p).getAbsolutePath())) {
+                if (Log.isDebugging()) {
+                    Log.debug("Removing "+p+" since it is unknown to the javac_state.");
+                }
+                toDelete.add(new File(p));
             }
         }
-        for (File f : headerArtifacts) {
-            if (!allKnownArtifacts.contains(f)) {
-                Log.debug("Removing "+f.getPath()+" since it is unknown to the javac_state.");
-                f.delete();
+        for (String p : headerArtifacts) {
+            if (!allKnownArtifacts.contains(p)) {
+                if (Log.isDebugging()) {
+                    Log.debug("Removing "+p+" since it is unknown to the javac_state.");
+                }
+                toDelete.add(new File(p));
             }
         }
-        for (File f : gensrcArtifacts) {
-            if (!allKnownArtifacts.contains(f)) {
-                Log.debug("Removing "+f.getPath()+" since it is unknown to the javac_state.");
-                f.delete();
+        for (String p : gensrcArtifacts) {
+            if (!allKnownArtifacts.contains(p)) {
+                if (Log.isDebugging()) {
+                    Log.debug("Removing "+p+" since it is unknown to the javac_state.");
+                }
+                toDelete.add(new File(p));
             }
         }
+        inventory.deleteAll(toDelete);
     }
 
     /**
@@ -674,17 +875,22 @@ public class JavacState {
         // Nothing to do, if nothing was recompiled.
         if (recentlyCompiled.size() == 0) return;
 
+        // The artifacts of the current build, keyed on path.
+        Map<String,File> arts = now.artifacts();
+        List<File> toDelete = new ArrayList<>();
         for (String pkg : now.packages().keySet()) {
             // If this package has not been recompiled, skip the check.
             if (!recentlyCompiled.contains(pkg)) continue;
-            Collection<File> arts = now.artifacts().values();
-            for (File f : fetchPrevArtifacts(pkg).values()) {
-                if (!arts.contains(f)) {
-                    Log.debug("Removing "+f.getPath()+" since it is now superfluous!");
-                    if (f.exists()) f.delete();
+            for (Map.Entry<String,File> e : fetchPrevArtifacts(pkg).entrySet()) {
+                if (!arts.containsKey(e.getKey())) {
+                    if (Log.isDebugging()) {
+                        Log.debug("Removing "+e.getKey()+" since it is now superfluous!");
+                    }
+                    toDelete.add(e.getValue());
                 }
             }
         }
+        inventory.deleteAll(toDelete);
     }
 
     /**
@@ -748,7 +954,9 @@ public class JavacState {
                     deleteContents(f);
                 }
                 if (!options.isUnidentifiedArtifactPermitted(f.getAbsolutePath())) {
-                    Log.debug("Removing "+f.getAbsolutePath());
+                    if (Log.isDebugging()) {
+                        Log.debug("Removing "+f.getAbsolutePath());
+                    }
                     f.delete();
                 }
             }
@@ -762,9 +970,11 @@ public class JavacState {
         Map<String,Transformer> sr = new HashMap<>();
         for (Map.Entry<String,Transformer> e : suffixRules.entrySet()) {
             if (e.getValue().getClass().equals(CopyFile.class)) {
+                e.getValue().setExtra(options);
                 sr.put(e.getKey(), e.getValue());
             }
         }
+        transformedPackages = new HashSet<>(taintedPackages);
         perform(null, binDir, sr);
     }
 
@@ -778,6 +988,9 @@ public class JavacState {
             Class<?> trClass = e.getValue().getClass();
             if (trClass == CompileJavaPackages.class || trClass == CopyFile.class)
                 continue;
+            if (e.getValue() instanceof TranslatorTransformer) {
+                ((TranslatorTransformer) e.getValue()).setTranslatedSources(translatedSources);
+            }
 
             sr.put(e.getKey(), e.getValue());
         }
@@ -795,15 +1008,43 @@ public class JavacState {
         suffixRules.put(".java", compileJavaPackages);
         compileJavaPackages.setExtra(args);
 
+        keepTransformedArtifacts(taintedPackages);
         rcValue[0] = perform(sjavac, binDir, suffixRules);
         recentlyCompiled.addAll(taintedPackages());
         clearTaintedPackages();
+        Explain.nextWave();
         boolean again = !packagesWithChangedPublicApis.isEmpty();
         taintPackagesDependingOnChangedPackages(packagesWithChangedPublicApis, recentlyCompiled);
         packagesWithChangedPublicApis = new HashSet<>();
         return again && rcValue[0];
     }
 
+    /**
+     * A package that is compiled only because a package it depends upon has
+     * changed, was not copied or translated in this build. Carry over the
+     * copies and translations from the previous build, otherwise they are
+     * removed as superfluous after the compile. Javac writes class files to
+     * the bin dir and headers to the header dir, the compile lists those
+     * again, every other artifact of the package is a copy or a translation.
+     */
+    private void keepTransformedArtifacts(Set<String> pkgs) {
+        if (transformedPackages == null) return;
+        for (String pkg : pkgs) {
+            if (transformedPackages.contains(pkg)) continue;
+            Set<URI> keep = new HashSet<>();
+            for (File f : fetchPrevArtifacts(pkg).values()) {
+                boolean fromJavac = f.getName().endsWith(".class")
+                    || (headerDir != null && f.getPath().startsWith(headerDir.getPath()+File.separator));
+                if (!fromJavac) {
+                    keep.add(f.toURI());
+                }
+            }
+            if (!keep.isEmpty()) {
+                now.findModuleFromPackageName(pkg).addArtifacts(pkg, keep);
+            }
+        }
+    }
+
     /**
      * Store the source into the set of sources belonging to the given transform.
      */
@@ -855,8 +1096,16 @@ public class JavacState {
             Map<String,Set<String>> classpathPackageDependencies =
                 Collections.synchronizedMap(new HashMap<String, Set<String>>());
 
-            boolean  r = t.transform(sjavac,
-                                     srcs,
+            // Packages found in the build cache are restored instead of compiled.
+            Map<String,String> cacheKeys = new HashMap<>();
+            Map<String,Set<URI>> toCompile = srcs;
+            if (t == compileJavaPackages && buildCache != null) {
+                toCompile = restoreFromCache(srcs, cacheKeys, packageArtifacts, packageDependencies,
+                                             packagePublicApis, classpathPackageDependencies);
+            }
+
+            boolean  r = toCompile.isEmpty() || t.transform(sjavac,
+                                     toCompile,
                                      visibleSrcs,
                                      visibleClasses,
                                      prev.dependents(),
@@ -917,34 +1166,393 @@ public class JavacState {
                         // This is an incremental compile! The pubapi
                         // did change. Trigger recompilation of dependents.
                         packagesWithChangedPublicApis.add(a.getKey());
+                        Explain.pubapiChanged(a.getKey());
                         Log.info("The pubapi of "+Util.justPackageName(a.getKey())+" has changed!");
                     }
                 }
             }
+            if (r && !cacheKeys.isEmpty()) {
+                storeInCache(toCompile.keySet(), cacheKeys, packageArtifacts, packageDependencies,
+                             packagePublicApis, classpathPackageDependencies);
+            }
         }
         return rc;
     }
 
     /**
-     * Utility method to recursively find all files below a directory.
+     * Restore the packages found in the build cache. An entry can be used if the
+     * pubapis of the packages and classpath classes it depends upon are the same as
+     * when it was stored. Returns the packages that still have to be compiled.
+     */
+    private Map<String,Set<URI>> restoreFromCache(Map<String,Set<URI>> srcs,
+                                                  Map<String,String> cacheKeys,
+                                                  Map<String,Set<URI>> packageArtifacts,
+                                                  Map<String,Set<String>> packageDependencies,
+                                                  Map<String,List<String>> packagePublicApis,
+                                                  Map<String,Set<String>> classpathPackageDependencies) {
+        long start = System.currentTimeMillis();
+        waitForRemoteCacheFetcher();
+        for (Map.Entry<String,Set<URI>> e : srcs.entrySet()) {
+            try {
+                cacheKeys.put(e.getKey(), buildCache.key(e.getKey(), e.getValue()));
+            } catch (IOException ex) {
+                Log.warn("Could not look up "+Util.justPackageName(e.getKey())+" in the build cache: "+ex.getMessage());
+            }
+        }
+        // Packages tainted by the taint analysis have not been fetched yet.
+        fetchFromRemoteCache(cacheKeys);
+        Map<String,List<BuildCache.Entry>> found = new HashMap<>();
+        for (Map.Entry<String,String> e : cacheKeys.entrySet()) {
+            List<BuildCache.Entry> entries = buildCache.lookup(e.getValue());
+            if (!entries.isEmpty() && entries.get(0).pkg().equals(e.getKey())) {
+                found.put(e.getKey(), entries);
+            }
+        }
+        // Assume that the first entry found for each package can be used, then drop
+        // the entries that depend on pubapis that differ, until the first entries of
+        // the remaining packages agree with each other. Thus packages with circular
+        // dependencies can be restored as well.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<List<BuildCache.Entry>> i = found.values().iterator();
+            while (i.hasNext()) {
+                List<BuildCache.Entry> entries = i.next();
+                Iterator<BuildCache.Entry> j = entries.iterator();
+                while (j.hasNext()) {
+                    if (!isUsable(j.next(), srcs, found)) {
+                        j.remove();
+                        changed = true;
+                    }
+                }
+                if (entries.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        Map<String,Set<URI>> toCompile = new HashMap<>(srcs);
+        int restored = 0;
+        for (List<BuildCache.Entry> entries : found.values()) {
+            BuildCache.Entry e = entries.get(0);
+            String pkg = e.pkg();
+            try {
+                packageArtifacts.put(pkg, buildCache.restore(e, binDir, headerDir));
+            } catch (IOException ex) {
+                Log.warn("Could not restore "+Util.justPackageName(pkg)+" from the build cache: "+ex.getMessage());
+                continue;
+            }
+            packageDependencies.put(pkg, e.dependencies());
+            packagePublicApis.put(pkg, e.pubapi());
+            for (Map.Entry<String,Set<String>> cp : e.classpathDependencies().entrySet()) {
+                for (String cls : cp.getValue()) {
+                    Util.addToMapSet(cp.getKey(), cls, classpathPackageDependencies);
+                }
+            }
+            toCompile.remove(pkg);
+            cacheKeys.remove(pkg);
+            Explain.restored(pkg);
+            restored++;
+        }
+        if (restored > 0) {
+            Log.info("Restored "+restored+" packages from the build cache.");
+        }
+        Log.timing("Looking up "+srcs.size()+" packages in the build cache took "+
+                   (System.currentTimeMillis()-start)+"ms");
+        return toCompile;
+    }
+
+    /**
+     * Check that the pubapis the entry was compiled against are still the same.
+     * The pubapi of a package that is about to be restored is taken from its first entry.
+     */
+    private boolean isUsable(BuildCache.Entry e,
+                             Map<String,Set<URI>> srcs,
+                             Map<String,List<BuildCache.Entry>> found) {
+        for (Map.Entry<String,String> f : e.fingerprints().entrySet()) {
+            String dep = f.getKey();
+            List<String> pubapi;
+            if (found.containsKey(dep)) {
+                pubapi = found.get(dep).get(0).pubapi();
+            } else if (srcs.containsKey(dep)) {
+                // This package will be compiled, its new pubapi is not yet known.
+                return false;
+            } else {
+                pubapi = currentPubapi(dep);
+            }
+            if (pubapi == null || !BuildCache.fingerprint(pubapi).equals(f.getValue())) {
+                return false;
+            }
+        }
+        for (Map.Entry<String,Map<String,String>> cp : e.classpathClasses().entrySet()) {
+            for (Map.Entry<String,String> c : cp.getValue().entrySet()) {
+                if (!c.getValue().equals(classpathHash(cp.getKey(), c.getKey()))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store the packages just compiled into the build cache.
+     */
+    private void storeInCache(Set<String> pkgs,
+                              Map<String,String> cacheKeys,
+                              Map<String,Set<URI>> packageArtifacts,
+                              Map<String,Set<String>> packageDependencies,
+                              Map<String,List<String>> packagePublicApis,
+                              Map<String,Set<String>> classpathPackageDependencies) {
+        int stored = 0;
+        for (String pkg : pkgs) {
+            String key = cacheKeys.get(pkg);
+            List<String> pubapi = packagePublicApis.get(pkg);
+            Set<URI> artifacts = packageArtifacts.get(pkg);
+            if (key == null || pubapi == null || artifacts == null) {
+                continue;
+            }
+            BuildCache.Entry e = new BuildCache.Entry(pkg);
+            e.pubapi().addAll(pubapi);
+            Set<String> deps = packageDependencies.get(pkg);
+            if (deps != null) {
+                e.dependencies().addAll(deps);
+                for (String dep : deps) {
+                    if (packagePublicApis.containsKey(dep)) {
+                        e.fingerprints().put(dep, BuildCache.fingerprint(packagePublicApis.get(dep)));
+                    } else if (isSourcePackage(dep)) {
+                        List<String> depPubapi = currentPubapi(dep);
+                        if (depPubapi == null) {
+                            // Nothing to compare against next time, do not cache the package.
+                            e = null;
+                            break;
+                        }
+                        e.fingerprints().put(dep, BuildCache.fingerprint(depPubapi));
+                    } else if (classpathPackageDependencies.containsKey(dep)) {
+                        Map<String,String> classes = new HashMap<>();
+                        for (String cls : classpathPackageDependencies.get(dep)) {
+                            classes.put(cls, classpathHash(dep, cls));
+                        }
+                        e.classpathClasses().put(dep, classes);
+                    }
+                }
+            }
+            try {
+                Path stored_entry = e != null ? buildCache.store(key, e, artifacts, binDir, headerDir) : null;
+                if (stored_entry != null) {
+                    newCacheEntries.add(stored_entry);
+                    stored++;
+                }
+            } catch (IOException ex) {
+                Log.warn("Could not store "+Util.justPackageName(pkg)+" in the build cache: "+ex.getMessage());
+            }
+        }
+        Log.debug("Stored "+stored+" packages in the build cache.");
+    }
+
+    /**
+     * Start fetching the tainted packages from the remote cache into the build cache.
+     * These are the packages with changed sources, the packages tainted later
+     * are fetched when they are about to be compiled.
+     */
+    public void startFetchingFromRemoteCache() {
+        if (remoteCache == null) {
+            return;
+        }
+        final Map<String,Set<URI>> srcs = new HashMap<>();
+        for (String pkg : taintedPackages) {
+            Package p = now.packages().get(pkg);
+            if (p == null) {
+                continue;
+            }
+            for (Source src : p.sources().values()) {
+                if (src.suffix().equals(".java") && !src.isLinkedOnly()) {
+                    Set<URI> uris = srcs.get(pkg);
+                    if (uris == null) {
+                        uris = new HashSet<>();
+                        srcs.put(pkg, uris);
+                    }
+                    uris.add(src.file().toURI());
+                }
+            }
+        }
+        if (srcs.isEmpty()) {
+            return;
+        }
+        remoteCacheFetcher = new Thread("sjavac-remote-cache-fetcher") {
+            @Override
+            public void run() {
+                Map<String,String> keys = new HashMap<>();
+                for (Map.Entry<String,Set<URI>> e : srcs.entrySet()) {
+                    try {
+                        keys.put(e.getKey(), buildCache.key(e.getKey(), e.getValue()));
+                    } catch (IOException ex) {
+                        // The source is gone, nothing to fetch.
+                    }
+                }
+                fetchFromRemoteCache(keys);
+            }
+        };
+        remoteCacheFetcher.setDaemon(true);
+        remoteCacheFetcher.start();
+    }
+
+    private void waitForRemoteCacheFetcher() {
+        if (remoteCacheFetcher == null) {
+            return;
+        }
+        try {
+            remoteCacheFetcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        remoteCacheFetcher = null;
+    }
+
+    /**
+     * Fetch the entries of the keys, that are not already in the build cache,
+     * from the remote cache.
+     */
+    private void fetchFromRemoteCache(Map<String,String> keys) {
+        if (remoteCache == null || remoteCacheFailed) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        final AtomicInteger fetched = new AtomicInteger();
+        List<Callable<Boolean>> fetches = new ArrayList<>();
+        for (final String key : keys.values()) {
+            if (!buildCache.lookup(key).isEmpty()) {
+                continue;
+            }
+            fetches.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    if (remoteCacheFailed) {
+                        return true;
+                    }
+                    try {
+                        for (String variant : remoteCache.variants(key)) {
+                            buildCache.unpack(key, variant, remoteCache.get(key, variant));
+                            fetched.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        remoteCacheFailed("fetch from", e);
+                    }
+                    return true;
+                }
+            });
+        }
+        if (fetches.isEmpty()) {
+            return;
+        }
+        // The fetches mostly wait for the network, use more threads than cores.
+        Util.runAll(fetches, 4*numCores);
+        Log.timing("Fetching "+fetched.get()+" entries for "+fetches.size()+" packages from the remote cache took "+
+                   (System.currentTimeMillis()-start)+"ms");
+    }
+
+    /**
+     * Start sending the entries stored in the build cache during this build to the remote cache.
+     * The upload thread is not a daemon, thus the jvm waits for it to finish before exiting.
      */
-    private static Set<File> findAllFiles(File dir) {
-        Set<File> foundFiles = new HashSet<>();
-        if (dir == null) {
-            return foundFiles;
+    public void startUploadingToRemoteCache() {
+        if (remoteCache == null || remoteCacheFailed || newCacheEntries.isEmpty()) {
+            return;
         }
-        recurse(dir, foundFiles);
-        return foundFiles;
+        final List<Path> entries = new ArrayList<>(newCacheEntries);
+        newCacheEntries.clear();
+        remoteCacheUploader = new Thread("sjavac-remote-cache-uploader") {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                int sent = 0;
+                for (Path entry : entries) {
+                    try {
+                        // The entry dir is cache/xx/key/variant
+                        String key = entry.getParent().getFileName().toString();
+                        String variant = entry.getFileName().toString();
+                        remoteCache.put(key, variant, BuildCache.pack(entry));
+                        sent++;
+                    } catch (IOException e) {
+                        remoteCacheFailed("send to", e);
+                        break;
+                    }
+                }
+                Log.timing("Sending "+sent+" entries to the remote cache took "+
+                           (System.currentTimeMillis()-start)+"ms");
+            }
+        };
+        remoteCacheUploader.start();
     }
 
-    private static void recurse(File dir, Set<File> foundFiles) {
-        for (File f : dir.listFiles()) {
-            if (f.isFile()) {
-                foundFiles.add(f);
-            } else if (f.isDirectory()) {
-                recurse(f, foundFiles);
+    /**
+     * Wait at most timeoutMillis for the entries to be sent to the remote cache,
+     * before the jvm exits. Return false if they were not all sent in time.
+     */
+    public boolean waitForRemoteCacheUploader(long timeoutMillis) {
+        if (remoteCacheUploader == null) {
+            return true;
+        }
+        try {
+            remoteCacheUploader.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (remoteCacheUploader.isAlive()) {
+            Log.warn("Gave up waiting for the remote cache after "+timeoutMillis+"ms, not all packages were sent.");
+            return false;
+        }
+        remoteCacheUploader = null;
+        return true;
+    }
+
+    private void remoteCacheFailed(String what, IOException e) {
+        if (!remoteCacheFailed) {
+            remoteCacheFailed = true;
+            Log.warn("Could not "+what+" the remote cache "+options.getRemoteCache()+": "+e+
+                     ", it is not used for the rest of this build.");
+        }
+    }
+
+    private boolean isSourcePackage(String pkg) {
+        Package p = now.packages().get(pkg);
+        return p != null && !p.sources().isEmpty();
+    }
+
+    /**
+     * The pubapi of a source package, as compiled in this build or in an earlier build.
+     */
+    private List<String> currentPubapi(String pkg) {
+        BuildState s = recompiledPackages.contains(pkg) ? now : prev;
+        Package p = s.packages().get(pkg);
+        return p != null && p.existsInJavacState() ? p.pubapiForCompiledSources() : null;
+    }
+
+    /**
+     * The hash of the pubapi of a classpath class. Use the pubapi extracted during
+     * this build if there is one, otherwise ask javac.
+     */
+    private String classpathHash(String pkg, String cls) {
+        String hash = classpathHashes.get(cls);
+        if (hash != null) {
+            return hash;
+        }
+        Package p = now.packages().get(pkg);
+        if (p != null) {
+            String prefix = "PUBAPI "+cls+" ";
+            for (String s : p.pubapiForLinkedClasses()) {
+                if (s.startsWith(prefix)) {
+                    hash = BuildCache.classpathHash(Collections.singletonList(s));
+                    break;
+                }
+            }
+        }
+        if (hash == null) {
+            if (classpathComp == null) {
+                classpathComp = new SjavacImpl(options);
             }
+            hash = BuildCache.classpathHash(classpathComp.getPublicApi(cls).api);
         }
+        classpathHashes.put(cls, hash);
+        return hash;
     }
 
     /**
@@ -26,10 +26,20 @@
 package com.sun.tools.sjavac;
 
 import java.io.PrintStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Utility class only for sjavac logging.
- * The log level can be set using for example --log=DEBUG on the sjavac command line.
+ * The log level can be set using for example -log:debug on the sjavac command line.
+ *
+ * Messages are queued without locking and written in batches by a background
+ * thread, thus threads that log do not wait for the streams. Warnings and
+ * errors, and all messages queued before them, are written immediately.
+ * The log is flushed when sjavac returns and when the jvm exits.
+ * Build expensive debug messages only if {@code isDebugging()}.
  *
  *  <p><b>This is NOT part of any supported API.
  *  If you write code that depends on this, you do so at your own risk.
@@ -37,7 +47,7 @@ import java.io.PrintStream;
  *  deletion without notice.</b>
  */
 public class Log {
-    private static PrintStream out, err;
+    private static PrintStream out = System.out, err = System.err;
 
     public final static int WARN = 1;
     public final static int INFO = 2;
@@ -46,39 +56,123 @@ public class Log {
     public final static int TRACE = 5;
     private static int level = WARN;
 
+    // A thread that logs more than this many messages ahead of the
+    // writer thread writes them itself.
+    private final static int MAX_PENDING = 16384;
+    private final static long WRITE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final ConcurrentLinkedQueue<Message> pending = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger numPending = new AtomicInteger();
+    // Held while writing, so that the messages are written in the order they were queued.
+    private static final Object writeLock = new Object();
+    private static final Thread writer;
+
+    static {
+        writer = new Thread("sjavac log writer") {
+            @Override
+            public void run() {
+                while (true) {
+                    LockSupport.parkNanos(WRITE_INTERVAL);
+                    flush();
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private static class Message {
+        final PrintStream target;
+        final String text;
+
+        Message(PrintStream target, String text) {
+            this.target = target;
+            this.text = text;
+        }
+    }
+
     static public void trace(String msg) {
         if (level >= TRACE) {
-            out.println(msg);
+            log(out, msg);
         }
     }
 
     static public void debug(String msg) {
         if (level >= DEBUG) {
-            out.println(msg);
+            log(out, msg);
         }
     }
 
     static public void timing(String msg) {
         if (level >= TIMING) {
-            out.println(msg);
+            log(out, msg);
         }
     }
 
     static public void info(String msg) {
         if (level >= INFO) {
-            out.println(msg);
+            log(out, msg);
         }
     }
 
     static public void warn(String msg) {
-        err.println(msg);
+        log(err, msg);
+        flush();
     }
 
     static public void error(String msg) {
-        err.println(msg);
+        log(err, msg);
+        flush();
+    }
+
+    /**
+     * Queue a line for the given stream, it is written by the writer thread.
+     */
+    static public void log(PrintStream target, String msg) {
+        pending.add(new Message(target, msg));
+        int n = numPending.incrementAndGet();
+        if (n > MAX_PENDING) {
+            flush();
+        } else if (n == 1) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Write all queued messages, one batch per stream.
+     */
+    static public void flush() {
+        synchronized (writeLock) {
+            PrintStream current = null;
+            StringBuilder batch = new StringBuilder();
+            for (Message m = pending.poll(); m != null; m = pending.poll()) {
+                numPending.decrementAndGet();
+                if (m.target != current) {
+                    write(current, batch);
+                    current = m.target;
+                }
+                batch.append(m.text).append(System.lineSeparator());
+            }
+            write(current, batch);
+        }
+    }
+
+    private static void write(PrintStream target, StringBuilder batch) {
+        if (target != null && batch.length() > 0) {
+            target.print(batch);
+            target.flush();
+        }
+        batch.setLength(0);
     }
 
     static public void initializeLog(PrintStream o, PrintStream e) {
+        flush();
         out = o;
         err = e;
     }
@@ -26,13 +26,14 @@
  * licensed from Fredrik to you under the above license. */
 package com.sun.tools.sjavac;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
 import java.nio.file.Path;
 import java.nio.file.Files;
 
-import com.sun.tools.sjavac.client.SjavacClient;
+import com.sun.tools.sjavac.client.DistributedSjavac;
 import com.sun.tools.sjavac.comp.SjavacImpl;
 import com.sun.tools.sjavac.comp.PooledSjavac;
 import com.sun.tools.sjavac.options.Options;
@@ -159,6 +160,9 @@ public class Main {
 
     private JavacState javac_state;
 
+    // How long a build waits at exit for the remote cache to receive its packages.
+    private final static long REMOTE_CACHE_UPLOAD_TIMEOUT = 60000;
+
     public static void main(String... args)  {
         if (args.length > 0 && args[0].startsWith("-startserver:")) {
             if (args.length>1) {
@@ -177,12 +181,23 @@ public class Main {
         }
         Main main = new Main();
         int rc = main.go(args, System.out, System.err);
+        // Let the remote cache receive the packages of this build before the jvm exits.
+        main.waitForRemoteCacheUploader();
         // Remove the portfile, but only if this background=false was used.
         SjavacServer.cleanup(args);
         System.exit(rc);
     }
 
     public int go(String[] args, PrintStream out, PrintStream err) {
+        try {
+            return build(args, out, err);
+        } finally {
+            // The log is written by a background thread, make sure the caller sees all of it.
+            Log.flush();
+        }
+    }
+
+    private int build(String[] args, PrintStream out, PrintStream err) {
 
         Log.initializeLog(out, err);
 
@@ -199,10 +214,14 @@ public class Main {
         if (!validateOptions(options))
             return -1;
 
+        Metrics.reset();
+        Explain.reset(options.isExplainEnabled());
+        Metrics.Span build = Metrics.begin("build", "Building");
+
         if (options.stopServerFlag() && 
             Util.extractBooleanOption("background", options.getServerConf(), true)) 
         {
-            SjavacClient sjavac = new SjavacClient(options);
+            Sjavac sjavac = DistributedSjavac.connect(options);
             sjavac.shutdown();
             return 0;
         }
@@ -225,7 +244,9 @@ public class Main {
             return -1;
 
         // Load the prev build state database.
+        Metrics.Span phase = Metrics.begin("Loading javac_state");
         javac_state = JavacState.load(options, out, err);
+        phase.end();
 
         // Setup the suffix rules from the command line.
         Map<String, Transformer> suffixRules = new HashMap<>();
@@ -248,6 +269,7 @@ public class Main {
 
         // Find the files, this will automatically populate the found modules
         // with found packages where the sources are found!
+        phase = Metrics.begin("Scanning sources");
         findSourceFiles(options.getSources(),
                         suffixRules.keySet(),
                         sources,
@@ -292,7 +314,11 @@ public class Main {
 //      Map<String,Source> modules_to_link_to = new HashMap<String,Source>();
 //      findFiles(args, "-modulepath", Util.set(".class"), modules_to_link_to, modules, current_module, true);
 
+        phase.arg("sources", sources.size()).arg("linkable", sources_to_link_to.size()).end();
+        Metrics.count("sources", sources.size());
+
         // Add the set of sources to the build database.
+        phase = Metrics.begin("Checking sources");
         javac_state.now().flattenPackagesSourcesAndArtifacts(modules);
         javac_state.now().checkInternalState("checking sources", false, sources);
         javac_state.now().checkInternalState("checking linked sources", true, sources_to_link_to);
@@ -301,11 +327,15 @@ public class Main {
         // If there is any change in the source files, taint packages
         // and mark the database in need of saving.
         javac_state.checkSourceStatus(false);
+        // Fetch the packages with changed sources from the remote cache,
+        // while the rest of the taint analysis is done.
+        javac_state.startFetchingFromRemoteCache();
 
         // Find all existing artifacts. Their timestamp will match the last modified timestamps stored
         // in javac_state, simply because loading of the JavacState will clean out all artifacts
         // that do not match the javac_state database.
         javac_state.findAllArtifacts();
+        phase.end();
 
         // Remove unidentified artifacts from the bin, gensrc and header dirs.
         // (Unless we allow them to be there.)
@@ -313,6 +343,7 @@ public class Main {
         // For examples, files that have been manually copied into these dirs.
         // Artifacts with bad timestamps (ie the on disk timestamp does not match the timestamp
         // in javac_state) have already been removed when the javac_state was loaded.
+        phase = Metrics.begin("Tainting packages");
         if (!options.areUnidentifiedArtifactsPermitted()) {
             javac_state.removeUnidentifiedArtifacts();
         }
@@ -320,22 +351,28 @@ public class Main {
         javac_state.taintPackagesThatMissArtifacts();
         // Check recorded classpath public apis. Taint packages that depend on
         // classpath classes whose public apis have changed.
-        long start = System.currentTimeMillis();
+        Metrics.Span classpath = Metrics.begin("Scanning classpath apis");
         javac_state.taintPackagesDependingOnChangedClasspathPackages();
-        long stop = System.currentTimeMillis();
-        Log.timing("Scanning classpath apis took "+(stop-start)+"ms");
+        classpath.end();
+        phase.arg("tainted", javac_state.taintedPackages().size()).end();
+        Metrics.count("tainted packages", javac_state.taintedPackages().size());
         // Now clean out all known artifacts belonging to tainted packages.
         javac_state.deleteClassArtifactsInTaintedPackages();
         // Copy files, for example property files, images files, xml files etc etc.
+        phase = Metrics.begin("Copying");
         javac_state.performCopying(Util.pathToFile(options.getDestDir()), suffixRules);
+        phase.end();
         // Translate files, for example compile properties or compile idls.
+        phase = Metrics.begin("Translating");
         javac_state.performTranslation(Util.pathToFile(gensrc), suffixRules);
+        phase.end();
         // Add any potentially generated java sources to the tobe compiled list.
         // (Generated sources must always have a package.)
         Map<String,Source> generated_sources = new HashMap<>();
 
         try {
 
+            phase = Metrics.begin("Scanning generated sources");
             Source.scanRoot(Util.pathToFile(options.getGenSrcDir()), Util.set(".java"), null, null, null, null,
                     generated_sources, modules, current_module, false, true, false);
             javac_state.now().flattenPackagesSourcesAndArtifacts(modules);
@@ -348,6 +385,7 @@ public class Main {
             // If any difference is detected, then we will fail hard here.
             // This is an important safety net.
             javac_state.compareWithMakefileList(Util.pathToFile(options.getSourceReferenceList()));
+            phase.arg("sources", generated_sources.size()).end();
 
             // Do the compilations, repeatedly until no tainted packages exist.
             boolean again;
@@ -358,29 +396,56 @@ public class Main {
             boolean background = Util.extractBooleanOption("background", options.getServerConf(), true);
             // Create an sjavac implementation to be used for compilation
             if (background) {
-                sjavac = new SjavacClient(options);
+                sjavac = DistributedSjavac.connect(options);
             } else {
                 int poolsize = Util.extractIntOption("poolsize", options.getServerConf());
                 if (poolsize <= 0)
                     poolsize = Runtime.getRuntime().availableProcessors();
                 sjavac = new PooledSjavac(new SjavacImpl(), poolsize);
             }
+            int wave = 0;
             do {
+                wave++;
+                phase = Metrics.begin("Compiling wave "+wave).arg("packages", javac_state.taintedPackages().size());
                 // Clean out artifacts in tainted packages.
                 javac_state.deleteClassArtifactsInTaintedPackages();
                 again = javac_state.performJavaCompilations(sjavac, options, recently_compiled, rc);
+                phase.end();
                 if (!rc[0]) break;
             } while (again);
+            Metrics.count("compile waves", wave);
+            Metrics.count("recompiled packages", recently_compiled.size());
+            // Class files moved aside, but not generated again, are now gone for good.
+            // Unless the compile failed and its output was staged, then the old
+            // class files are put back.
+            if (!rc[0] && options.isStageOutput()) {
+                javac_state.restoreMovedAsideArtifacts();
+            } else {
+                javac_state.deleteMovedAsideArtifacts();
+            }
             // Only update the state if the compile went well.
             if (rc[0]) {
+                phase = Metrics.begin("Saving javac_state");
                 javac_state.save();
+                phase.end();
+                // Send the newly compiled packages to the remote cache, in the background.
+                javac_state.startUploadingToRemoteCache();
+                phase = Metrics.begin("Removing superfluous artifacts");
                 // Reflatten only the artifacts.
                 javac_state.now().flattenArtifacts(modules);
                 // Remove artifacts that were generated during the last compile, but not this one.
                 javac_state.removeSuperfluousArtifacts(recently_compiled);
+                phase.end();
             }
             if (!background)
                 sjavac.shutdown();
+            build.arg("ok", rc[0]).end();
+            if (options.isMetricsEnabled()) {
+                writeMetrics(Util.pathToFile(options.getStateDir()));
+            }
+            if (options.isExplainEnabled()) {
+                writeExplanation(Util.pathToFile(options.getStateDir()));
+            }
             return rc[0] ? 0 : -1;
         } catch (ProblemException e) {
             Log.error(e.getMessage());
@@ -391,6 +456,31 @@ public class Main {
         }
     }
 
+    /**
+     * Wait for the packages compiled by the last build to be sent to the remote cache.
+     */
+    public void waitForRemoteCacheUploader() {
+        if (javac_state != null) {
+            javac_state.waitForRemoteCacheUploader(REMOTE_CACHE_UPLOAD_TIMEOUT);
+        }
+    }
+
+    private static void writeMetrics(File stateDir) {
+        try {
+            Metrics.write(stateDir);
+        } catch (IOException e) {
+            Log.warn("Could not write the build metrics into "+stateDir+": "+e.getMessage());
+        }
+    }
+
+    private static void writeExplanation(File stateDir) {
+        try {
+            Explain.write(stateDir);
+        } catch (IOException e) {
+            Log.warn("Could not write the explanation of the build into "+stateDir+": "+e.getMessage());
+        }
+    }
+
     private static boolean validateOptions(Options options) {
 
         String err = null;
@@ -416,6 +506,10 @@ public class Main {
         } else if (options.getTranslationRules().size() > 1
                 && options.getGenSrcDir() == null) {
             err = "You have translators but no gensrc dir (-s) specified!";
+        } else if (options.getRemoteCache() != null && options.getCacheDir() == null) {
+            err = "A remote cache (-remote-cache:) needs a local cache dir (-cache-dir:)";
+        } else if (options.getRemoteCache() != null && !options.getRemoteCache().matches("https?://.+")) {
+            err = "The remote cache must be an http or https url: "+options.getRemoteCache();
         }
 
         if (err != null)
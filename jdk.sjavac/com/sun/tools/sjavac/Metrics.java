@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+
+package com.sun.tools.sjavac;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Timers and counters for the phases of a build. Every phase, and every
+ * compile chunk, is recorded as a timed span with its thread and
+ * arguments. With -Xmetrics the spans and counters are written to the
+ * state dir, as a json report and as a Chrome trace event file that can
+ * be opened in chrome://tracing or Perfetto.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class Metrics {
+
+    public final static String REPORT = "javac_metrics.json";
+    public final static String TRACE = "javac_trace.json";
+
+    // Guarded by Metrics.class.
+    private static long originNanos = System.nanoTime();
+    private static long originMillis = System.currentTimeMillis();
+    private static final List<Span> spans = new ArrayList<>();
+    private static final Map<String,Long> counters = new TreeMap<>();
+
+    /**
+     * A timed phase, recorded when it ends.
+     */
+    public static class Span {
+        final String category;
+        final String name;
+        final long startNanos;
+        long durationNanos;
+        final long threadId;
+        final String threadName;
+        final Map<String,Object> args = new LinkedHashMap<>();
+
+        Span(String category, String name) {
+            this.category = category;
+            this.name = name;
+            this.startNanos = System.nanoTime();
+            this.threadId = Thread.currentThread().getId();
+            this.threadName = Thread.currentThread().getName();
+        }
+
+        /**
+         * Add an argument, shown with the span in the report and the trace.
+         */
+        public Span arg(String key, Object value) {
+            args.put(key, value);
+            return this;
+        }
+
+        /**
+         * End the span and record it.
+         * @return The duration in milliseconds.
+         */
+        public long end() {
+            durationNanos = System.nanoTime()-startNanos;
+            synchronized (Metrics.class) {
+                spans.add(this);
+            }
+            long millis = durationNanos/1000000;
+            if (category.equals("phase")) {
+                Log.timing(name+" took "+millis+"ms");
+            }
+            return millis;
+        }
+    }
+
+    /**
+     * Forget the spans and counters of an earlier build.
+     */
+    public static synchronized void reset() {
+        originNanos = System.nanoTime();
+        originMillis = System.currentTimeMillis();
+        spans.clear();
+        counters.clear();
+    }
+
+    /**
+     * Start timing a phase of the build.
+     */
+    public static Span begin(String name) {
+        return new Span("phase", name);
+    }
+
+    /**
+     * Start timing something of the given category, for example a compile chunk.
+     */
+    public static Span begin(String category, String name) {
+        return new Span(category, name);
+    }
+
+    /**
+     * Add n to a counter.
+     */
+    public static synchronized void count(String name, long n) {
+        Long c = counters.get(name);
+        counters.put(name, (c == null ? 0 : c) + n);
+    }
+
+    /**
+     * Write the json report and the trace into the state dir.
+     */
+    public static synchronized void write(File stateDir) throws IOException {
+        writeReport(new File(stateDir, REPORT));
+        writeTrace(new File(stateDir, TRACE));
+    }
+
+    static synchronized void writeReport(File file) throws IOException {
+        StringBuilder b = new StringBuilder();
+        b.append("{\n");
+        b.append("  \"started\": ").append(originMillis).append(",\n");
+        b.append("  \"millis\": ").append((System.nanoTime()-originNanos)/1000000).append(",\n");
+        b.append("  \"counters\": {");
+        String sep = "\n";
+        for (Map.Entry<String,Long> c : counters.entrySet()) {
+            b.append(sep).append("    ").append(quote(c.getKey())).append(": ").append(c.getValue());
+            sep = ",\n";
+        }
+        b.append("\n  },\n");
+        b.append("  \"spans\": [");
+        sep = "\n";
+        for (Span s : spans) {
+            b.append(sep).append("    { \"category\": ").append(quote(s.category))
+             .append(", \"name\": ").append(quote(s.name))
+             .append(", \"startMillis\": ").append((s.startNanos-originNanos)/1000000)
+             .append(", \"millis\": ").append(s.durationNanos/1000000)
+             .append(", \"thread\": ").append(quote(s.threadName));
+            appendArgs(b, s);
+            b.append(" }");
+            sep = ",\n";
+        }
+        b.append("\n  ]\n}\n");
+        write(file, b);
+    }
+
+    /**
+     * Write the spans as complete events of the trace event format.
+     */
+    static synchronized void writeTrace(File file) throws IOException {
+        StringBuilder b = new StringBuilder();
+        b.append("{ \"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+        String sep = "\n";
+        Map<Long,String> threads = new TreeMap<>();
+        for (Span s : spans) {
+            threads.put(s.threadId, s.threadName);
+            b.append(sep).append("  { \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(s.threadId)
+             .append(", \"cat\": ").append(quote(s.category))
+             .append(", \"name\": ").append(quote(s.name))
+             .append(", \"ts\": ").append((s.startNanos-originNanos)/1000)
+             .append(", \"dur\": ").append(s.durationNanos/1000);
+            appendArgs(b, s);
+            b.append(" }");
+            sep = ",\n";
+        }
+        for (Map.Entry<Long,String> t : threads.entrySet()) {
+            b.append(sep).append("  { \"ph\": \"M\", \"pid\": 1, \"tid\": ").append(t.getKey())
+             .append(", \"name\": \"thread_name\", \"args\": { \"name\": ").append(quote(t.getValue())).append(" } }");
+        }
+        b.append("\n] }\n");
+        write(file, b);
+    }
+
+    private static void appendArgs(StringBuilder b, Span s) {
+        if (s.args.isEmpty()) {
+            return;
+        }
+        b.append(", \"args\": {");
+        String sep = " ";
+        for (Map.Entry<String,Object> a : s.args.entrySet()) {
+            Object v = a.getValue();
+            b.append(sep).append(quote(a.getKey())).append(": ")
+             .append(v instanceof Number || v instanceof Boolean ? v.toString() : quote(String.valueOf(v)));
+            sep = ", ";
+        }
+        b.append(" }");
+    }
+
+    static String quote(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': b.append("\\\""); break;
+                case '\\': b.append("\\\\"); break;
+                case '\n': b.append("\\n"); break;
+                case '\t': b.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+            }
+        }
+        return b.append('"').toString();
+    }
+
+    private static void write(File file, StringBuilder b) throws IOException {
+        Files.write(file.toPath(), b.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
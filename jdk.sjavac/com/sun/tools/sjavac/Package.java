@@ -80,6 +80,8 @@ public class Package implements Comparable<Package> {
     private Map<String,Source> sources = new HashMap<>();
     // This package generated these artifacts.
     private Map<String,File> artifacts = new HashMap<>();
+    // The last modified timestamps of the artifacts, as loaded from javac_state.
+    private Map<String,Long> loaded_artifact_timestamps = new HashMap<>();
     // Pubapi for compiled sources
     private List<String> pubapi_for_compiled_sources = new ArrayList<>();
     // Pubapi for linked classes
@@ -105,6 +107,7 @@ public class Package implements Comparable<Package> {
     public String dirname() { return dirname; }
     public Map<String,Source> sources() { return sources; }
     public Map<String,File> artifacts() { return artifacts; }
+    public Map<String,Long> loadedArtifactTimestamps() { return loaded_artifact_timestamps; }
     public List<String> pubapiForCompiledSources() { return pubapi_for_compiled_sources; }
     public List<String> pubapiForLinkedClasses() { return pubapi_for_linked_classes; }
 
@@ -292,15 +295,10 @@ public class Package implements Comparable<Package> {
         String fn = l.substring(2,dp);
         long last_modified = Long.parseLong(l.substring(dp+1));
         File f = new File(fn);
-        if (f.exists() && f.lastModified() != last_modified) {
-            // Hmm, the artifact on disk does not have the same last modified
-            // timestamp as the information from the build database.
-            // We no longer trust the artifact on disk. Delete it.
-            // The smart javac wrapper will then rebuild the artifact.
-            Log.debug("Removing "+f.getPath()+" since its timestamp does not match javac_state.");
-            f.delete();
-        }
+        // The timestamp is checked against the artifact on disk
+        // by JavacState.validateArtifacts once all of javac_state is loaded.
         artifacts.put(f.getPath(), f);
+        loaded_artifact_timestamps.put(f.getPath(), last_modified);
     }
 
     public void saveArtifacts(StringBuilder b) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A build cache shared by several hosts, for example by the CI agents and
+ * the developers working on the same project. The remote cache stores the
+ * entries of the local BuildCache, packed by BuildCache.pack, under the key
+ * and variant of the entry.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public interface RemoteCache {
+
+    /**
+     * The variants stored under the key, an empty list if there are none.
+     */
+    List<String> variants(String key) throws IOException;
+
+    /**
+     * The packed entry stored under the key and variant.
+     */
+    byte[] get(String key, String variant) throws IOException;
+
+    /**
+     * Store the packed entry under the key and variant.
+     */
+    void put(String key, String variant, byte[] packed) throws IOException;
+
+    /**
+     * Create the remote cache for the url given to -remote-cache:
+     */
+    public static class Factory {
+        public static RemoteCache create(String url) {
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                return new HttpRemoteCache(url);
+            }
+            throw new IllegalArgumentException("Unsupported remote cache "+url);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A translator turns a single source file into a predictable set of generated
+ * files, for example a properties file into a java source file. Unlike a
+ * Transformer, a translator declares its outputs before it runs and reports
+ * a cache key. This lets sjavac decide by itself when a translation can
+ * be skipped, run the translations in parallel and cache their results.
+ *
+ * Translators are found with the ServiceLoader (list the class in
+ * META-INF/services/com.sun.tools.sjavac.Translator) and selected with
+ * -tr .suffix=name, where name is the name() of the translator. A class
+ * name of a translator can also be given to -tr directly.
+ *
+ * The translate method is called concurrently for different source files
+ * and must therefore be thread safe.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public interface Translator {
+
+    /**
+     * The name that selects this translator in a -tr rule.
+     */
+    String name();
+
+    /**
+     * Any extra information given to the -tr rule, i.e. the text after the
+     * comma in -tr .suffix=name,extra. Null if there was none.
+     */
+    void setExtra(String extra);
+
+    /**
+     * A key that changes whenever the translator would produce different output
+     * from the same source file, e.g. its version and the extra information.
+     */
+    String cacheKey();
+
+    /**
+     * The names of the files generated from the source file, relative to
+     * the directory of the package in the output root.
+     *
+     * @param pkgName the java package name, e.g. java.util
+     * @param srcName the file name of the source, e.g. Names.properties
+     */
+    List<String> outputs(String pkgName, String srcName);
+
+    /**
+     * Translate the source file. Returns the content of every output file
+     * declared by outputs, keyed on the output name.
+     *
+     * @param pkgName the java package name, e.g. java.util
+     * @param src the source file
+     */
+    Map<String,byte[]> translate(String pkgName, File src) throws IOException;
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014,
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.tools.sjavac.options.Options;
+import com.sun.tools.sjavac.server.Sjavac;
+
+/**
+ * Runs a Translator as a Transformer. Since the translator declares its
+ * outputs, a source file whose outputs all exist and whose content is the
+ * same as when it was last translated, is not translated at all. The
+ * remaining source files are translated in parallel and only changed
+ * outputs are written, unchanged outputs keep their timestamps. The
+ * fingerprint of every translated source is kept in javac_state.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class TranslatorTransformer implements Transformer {
+
+    final Translator translator;
+    // The fingerprint of the content of each source, by path, when its
+    // outputs were last produced.
+    Map<String,String> translatedSources = new ConcurrentHashMap<>();
+
+    public TranslatorTransformer(Translator t) {
+        translator = t;
+    }
+
+    /**
+     * Use the fingerprints of the sources translated by previous builds. The
+     * map is updated with the sources translated by this transformer.
+     */
+    public void setTranslatedSources(Map<String,String> ts) {
+        translatedSources = ts;
+    }
+
+    public Translator translator() {
+        return translator;
+    }
+
+    /**
+     * Find the translator with the given name using the ServiceLoader.
+     * Returns null if there is none.
+     */
+    public static Translator findTranslator(String name) {
+        for (Translator t : ServiceLoader.load(Translator.class)) {
+            if (t.name().equals(name)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The string stored in javac_state for the -tr rule. It contains the cache key,
+     * thus a translator that changes its output forces a fresh build.
+     */
+    public String stateString() {
+        return translator.name()+"["+translator.cacheKey()+"]";
+    }
+
+    public void setExtra(String e) {
+        // The -tr rule passes the extra information including its leading comma.
+        if (e != null && e.startsWith(",")) {
+            e = e.substring(1);
+        }
+        translator.setExtra(e);
+    }
+
+    public void setExtra(Options a) {
+    }
+
+    public boolean transform(Sjavac sjavac,
+                             Map<String,Set<URI>> pkgSrcs,
+                             Set<URI>             visibleSrcs,
+                             Map<URI,Set<String>> visibleClasses,
+                             Map<String,Set<String>> oldPackageDependents,
+                             URI destRoot,
+                             final Map<String,Set<URI>> packageArtifacts,
+                             Map<String,Set<String>> packageDependencies,
+                             Map<String,List<String>> packagePublicApis,
+                             Map<String,Set<String>> classpathPackageDependencies,
+                             int debugLevel,
+                             boolean incremental,
+                             int numCores,
+                             PrintStream out,
+                             PrintStream err) {
+        List<Callable<Boolean>> translations = new ArrayList<>();
+        for (String pkgName : pkgSrcs.keySet()) {
+            final String javaPkgName = Util.justPackageName(pkgName);
+            final File destDir = new File(new File(destRoot), Util.toFileSystemPath(pkgName));
+            Set<URI> as = packageArtifacts.get(pkgName);
+            if (as == null) {
+                as = new HashSet<>();
+                packageArtifacts.put(pkgName, as);
+            }
+            for (URI u : pkgSrcs.get(pkgName)) {
+                final File src = new File(u);
+                final List<File> dests = new ArrayList<>();
+                for (String n : translator.outputs(javaPkgName, src.getName())) {
+                    File dest = new File(destDir, n);
+                    dests.add(dest);
+                    as.add(dest.toURI());
+                }
+                translations.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        String fingerprint;
+                        try {
+                            fingerprint = BuildCache.fingerprint(Files.readAllBytes(src.toPath()));
+                        } catch (IOException e) {
+                            Log.error("Could not read "+src.getPath()+": "+e.getMessage());
+                            return false;
+                        }
+                        if (isUpToDate(src, fingerprint, dests)) {
+                            return true;
+                        }
+                        if (!translate(javaPkgName, src, destDir, dests)) {
+                            return false;
+                        }
+                        translatedSources.put(src.getPath(), fingerprint);
+                        return true;
+                    }
+                });
+            }
+        }
+        return Util.runAll(translations, numCores);
+    }
+
+    /**
+     * All outputs exist and the source has not changed since they were produced.
+     * The outputs found in javac_state with another timestamp have already been
+     * deleted, thus an output that exists is the one that was produced.
+     */
+    private boolean isUpToDate(File src, String fingerprint, List<File> dests) {
+        if (!fingerprint.equals(translatedSources.get(src.getPath()))) {
+            return false;
+        }
+        for (File dest : dests) {
+            if (!dest.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean translate(String javaPkgName, File src, File destDir, List<File> dests) {
+        Map<String,byte[]> result;
+        try {
+            result = translator.translate(javaPkgName, src);
+        } catch (IOException e) {
+            Log.error("Could not translate "+src.getPath()+": "+e.getMessage());
+            return false;
+        }
+        boolean rc = true;
+        for (File dest : dests) {
+            byte[] content = result.get(dest.getName());
+            if (content == null) {
+                Log.error("The translator "+translator.name()+" did not produce the declared output "+
+                          dest.getName()+" from "+src.getPath());
+                rc = false;
+                continue;
+            }
+            try {
+                File dir = dest.getParentFile();
+                // Another translation might just have created it.
+                if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                    Log.error("Could not create the directory "+dir.getPath());
+                    return false;
+                }
+                if (Util.writeIfChanged(dest, content)) {
+                    Log.info("Translating "+src.getName()+" into "+dest.getName());
+                } else if (Log.isDebugging()) {
+                    Log.debug("Translating "+src.getName()+" gave an unchanged "+dest.getName());
+                }
+            } catch (IOException e) {
+                Log.error("Could not write file "+dest.getPath());
+                rc = false;
+            }
+        }
+        Set<String> undeclared = new TreeSet<>(result.keySet());
+        for (File dest : dests) {
+            undeclared.remove(dest.getName());
+        }
+        if (!undeclared.isEmpty()) {
+            Log.error("The translator "+translator.name()+" produced the undeclared outputs "+
+                      undeclared+" from "+src.getPath());
+            rc = false;
+        }
+        return rc;
+    }
+}
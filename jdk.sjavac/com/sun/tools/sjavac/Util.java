@@ -27,6 +27,10 @@
 package com.sun.tools.sjavac;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.ArrayList;
@@ -35,6 +39,11 @@ import java.util.Set;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Utilities.
@@ -224,5 +233,68 @@ public class Util {
         list.add(v);
     }
 
-        
+    /**
+     * Return the number of bytes allocated on the heap by the current thread,
+     * or -1 if the jvm cannot tell.
+     */
+    public static long threadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Run the tasks on at most numThreads threads, or one per core if numThreads
+     * is not positive, and wait for all of them. Returns true if all tasks returned true.
+     */
+    public static boolean runAll(List<Callable<Boolean>> tasks, int numThreads) {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        boolean rc = true;
+        if (numThreads == 1 || tasks.size() <= 1) {
+            for (Callable<Boolean> t : tasks) {
+                try {
+                    rc &= t.call();
+                } catch (Exception e) {
+                    Log.error(e.getMessage());
+                    rc = false;
+                }
+            }
+            return rc;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+        try {
+            for (Future<Boolean> f : executor.invokeAll(tasks)) {
+                try {
+                    rc &= f.get();
+                } catch (ExecutionException e) {
+                    Log.error(e.getCause().getMessage());
+                    rc = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rc = false;
+        } finally {
+            executor.shutdown();
+        }
+        return rc;
+    }
+
+    /**
+     * Write the bytes to the file, unless the file already has exactly this content.
+     * Returns true if the file was written.
+     */
+    public static boolean writeIfChanged(File dest, byte[] bytes) throws IOException {
+        Path p = dest.toPath();
+        if (Files.exists(p) && Files.size(p) == bytes.length
+            && Arrays.equals(Files.readAllBytes(p), bytes)) {
+            return false;
+        }
+        Files.write(p, bytes);
+        return true;
+    }
 }
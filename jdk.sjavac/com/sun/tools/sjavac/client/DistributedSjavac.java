@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+
+package com.sun.tools.sjavac.client;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.tools.sjavac.Log;
+import com.sun.tools.sjavac.Util;
+import com.sun.tools.sjavac.options.Options;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+import com.sun.tools.sjavac.server.PublicApiResult;
+import com.sun.tools.sjavac.server.Sjavac;
+import com.sun.tools.sjavac.server.SysInfo;
+
+/**
+ * Sjavac implementation that distributes the compile chunks of a build
+ * over several sjavac servers. Every compile goes to the server with the
+ * fewest compiles in progress, taking turns among equally busy servers,
+ * the other requests go to the first server.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class DistributedSjavac implements Sjavac {
+
+    private final List<Sjavac> servers;
+
+    // Number of compiles in progress per server. Guarded by this.
+    private final int[] active;
+
+    // The server running a compile, by invocation id. Guarded by this.
+    private final Map<String, Integer> running = new HashMap<>();
+
+    // The server to pick among equally busy servers. Guarded by this.
+    private int next;
+
+    public DistributedSjavac(List<Sjavac> servers) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("No servers to distribute to.");
+        }
+        this.servers = new ArrayList<>(servers);
+        this.active = new int[servers.size()];
+    }
+
+    /**
+     * Create a client for the servers given with -server:servers=, for
+     * -server:jvms= server jvms on this host, or a client for the single
+     * server of the build if neither is given. The servers are named by
+     * their port files, separated by the path separator. Every server is
+     * spawned when needed, like the single server.
+     */
+    public static Sjavac connect(Options options) {
+        String serverList = Util.extractStringOption("servers", options.getServerConf());
+        int jvms = Util.extractIntOption("jvms", options.getServerConf(), 1);
+        List<String> portfiles = new ArrayList<>();
+        if (serverList != null) {
+            for (String portfile : serverList.split(File.pathSeparator)) {
+                if (!portfile.equals("")) {
+                    portfiles.add(portfile);
+                }
+            }
+        } else if (jvms > 1) {
+            String base = SjavacClient.defaultPortfile(options);
+            for (int i = 1; i <= jvms; i++) {
+                portfiles.add(base+"-"+i);
+            }
+        } else {
+            return new SjavacClient(options);
+        }
+        List<Sjavac> clients = new ArrayList<>();
+        for (String portfile : portfiles) {
+            clients.add(new SjavacClient(options, portfile, portfiles.size()));
+        }
+        return new DistributedSjavac(clients);
+    }
+
+    /**
+     * The combined cores and heap of all servers.
+     */
+    @Override
+    public SysInfo getSysInfo() {
+        SysInfo total = new SysInfo(0, 0);
+        total.numServers = 0;
+        for (Sjavac server : servers) {
+            SysInfo si = server.getSysInfo();
+            if (si == null || si.numCores == -1) {
+                return new SysInfo(-1, -1);
+            }
+            total.numCores += si.numCores;
+            total.maxMemory += si.maxMemory;
+            total.numServers += Math.max(si.numServers, 1);
+        }
+        return total;
+    }
+
+    @Override
+    public CompilationResult compile(String protocolId,
+                                     String invocationId,
+                                     String[] args,
+                                     List<File> explicitSources,
+                                     Set<URI> sourcesToCompile,
+                                     Set<URI> visibleSources,
+                                     CompilationListener listener) {
+        int s = acquire(invocationId);
+        if (Log.isDebugging()) {
+            Log.debug("Compiling "+invocationId+" on server "+(s+1)+" of "+servers.size());
+        }
+        try {
+            return servers.get(s).compile(protocolId,
+                                          invocationId,
+                                          args,
+                                          explicitSources,
+                                          sourcesToCompile,
+                                          visibleSources,
+                                          listener);
+        } finally {
+            release(invocationId, s);
+        }
+    }
+
+    private synchronized int acquire(String invocationId) {
+        // Ties go to the server after the one picked last, thus compiles
+        // that do not overlap in time are spread over the servers too.
+        int best = next;
+        for (int k = 1; k < active.length; k++) {
+            int i = (next+k) % active.length;
+            if (active[i] < active[best]) {
+                best = i;
+            }
+        }
+        next = (best+1) % active.length;
+        active[best]++;
+        running.put(invocationId, best);
+        return best;
+    }
+
+    private synchronized void release(String invocationId, int server) {
+        active[server]--;
+        running.remove(invocationId);
+    }
+
+    @Override
+    public void cancel(String invocationId) {
+        Integer s;
+        synchronized (this) {
+            s = running.get(invocationId);
+        }
+        if (s != null) {
+            servers.get(s).cancel(invocationId);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (Sjavac server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Override
+    public String serverSettings() {
+        return servers.get(0).serverSettings();
+    }
+
+    @Override
+    public String getClassLoc(String c) {
+        return servers.get(0).getClassLoc(c);
+    }
+
+    @Override
+    public PublicApiResult getPublicApi(String c) {
+        return servers.get(0).getPublicApi(c);
+    }
+}
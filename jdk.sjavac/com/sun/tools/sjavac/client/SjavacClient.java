@@ -35,16 +35,20 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
 
 import com.sun.tools.sjavac.Log;
 import com.sun.tools.sjavac.ProblemException;
 import com.sun.tools.sjavac.Util;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationMessage;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.PortFile;
 import com.sun.tools.sjavac.server.PublicApiResult;
@@ -65,6 +69,7 @@ public class SjavacClient implements Sjavac {
 
     // The id can perhaps be used in the future by the javac server to reuse the
     // JavaCompiler instance for several compiles using the same id.
+    // A shared server accounts the work it does per id.
     private final String id;
     private final String portfileName;
     private final String logfile;
@@ -76,6 +81,18 @@ public class SjavacClient implements Sjavac {
     private final int keepalive;
     private final int poolsize;
 
+    // With a maxkeepalive larger than keepalive, the server adapts its
+    // keepalive to how often builds arrive, up to maxkeepalive seconds.
+    private final int maxkeepalive;
+
+    // When the server times out after having served a build, it starts a
+    // fresh replacement server to be ready for the next build.
+    private final boolean prespawn;
+
+    // Number of times a freshly started server compiles a small synthetic
+    // project to warm up, before the first real compile. Default is none.
+    private final int warmup;
+
     // The sjavac option specifies how the server part of sjavac is spawned.
     // If you have the experimental sjavac in your path, you are done. If not, you have
     // to point to a com.sun.tools.sjavac.Main that supports -startserver
@@ -91,20 +108,41 @@ public class SjavacClient implements Sjavac {
     private final String settings;
 
     public SjavacClient(Options options) {
+        this(options, null, 1);
+    }
+
+    /**
+     * Create a client of the server with the given port file, one of the
+     * numServers servers a build is distributed over. The log and outerr
+     * files of the server are named after its port file. The servers
+     * spawned on this host share its cores and memory.
+     */
+    public SjavacClient(Options options, String serverPortfile, int numServers) {
         String tmpServerConf = options.getServerConf();
         String serverConf = (tmpServerConf!=null)? tmpServerConf : "";
         String tmpId = Util.extractStringOption("id", serverConf);
-        id = (tmpId!=null) ? tmpId : "id"+(((new java.util.Random()).nextLong())&Long.MAX_VALUE);
-        String p = Util.extractStringOption("portfile", serverConf);
+        // Builds of the same project get the same id, so the server can
+        // account per project and learn how often each project is built.
+        id = (tmpId != null) ? tmpId : tenantId(options.getStateDir());
         String base = options.getServerDir().toFile().getAbsolutePath()+File.separatorChar+"javac_";
-        portfileName = (p!=null) ? p : base+"portfile";
-        logfile = Util.extractStringOption("logfile", serverConf, base+"log");
-        stdouterrfile = Util.extractStringOption("stdouterrfile", serverConf, base+"outerr");
+        if (serverPortfile != null) {
+            portfileName = serverPortfile;
+            logfile = serverPortfile+"_log";
+            stdouterrfile = serverPortfile+"_outerr";
+        } else {
+            portfileName = defaultPortfile(options);
+            logfile = Util.extractStringOption("logfile", serverConf, base+"log");
+            stdouterrfile = Util.extractStringOption("stdouterrfile", serverConf, base+"outerr");
+        }
         background = Util.extractBooleanOption("background", serverConf, true);
         String vmargs = Util.extractStringOption("vmargs", serverConf, "");
         if (!vmargs.equals("")) {
             vmargs = " "+vmargs;
         }
+        if (numServers > 1 && !vmargs.contains("-Xmx")) {
+            // Several server jvms on this host, give each its share of the memory.
+            vmargs += " -Xmx"+(heapPerServer(numServers)/(1024*1024))+"m";
+        }
         String cmd = Util.extractStringOption("sjavac", serverConf);
         if (cmd == null) {
             // No explicit command was set, lets attempt to recreate the entire java launcher command line.
@@ -118,9 +156,60 @@ public class SjavacClient implements Sjavac {
         sjavacForkCmd = cmd;
         int poolsize = Util.extractIntOption("poolsize", serverConf);
         keepalive = Util.extractIntOption("keepalive", serverConf, 120);
+        warmup = Util.extractIntOption("warmup", serverConf, 0);
+        maxkeepalive = Util.extractIntOption("maxkeepalive", serverConf, keepalive);
+        prespawn = Util.extractBooleanOption("prespawn", serverConf, false);
+
+        if (poolsize <= 0) {
+            // The cores are shared by the servers on this host.
+            int cores = Runtime.getRuntime().availableProcessors();
+            poolsize = Math.max(1, (cores+numServers-1)/numServers);
+        }
+        this.poolsize = poolsize;
+        if (serverConf.equals("")) {
+            settings = "id="+id+",portfile="+portfileName;
+        } else if (tmpId == null) {
+            // Always hand out the id, it is used to name the compile requests.
+            settings = "id="+id+","+serverConf;
+        } else {
+            settings = serverConf;
+        }
+    }
+
+    /**
+     * The port file of the server, unless a build is distributed over several servers.
+     */
+    static String defaultPortfile(Options options) {
+        String p = Util.extractStringOption("portfile", options.getServerConf());
+        if (p != null) {
+            return p;
+        }
+        return options.getServerDir().toFile().getAbsolutePath()+File.separatorChar+"javac_portfile";
+    }
 
-        this.poolsize = poolsize > 0 ? poolsize : Runtime.getRuntime().availableProcessors();
-        settings = (serverConf.equals("")) ? "id="+id+",portfile="+portfileName : serverConf;
+    /**
+     * The heap for each of numServers server jvms on this host. Together they
+     * get half of the physical memory, but no server gets more than the
+     * default heap of a single server, or less than 256MiB.
+     */
+    static long heapPerServer(int numServers) {
+        // The default heap of this jvm, is the default heap of a server jvm.
+        long heap = Runtime.getRuntime().maxMemory();
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            long physical = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+            heap = Math.min(heap, physical/2/numServers);
+        }
+        return Math.max(heap, 256L*1024*1024);
+    }
+
+    /**
+     * Name a project after its state directory, for example
+     * "bin_state-1f3c0a2e" for /home/me/proj/bin_state.
+     */
+    static String tenantId(Path stateDir) {
+        String name = stateDir.getFileName().toString().replaceAll("[,=\\s]", "_");
+        return name+"-"+Integer.toHexString(stateDir.toAbsolutePath().toString().hashCode());
     }
 
     /**
@@ -166,8 +255,12 @@ public class SjavacClient implements Sjavac {
                                      String[] args,
                                      List<File> explicitSources,
                                      Set<URI> sourcesToCompile,
-                                     Set<URI> visibleSources) {
+                                     Set<URI> visibleSources,
+                                     CompilationListener listener) {
         CompilationResult result;
+        // Without a listener, the streamed output is collected into the result.
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
         try (Socket socket = tryConnect()) {
             // The ObjectInputStream constructor will block until the
             // corresponding ObjectOutputStream has written and flushed the
@@ -184,15 +277,56 @@ public class SjavacClient implements Sjavac {
             oos.writeObject(sourcesToCompile);
             oos.writeObject(visibleSources);
             oos.flush();
-            result = (CompilationResult) ois.readObject();
+            // The server streams the compiler output as CompilationMessages
+            // and finishes with the CompilationResult.
+            for (;;) {
+                Object o = ois.readObject();
+                if (o instanceof CompilationResult) {
+                    result = (CompilationResult) o;
+                    break;
+                }
+                CompilationMessage msg = (CompilationMessage) o;
+                if (listener != null) {
+                    msg.deliverTo(listener);
+                } else if (msg.kind == CompilationMessage.STDOUT) {
+                    out.append(msg.text).append('\n');
+                } else if (msg.kind == CompilationMessage.STDERR) {
+                    err.append(msg.text).append('\n');
+                }
+            }
+            result.stdout = out + result.stdout;
+            result.stderr = err + result.stderr;
         } catch (IOException | ClassNotFoundException ex) {
             Log.error("Exception caught: " + ex);
             result = new CompilationResult(CompilationResult.ERROR_FATAL);
-            result.stderr = ex.getMessage();
+            result.stderr = err + ex.getMessage();
         }
         return result;
     }
 
+    /**
+     * Make a request to the server to abort a compile. A compile is also
+     * aborted if this client disconnects before the compile has finished.
+     */
+    @Override
+    public void cancel(String invocationId) {
+        try (Socket socket = tryConnect()) {
+            // The ObjectInputStream constructor will block until the
+            // corresponding ObjectOutputStream has written and flushed the
+            // header, so it is important that the ObjectOutputStreams on server
+            // and client are opened before the ObjectInputStreams.
+            ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+            ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+            oos.writeObject(id);
+            oos.writeObject(SjavacServer.CMD_CANCEL);
+            oos.writeObject(invocationId);
+            oos.flush();
+            Log.debug((String) ois.readObject());
+        } catch (IOException | ClassNotFoundException ex) {
+            Log.error("[CLIENT] Exception caught: " + ex);
+        }
+    }
+
     private Socket tryConnect() throws IOException {
 
         long start = System.currentTimeMillis();
@@ -246,6 +380,9 @@ public class SjavacClient implements Sjavac {
                                                logfile,
                                                poolsize,
                                                keepalive,
+                                               maxkeepalive,
+                                               warmup,
+                                               prespawn,
                                                System.err,
                                                stdouterrfile,
                                                background);
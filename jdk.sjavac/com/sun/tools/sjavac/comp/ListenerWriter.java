@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.comp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.sun.tools.sjavac.server.CompilationListener;
+
+/**
+ * The ListenerWriter splits the written text into lines and hands each
+ * line over to a CompilationListener as soon as the line is complete.
+ * Text that has not yet been terminated by a newline is handed over
+ * when the writer is flushed on close.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class ListenerWriter extends Writer {
+
+    final CompilationListener listener;
+    final boolean toStderr;
+    final StringBuilder line = new StringBuilder();
+
+    public ListenerWriter(CompilationListener l, boolean stderr) {
+        listener = l;
+        toStderr = stderr;
+    }
+
+    public synchronized void write(char[] chars, int off, int len) {
+        for (int i = off; i < off+len; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                // Drop the \r of a \r\n line separator.
+                int n = line.length();
+                if (n > 0 && line.charAt(n-1) == '\r') {
+                    line.setLength(n-1);
+                }
+                deliver();
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    private void deliver() {
+        String s = line.toString();
+        line.setLength(0);
+        if (toStderr) {
+            listener.stderr(s);
+        } else {
+            listener.stdout(s);
+        }
+    }
+
+    public void flush() throws IOException {
+    }
+
+    public synchronized void close() throws IOException {
+        if (line.length() > 0) {
+            deliver();
+        }
+    }
+}
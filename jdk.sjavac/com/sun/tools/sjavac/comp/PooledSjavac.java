@@ -32,13 +32,19 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.tools.sjavac.Log;
+import com.sun.tools.sjavac.server.CompilationListener;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.PublicApiResult;
 import com.sun.tools.sjavac.server.Sjavac;
@@ -57,10 +63,17 @@ public class PooledSjavac implements Sjavac {
 
     final Sjavac delegate;
     final ExecutorService pool;
+    final int poolsize;
+    // The submitted compiles that have not yet returned, by invocation id.
+    final ConcurrentMap<String, Submitted> compiles = new ConcurrentHashMap<>();
+    // The compiles waiting for a thread in the pool and the compiles running.
+    final AtomicInteger queued = new AtomicInteger();
+    final AtomicInteger active = new AtomicInteger();
 
     public PooledSjavac(Sjavac delegate, int poolsize) {
         Objects.requireNonNull(delegate);
         this.delegate = delegate;
+        this.poolsize = poolsize;
         pool = Executors.newFixedThreadPool(poolsize, new ThreadFactory() {
             AtomicInteger count = new AtomicInteger();
             @Override
@@ -80,7 +93,12 @@ public class PooledSjavac implements Sjavac {
             return pool.submit(new Callable<SysInfo>() {
                 @Override
                 public SysInfo call() throws Exception {
-                    return delegate.getSysInfo();
+                    SysInfo si = delegate.getSysInfo();
+                    // No more compiles than the pool size run at the same time.
+                    if (si != null && si.numCores > poolsize) {
+                        si.numCores = poolsize;
+                    }
+                    return si;
                 }
             }).get();
         } catch (Exception e) {
@@ -95,23 +113,121 @@ public class PooledSjavac implements Sjavac {
                                      final String[] args,
                                      final List<File> explicitSources,
                                      final Set<URI> sourcesToCompile,
-                                     final Set<URI> visibleSources) {
-        try {
-            return pool.submit(new Callable<CompilationResult>() {
-                @Override
-                public CompilationResult call() throws Exception {
+                                     final Set<URI> visibleSources,
+                                     final CompilationListener listener) {
+        // Set by a cancel, also when it arrives before the compile has started.
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        // Set when the compile has left the queue, by starting or by being cancelled.
+        final AtomicBoolean dequeued = new AtomicBoolean();
+        FutureTask<CompilationResult> task = new FutureTask<>(new Callable<CompilationResult>() {
+            @Override
+            public CompilationResult call() throws Exception {
+                if (!dequeued.compareAndSet(false, true)) {
+                    // Cancelled while queued, the FutureTask is cancelled too.
+                    return new CompilationResult(CompilationResult.ERROR_CANCELLED);
+                }
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    if (cancelled.get()) {
+                        return new CompilationResult(CompilationResult.ERROR_CANCELLED);
+                    }
+                    if (delegate instanceof SjavacImpl) {
+                        // Hand over the flag, a cancel that arrives before the
+                        // compile has registered itself still reaches it.
+                        return ((SjavacImpl) delegate).compile(protocolId,
+                                                               invocationId,
+                                                               args,
+                                                               explicitSources,
+                                                               sourcesToCompile,
+                                                               visibleSources,
+                                                               listener,
+                                                               cancelled);
+                    }
                     return delegate.compile(protocolId,
                                             invocationId,
                                             args,
                                             explicitSources,
                                             sourcesToCompile,
-                                            visibleSources);
+                                            visibleSources,
+                                            listener);
+                } finally {
+                    active.decrementAndGet();
                 }
-            }).get();
+            }
+        });
+        // Registered before the task can start, thus a cancel always finds it.
+        Submitted submitted = new Submitted(task, cancelled, dequeued);
+        compiles.put(invocationId, submitted);
+        queued.incrementAndGet();
+        try {
+            pool.execute(task);
+            return task.get();
+        } catch (CancellationException e) {
+            return new CompilationResult(CompilationResult.ERROR_CANCELLED);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Error during compile", e);
+        } finally {
+            if (dequeued.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+            }
+            compiles.remove(invocationId, submitted);
+        }
+    }
+
+    /**
+     * A compile that has been submitted to the pool, with its cancellation
+     * flag and the flag telling whether it has left the queue.
+     */
+    private static class Submitted {
+        final FutureTask<CompilationResult> task;
+        final AtomicBoolean cancelled;
+        final AtomicBoolean dequeued;
+
+        Submitted(FutureTask<CompilationResult> task, AtomicBoolean cancelled,
+                  AtomicBoolean dequeued) {
+            this.task = task;
+            this.cancelled = cancelled;
+            this.dequeued = dequeued;
+        }
+    }
+
+    /**
+     * Return the number of compiles waiting for a thread in the pool.
+     */
+    public int queuedCompiles() {
+        return queued.get();
+    }
+
+    /**
+     * Return the number of compiles running.
+     */
+    public int activeCompiles() {
+        return active.get();
+    }
+
+    /**
+     * Return the maximum number of concurrent compiles.
+     */
+    public int poolSize() {
+        return poolsize;
+    }
+
+    @Override
+    public void cancel(String invocationId) {
+        Submitted submitted = compiles.get(invocationId);
+        if (submitted != null) {
+            submitted.cancelled.set(true);
+            if (submitted.dequeued.compareAndSet(false, true)) {
+                // A queued compile will never start.
+                queued.decrementAndGet();
+                submitted.task.cancel(false);
+            }
+            // A running compile is aborted by the delegate, its result is
+            // waited for, since javac might still be writing class files.
         }
+        delegate.cancel(invocationId);
     }
 
     @Override
@@ -29,18 +29,25 @@ package com.sun.tools.sjavac.comp;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.file.ZipArchive.ZipFileObject;
@@ -48,7 +55,9 @@ import com.sun.tools.javac.file.ZipFileIndexArchive.ZipFileIndexFileObject;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Options;
+import com.sun.tools.sjavac.Util;
 import com.sun.tools.sjavac.comp.JavaCompilerWithDeps;
+import com.sun.tools.sjavac.server.CompilationListener;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.PublicApiResult;
 import com.sun.tools.sjavac.server.Sjavac;
@@ -68,6 +77,8 @@ public class SjavacImpl implements Sjavac {
 
     com.sun.tools.javac.util.Context context;
     javax.tools.JavaCompiler.CompilationTask task;
+    // The cancellation flags of the running compiles, by invocation id.
+    final ConcurrentMap<String, AtomicBoolean> running = new ConcurrentHashMap<>();
 
     /**
      * Setup a compilation context, used for reading public apis of classes on the classpath
@@ -103,10 +114,30 @@ public class SjavacImpl implements Sjavac {
                                      String[] args,
                                      List<File> explicitSources,
                                      Set<URI> sourcesToCompile,
-                                     Set<URI> visibleSources) {
+                                     Set<URI> visibleSources,
+                                     CompilationListener listener) {
+        return compile(protocolId, invocationId, args, explicitSources,
+                       sourcesToCompile, visibleSources, listener, new AtomicBoolean());
+    }
+
+    /**
+     * Compile, and abort as soon as the given flag is set. A PooledSjavac
+     * passes the flag that its cancel sets, thus a cancel that arrives
+     * before the compile is in the running map still reaches it.
+     */
+    protected CompilationResult compile(String protocolId,
+                                        String invocationId,
+                                        String[] args,
+                                        List<File> explicitSources,
+                                        Set<URI> sourcesToCompile,
+                                        Set<URI> visibleSources,
+                                        final CompilationListener listener,
+                                        final AtomicBoolean cancelled) {
         final AtomicBoolean forcedExit = new AtomicBoolean();
+        running.put(invocationId, cancelled);
 
         long start = System.currentTimeMillis();
+        long allocatedAtStart = Util.threadAllocatedBytes();
         JavacTool compiler = JavacTool.create();
         StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
         SmartFileManager smartFileManager = new SmartFileManager(fileManager);
@@ -137,11 +168,14 @@ public class SjavacImpl implements Sjavac {
             compilationUnits.append(i);
         }
         forcedExit.set(false);
-        // Create a new logger.
+        // Create a new logger. With a listener, the output is streamed line by line
+        // while compiling and the logs in the compilation result stay empty.
         StringWriter stdoutLog = new StringWriter();
         StringWriter stderrLog = new StringWriter();
-        PrintWriter stdout = new PrintWriter(stdoutLog);
-        PrintWriter stderr = new PrintWriter(stderrLog);
+        Writer stdoutWriter = listener == null ? stdoutLog : new ListenerWriter(listener, false);
+        Writer stderrWriter = listener == null ? stderrLog : new ListenerWriter(listener, true);
+        PrintWriter stdout = new PrintWriter(stdoutWriter);
+        PrintWriter stderr = new PrintWriter(stderrWriter);
         com.sun.tools.javac.main.Main.Result rc = com.sun.tools.javac.main.Main.Result.OK;
         try {
             if (compilationUnits.size() > 0) {
@@ -158,15 +192,31 @@ public class SjavacImpl implements Sjavac {
                                                         compilationUnits,
                                                         context);
                 smartFileManager.setSymbolFileEnabled(!Options.instance(context).isSet("ignore.symbol.file"));
+                smartFileManager.setWriteIfChanged(Options.instance(context).isSet("writeIfChanged"));
+                smartFileManager.setStageOutput(Options.instance(context).isSet("stageOutput"));
+                ((JavacTaskImpl) task).addTaskListener(new TaskMonitor(listener, cancelled));
                 rc = ((JavacTaskImpl) task).doCall();
                 smartFileManager.flush();
+                // Staged class files only reach the disk if the compile went well.
+                if (rc == com.sun.tools.javac.main.Main.Result.OK && !forcedExit.get() && !cancelled.get()) {
+                    smartFileManager.publishStagedOutput();
+                } else {
+                    smartFileManager.discardStagedOutput();
+                }
             }
         } catch (Exception e) {
-            stderrLog.append(e.getMessage());
+            if (!cancelled.get()) {
+                stderr.print(e.getMessage());
+            }
             forcedExit.set(true);
         }
+        running.remove(invocationId, cancelled);
+        // Hand over any unterminated last lines to the listener.
+        stdout.close();
+        stderr.close();
 
         compilationResult.packageArtifacts = smartFileManager.getPackageArtifacts();
+        compilationResult.unchangedArtifacts = smartFileManager.getUnchangedArtifacts();
 
         Dependencies deps = Dependencies.instance(context);
         compilationResult.packageDependencies = deps.getSourcefileDependencies();
@@ -177,15 +227,72 @@ public class SjavacImpl implements Sjavac {
         compilationResult.stderr = stderrLog.toString();
 
         compilationResult.returnCode = rc.exitCode == 0 && forcedExit.get() ? -1 : rc.exitCode;
+        if (cancelled.get()) {
+            compilationResult.returnCode = CompilationResult.ERROR_CANCELLED;
+        }
+
+        if (allocatedAtStart != -1) {
+            compilationResult.allocatedBytes = Util.threadAllocatedBytes() - allocatedAtStart;
+        }
 
         long stop = System.currentTimeMillis();
+        compilationResult.compileMillis = stop-start;
+        compilationResult.compiledBy = Thread.currentThread().getName();
         float secs = (float)(stop-start) / (float)1000.0;
         float srcpersec = Math.round(((float)compilationUnits.size()) / secs);
-        SjavacServer.log(Thread.currentThread().getName()+" "+invocationId+" compiled "+
-                         +compilationUnits.size()+" sources in "+(stop-start)+"ms giving "+srcpersec+" sources/s");
+        SjavacServer.log(Thread.currentThread().getName()+" "+invocationId+
+                         (cancelled.get() ? " cancelled compiling " : " compiled ")+
+                         +compilationUnits.size()+" sources in "+(stop-start)+"ms giving "+srcpersec+" sources/s"+
+                         (allocatedAtStart != -1 ? " allocating "+(compilationResult.allocatedBytes >> 20)+"MiB" : ""));
         return compilationResult;
     }
 
+    @Override
+    public void cancel(String invocationId) {
+        AtomicBoolean cancelled = running.get(invocationId);
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Report each source file to the listener (if any) when the first class
+     * of the source file has been generated. Abort the compilation at the
+     * next parse, enter, analyze or generate event after it has been cancelled.
+     */
+    private static class TaskMonitor implements TaskListener {
+        final CompilationListener listener;
+        final AtomicBoolean cancelled;
+        final Set<URI> reported = Collections.synchronizedSet(new HashSet<URI>());
+
+        TaskMonitor(CompilationListener l, AtomicBoolean c) {
+            listener = l;
+            cancelled = c;
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            checkCancelled();
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            checkCancelled();
+            if (listener != null && e.getKind() == TaskEvent.Kind.GENERATE && e.getSourceFile() != null) {
+                URI uri = e.getSourceFile().toUri();
+                if (reported.add(uri)) {
+                    listener.sourceCompiled(uri);
+                }
+            }
+        }
+
+        private void checkCancelled() {
+            if (cancelled.get()) {
+                throw new CancellationException("Compilation cancelled");
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         // Nothing to clean up
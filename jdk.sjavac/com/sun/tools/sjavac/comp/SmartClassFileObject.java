@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012, 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.sun.tools.sjavac.comp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileObject;
+
+/**
+ * The SmartClassFileObject caches the bytes of a class file written by javac.
+ * When the stream is closed, the bytes are handed to the SmartFileManager,
+ * that either stores them right away or, when output is staged, keeps them
+ * until the compile has succeeded.
+ *
+ * When storing only changed class files, the new bytes are compared with the
+ * previous class file, that the client has moved aside to a file with the
+ * suffix PREVIOUS_SUFFIX before the compile. If the bytes are identical, the
+ * previous file is moved back, thus keeping its timestamp, and the class file
+ * is recorded as unchanged. Otherwise the new bytes are written.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class SmartClassFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+
+    public static final String PREVIOUS_SUFFIX = ".prev";
+
+    SmartFileManager owner;
+
+    public SmartClassFileObject(JavaFileObject f, SmartFileManager o) {
+        super(f);
+        owner = o;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return fileObject.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return fileObject.hashCode();
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        return new ByteArrayOutputStream() {
+            boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                owner.classFileWritten(SmartClassFileObject.this, toByteArray());
+            }
+        };
+    }
+
+    /**
+     * Store the bytes in the class file.
+     *
+     * @param writeIfChanged keep the previous class file if the bytes are identical
+     * @param atomic write to a temporary file first and then move it into place
+     * @return true if the previous class file was kept
+     */
+    boolean store(byte[] bytes, boolean writeIfChanged, boolean atomic) throws IOException {
+        Path target = new File(toUri()).toPath();
+        Path previous = target.resolveSibling(target.getFileName()+PREVIOUS_SUFFIX);
+        if (writeIfChanged
+            && Files.exists(previous)
+            && Files.size(previous) == bytes.length
+            && Arrays.equals(Files.readAllBytes(previous), bytes)) {
+            Files.move(previous, target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        if (atomic) {
+            Files.createDirectories(target.getParent());
+            // Not createTempFile, since that file would not get the default permissions.
+            Path tmp = target.resolveSibling(target.getFileName()+".tmp");
+            try {
+                Files.write(tmp, bytes);
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+                               StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } else {
+            try (OutputStream out = fileObject.openOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        if (writeIfChanged) {
+            Files.deleteIfExists(previous);
+        }
+        return false;
+    }
+}
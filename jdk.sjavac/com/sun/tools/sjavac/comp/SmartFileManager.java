@@ -30,6 +30,7 @@ import java.io.PrintWriter;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,7 +45,8 @@ import com.sun.tools.javac.util.ListBuffer;
  * information about what artifacts are generated.
  *
  * Traps writes to certain files, if the content written is identical
- * to the existing file.
+ * to the existing file. Can keep the class files in memory until the
+ * compile has succeeded.
  *
  * Can also blind out the filemanager from seeing certain files in the file system.
  * Necessary to prevent javac from seeing some sources where the source path points.
@@ -60,8 +62,16 @@ public class SmartFileManager extends ForwardingJavaFileManager<JavaFileManager>
     Set<URI> visibleSources = new HashSet<>();
     // Map from modulename:packagename to artifacts.
     Map<String,Set<URI>> packageArtifacts = new HashMap<>();
+    // Class files that were generated with the same content as before.
+    Set<URI> unchangedArtifacts = new HashSet<>();
     // Where to print informational messages.
     PrintWriter stdout;
+    // Only replace class files whose content has changed.
+    boolean writeIfChanged;
+    // Keep class files in memory until the compile has succeeded.
+    boolean stageOutput;
+    // The class files kept in memory, in the order they were written.
+    Map<SmartClassFileObject,byte[]> stagedClassFiles = new LinkedHashMap<>();
 
     public SmartFileManager(JavaFileManager fileManager) {
         super(fileManager);
@@ -73,6 +83,56 @@ public class SmartFileManager extends ForwardingJavaFileManager<JavaFileManager>
 
     public void cleanArtifacts() {
         packageArtifacts = new HashMap<>();
+        unchangedArtifacts = new HashSet<>();
+        stagedClassFiles = new LinkedHashMap<>();
+    }
+
+    /**
+     * Set whether class files should only be replaced when their content changes.
+     * The previous class file is expected to have been moved aside by the client,
+     * see SmartClassFileObject.
+     */
+    public void setWriteIfChanged(boolean b) {
+        writeIfChanged = b;
+    }
+
+    /**
+     * Set whether class files should be kept in memory until publishStagedOutput
+     * is called, thus a failed or cancelled compile writes no class files at all.
+     */
+    public void setStageOutput(boolean b) {
+        stageOutput = b;
+    }
+
+    /**
+     * Write all staged class files to disk, in one pass. Each class file is written
+     * to a temporary file and then moved into place.
+     */
+    public void publishStagedOutput() throws IOException {
+        for (Map.Entry<SmartClassFileObject,byte[]> e : stagedClassFiles.entrySet()) {
+            if (e.getKey().store(e.getValue(), writeIfChanged, true)) {
+                unchangedArtifacts.add(e.getKey().toUri());
+            }
+        }
+        stagedClassFiles.clear();
+    }
+
+    /**
+     * Drop the staged class files without writing them.
+     */
+    public void discardStagedOutput() {
+        stagedClassFiles.clear();
+    }
+
+    /**
+     * Called when javac closes the output stream of a class file.
+     */
+    void classFileWritten(SmartClassFileObject file, byte[] bytes) throws IOException {
+        if (stageOutput) {
+            stagedClassFiles.put(file, bytes);
+        } else if (file.store(bytes, writeIfChanged, false)) {
+            unchangedArtifacts.add(file.toUri());
+        }
     }
 
     public void setLog(PrintWriter pw) {
@@ -92,6 +152,10 @@ public class SmartFileManager extends ForwardingJavaFileManager<JavaFileManager>
         return packageArtifacts;
     }
 
+    public Set<URI> getUnchangedArtifacts() {
+        return unchangedArtifacts;
+    }
+
     @Override
     public Iterable<JavaFileObject> list(Location location,
                                          String packageName,
@@ -151,6 +215,10 @@ public class SmartFileManager extends ForwardingJavaFileManager<JavaFileManager>
         // When modules are in use, then the mod_name might be something like "jdk_base"
         String mod_name = "";
         addArtifact(mod_name+":"+pkg_name, file.toUri());
+        if ((writeIfChanged || stageOutput)
+            && kind == Kind.CLASS && location.equals(StandardLocation.CLASS_OUTPUT)) {
+            file = new SmartClassFileObject(file, this);
+        }
         return file;
     }
 
@@ -35,6 +35,8 @@ import java.util.regex.Pattern;
 
 import com.sun.tools.sjavac.CopyFile;
 import com.sun.tools.sjavac.Transformer;
+import com.sun.tools.sjavac.Translator;
+import com.sun.tools.sjavac.TranslatorTransformer;
 
 
 /**
@@ -170,10 +172,21 @@ public enum Option {
                 return;
             }
 
-            // Construct transformer
+            // Construct transformer. A name of a translator found through the
+            // ServiceLoader takes precedence over a class name.
             try {
-                Class<?> trCls = Class.forName(classname);
-                Transformer transformer = (Transformer) trCls.newInstance();
+                Transformer transformer;
+                Translator translator = TranslatorTransformer.findTranslator(classname);
+                if (translator != null) {
+                    transformer = new TranslatorTransformer(translator);
+                } else {
+                    Object tr = Class.forName(classname).newInstance();
+                    if (tr instanceof Translator) {
+                        transformer = new TranslatorTransformer((Translator) tr);
+                    } else {
+                        transformer = (Transformer) tr;
+                    }
+                }
                 transformer.setExtra(extra);
                 helper.addTransformer(suffix, transformer);
             } catch (Exception e) {
@@ -271,6 +284,36 @@ public enum Option {
             helper.permitUnidentifiedArtifacts();
         }
     },
+    WRITE_IF_CHANGED("-Xwrite-if-changed", "Only replace class files whose content has changed") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.writeIfChanged();
+        }
+    },
+    STAGE_OUTPUT("-Xstage-output", "Write the class files of a compile only when it succeeds") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.stageOutput();
+        }
+    },
+    LINK_COPIES("-Xlink-copies", "Hard link copied resources to their sources, when possible. Editing such a copy edits its source") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.linkCopies();
+        }
+    },
+    METRICS("-Xmetrics", "Write the timing of the build phases and compiles into the state dir") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.metrics();
+        }
+    },
+    EXPLAIN("-Xexplain", "Write why each package was recompiled, and what it cost, into the state dir") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.explain();
+        }
+    },
     PERMIT_SOURCES_WITHOUT_PACKAGE("-Xpermit-sources-without-package", "Permit sources in the default package") {
         @Override
         protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
@@ -322,6 +365,19 @@ public enum Option {
             String p = iter.current().substring(arg.length());
             helper.serverDir(Paths.get(p));
         }
+    },
+    CACHE_DIR("-cache-dir:", "Directory used to cache the results of compiling packages, shared between builds") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            String p = iter.current().substring(arg.length());
+            helper.cacheDir(Paths.get(p));
+        }
+    },
+    REMOTE_CACHE("-remote-cache:", "Url of a build cache shared with other hosts, requires -cache-dir:") {
+        @Override
+        protected void processMatching(ArgumentIterator iter, OptionHelper helper) {
+            helper.remoteCache(iter.current().substring(arg.length()));
+        }
     };
 
     public final String arg;
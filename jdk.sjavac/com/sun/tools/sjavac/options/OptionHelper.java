@@ -93,6 +93,21 @@ public abstract class OptionHelper {
     /** Record the fact that unidentified artifacts are permitted */
     public abstract void permitUnidentifiedArtifacts();
 
+    /** Record the fact that unchanged class files should not be rewritten */
+    public abstract void writeIfChanged();
+
+    /** Record the fact that class files should be written only by successful compiles */
+    public abstract void stageOutput();
+
+    /** Record the fact that copied resources should be hard links */
+    public abstract void linkCopies();
+
+    /** Record the fact that build metrics should be written */
+    public abstract void metrics();
+
+    /** Record the fact that the reasons for recompiling packages should be written */
+    public abstract void explain();
+
     /** Record the fact that sources in the default package are permitted */
     public abstract void permitDefaultPackage();
 
@@ -123,6 +138,12 @@ public abstract class OptionHelper {
     /** Sets the directory for the server portfile and log files generated by sjavac */
     public abstract void serverDir(Path dir);
 
+    /** Sets the directory for the build cache */
+    public abstract void cacheDir(Path dir);
+
+    /** Sets the url of the remote build cache */
+    public abstract void remoteCache(String url);
+
     /** Sets the implicit policy */
     public abstract void implicit(String policy);
 
@@ -38,6 +38,8 @@ import java.util.Set;
 import java.util.HashSet;
 
 import com.sun.tools.sjavac.Transformer;
+import com.sun.tools.sjavac.TranslatorTransformer;
+import com.sun.tools.sjavac.Util;
 
 /**
  * Instances of this class represent values for sjavac command line options.
@@ -50,7 +52,7 @@ import com.sun.tools.sjavac.Transformer;
 public class Options {
 
     // Output directories
-    private Path destDir, genSrcDir, headerDir, stateDir, serverDir;
+    private Path destDir, genSrcDir, headerDir, stateDir, serverDir, cacheDir;
 
     // Input directories
     private List<SourceLocation> sources = new ArrayList<>();
@@ -63,6 +65,11 @@ public class Options {
     private Set<String> permitted_artifacts = new HashSet<>();
     private boolean permitUnidentifiedArtifacts = false;
     private boolean permitSourcesInDefaultPackage = false;
+    private boolean writeIfChanged = false;
+    private boolean stageOutput = false;
+    private boolean linkCopies = false;
+    private boolean metrics = false;
+    private boolean explain = false;
 
     private Path sourceReferenceList;
     private int numCores = -1;
@@ -78,6 +85,9 @@ public class Options {
     // Server configuration string
     private String serverConf;
 
+    // Url of the remote build cache
+    private String remoteCache;
+
     /** Get the policy for implicit classes */
     public String getImplicitPolicy() {
         return implicitPolicy;
@@ -103,9 +113,35 @@ public class Options {
         return stateDir != null ? stateDir : Paths.get(destDir.toString()+"_state");
     }
 
-    /** Get the path for the server directory, defaults to stateDir. */
+    /**
+     * Get the path for the server directory, defaults to stateDir,
+     * or to a directory shared by all builds of the user on this host
+     * if -server:shared=true is given.
+     */
     public Path getServerDir() {
-        return serverDir != null ? serverDir : getStateDir();
+        if (serverDir != null) {
+            return serverDir;
+        }
+        if (isServerShared()) {
+            return Paths.get(System.getProperty("java.io.tmpdir"),
+                             "sjavac_"+System.getProperty("user.name"));
+        }
+        return getStateDir();
+    }
+
+    /** Get the path for the build cache directory (or null if no build cache is used) */
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /** Get the url of the remote build cache (or null if there is none) */
+    public String getRemoteCache() {
+        return remoteCache;
+    }
+
+    /** Return true iff a single server should serve all builds on this host. */
+    public boolean isServerShared() {
+        return serverConf != null && Util.extractBooleanOption("shared", serverConf, false);
     }
 
     /** Get all source locations for files to be compiled */
@@ -147,6 +183,31 @@ public class Options {
         return permitUnidentifiedArtifacts;
     }
 
+    /** Returns true iff class files should only be replaced when their content changes. */
+    public boolean isWriteIfChanged() {
+        return writeIfChanged;
+    }
+
+    /** Returns true iff class files should only be written when the compile succeeds. */
+    public boolean isStageOutput() {
+        return stageOutput;
+    }
+
+    /** Returns true iff copied resources should be hard links to their sources. */
+    public boolean isLinkCopies() {
+        return linkCopies;
+    }
+
+    /** Returns true iff the timing of the build should be written into the state dir. */
+    public boolean isMetricsEnabled() {
+        return metrics;
+    }
+
+    /** Returns true iff the reasons for recompiling packages should be written into the state dir. */
+    public boolean isExplainEnabled() {
+        return explain;
+    }
+
     /** Returns true iff sources in the default package should be permitted. */
     public boolean isDefaultPackagePermitted() {
         return permitSourcesInDefaultPackage;
@@ -280,9 +341,18 @@ public class Options {
         if (permitUnidentifiedArtifacts)
             args.addArg(Option.PERMIT_UNIDENTIFIED_ARTIFACTS);
 
+        // Switching between copies and links must redo the copies, or bin
+        // keeps links to the sources after -Xlink-copies is dropped.
+        if (linkCopies)
+            args.addArg(Option.LINK_COPIES);
+
         // Translation rules
         for (Map.Entry<String, Transformer> tr : trRules.entrySet()) {
             String val = tr.getKey() + "=" + tr.getValue().getClass().getName();
+            if (tr.getValue() instanceof TranslatorTransformer) {
+                // A changed translator must not reuse outputs of the old one.
+                val = tr.getKey() + "=" + ((TranslatorTransformer) tr.getValue()).stateString();
+            }
             args.addArg(Option.TR, val);
         }
 
@@ -329,6 +399,14 @@ public class Options {
         // This can't be anything but 'none'. Enforced by sjavac main method.
         args.add("-implicit:" + implicitPolicy);
 
+        // Tell the smart file manager to keep unchanged class files.
+        if (writeIfChanged)
+            args.add("-XDwriteIfChanged");
+
+        // Tell the smart file manager to write class files only on success.
+        if (stageOutput)
+            args.add("-XDstageOutput");
+
         // Append javac-options (i.e. pass through options not recognized by
         // sjavac to javac.)
         args.addAll(javacArgs);
@@ -357,6 +435,7 @@ public class Options {
         boolean genSrcProvided = false;
         boolean stateProvided = false;
         boolean serverProvided = false;
+        boolean cacheProvided = false;
 
         @Override
         public void reportError(String msg) {
@@ -443,6 +522,31 @@ public class Options {
             permitUnidentifiedArtifacts = true;
         }
 
+        @Override
+        public void writeIfChanged() {
+            writeIfChanged = true;
+        }
+
+        @Override
+        public void stageOutput() {
+            stageOutput = true;
+        }
+
+        @Override
+        public void linkCopies() {
+            linkCopies = true;
+        }
+
+        @Override
+        public void metrics() {
+            metrics = true;
+        }
+
+        @Override
+        public void explain() {
+            explain = true;
+        }
+
         @Override
         public void permitDefaultPackage() {
             permitSourcesInDefaultPackage = true;
@@ -530,6 +634,21 @@ public class Options {
             serverDir = dir.toAbsolutePath();
         }
 
+        @Override
+        public void cacheDir(Path dir) {
+            if (cacheProvided) {
+                reportError("Cache directory already specified.");
+                return;
+            }
+            cacheProvided = true;
+            cacheDir = dir.toAbsolutePath();
+        }
+
+        @Override
+        public void remoteCache(String url) {
+            remoteCache = url;
+        }
+
         private List<SourceLocation> createSourceLocations(List<Path> paths) {
             List<SourceLocation> result = new ArrayList<>();
             for (Path path : paths) {
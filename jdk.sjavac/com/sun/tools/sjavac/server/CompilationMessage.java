@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.server;
+
+import java.io.Serializable;
+import java.net.URI;
+
+/**
+ * A piece of output from a running compilation. The server sends zero or more
+ * of these to the client before the final CompilationResult.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class CompilationMessage implements Serializable {
+
+    static final long serialVersionUID = 5319086447032L;
+
+    public final static int STDOUT = 1;
+    public final static int STDERR = 2;
+    public final static int SOURCE_COMPILED = 3;
+
+    public final int kind;
+    public final String text;
+
+    public CompilationMessage(int kind, String text) {
+        this.kind = kind;
+        this.text = text;
+    }
+
+    /**
+     * Hand this message over to the listener.
+     */
+    public void deliverTo(CompilationListener listener) {
+        switch (kind) {
+        case STDOUT: listener.stdout(text); break;
+        case STDERR: listener.stderr(text); break;
+        case SOURCE_COMPILED: listener.sourceCompiled(URI.create(text)); break;
+        }
+    }
+}
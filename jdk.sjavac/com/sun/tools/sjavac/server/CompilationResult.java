@@ -29,6 +29,7 @@ package com.sun.tools.sjavac.server;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,16 +47,26 @@ public class CompilationResult implements Serializable {
 
     // Return code constants
     public final static int ERROR_FATAL = -1;
+    public final static int ERROR_CANCELLED = -2;
 
     public int returnCode;
     public Map<String, Set<URI>> packageArtifacts = new HashMap<>();
     public Map<String, Set<String>> packageDependencies = new HashMap<>();
     public Map<String, List<String>> packagePublicApis = new HashMap<>();
     public Map<String, Set<String>> classpathPackageDependencies = new HashMap<>();
+    // Class files written with the same content as before, their timestamps are kept.
+    public Set<URI> unchangedArtifacts = new HashSet<>();
 
     public String stdout = "";
     public String stderr = "";
 
+    // Heap allocated by the server while compiling, -1 if unknown.
+    public long allocatedBytes = -1;
+    // Time spent compiling in the server, -1 if unknown.
+    public long compileMillis = -1;
+    // The server thread that did the compile.
+    public String compiledBy = "";
+
     public CompilationResult(int returnCode) {
         this.returnCode = returnCode;
     }
@@ -26,9 +26,16 @@
  * licensed from Fredrik to you under the above license. */
 package com.sun.tools.sjavac.server;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -41,6 +48,15 @@ import java.util.concurrent.atomic.AtomicInteger;
  * An idleness timeout kicks in {@code idleTimeout} milliseconds after the last
  * request is completed.
  *
+ * If {@code maxIdleTimeout} is larger than {@code idleTimeout}, the timeout
+ * adapts to how often builds arrive. The time between the builds of each
+ * project is tracked, and the server stays alive until the next build of
+ * every project can be expected, but never longer than {@code maxIdleTimeout}.
+ * A project is identified by its invocation ids, {@code <client id>-<build>.<chunk>}.
+ * The history can be saved and loaded, so that it survives the server.
+ * A project that has not been built for {@code maxIdleTimeout} is dropped
+ * from it, since the server does not wait that long for its next build.
+ *
  *  <p><b>This is NOT part of any supported API.
  *  If you write code that depends on this, you do so at your own risk.
  *  This code and its internal interfaces are subject to change or
@@ -53,6 +69,21 @@ public class IdleResetSjavac implements Sjavac {
     private final Terminable toShutdown;
     private final Timer idlenessTimer = new Timer();
     private final long idleTimeout;
+    private final long maxIdleTimeout;
+
+    // Compiles closer than this belong to the same build.
+    final static long MIN_BUILD_GAP = 5000;
+
+    // Per project: when its last compile finished and the typical time
+    // between its builds. Guarded by this.
+    private final Map<String, Long> lastEnd = new HashMap<>();
+    private final Map<String, Long> typicalGap = new HashMap<>();
+
+    // Set when the server is shut down because of idleness.
+    private volatile boolean timedOut;
+
+    // When the last outstanding call finished.
+    private volatile long idleSince = System.currentTimeMillis();
 
     // Class invariant: idlenessTimerTask != null <-> idlenessTimerTask is scheduled
     private TimerTask idlenessTimerTask;
@@ -60,9 +91,17 @@ public class IdleResetSjavac implements Sjavac {
     public IdleResetSjavac(Sjavac delegate,
                             Terminable toShutdown,
                             long idleTimeout) {
+        this(delegate, toShutdown, idleTimeout, idleTimeout);
+    }
+
+    public IdleResetSjavac(Sjavac delegate,
+                            Terminable toShutdown,
+                            long idleTimeout,
+                            long maxIdleTimeout) {
         this.delegate = delegate;
         this.toShutdown = toShutdown;
         this.idleTimeout = idleTimeout;
+        this.maxIdleTimeout = Math.max(idleTimeout, maxIdleTimeout);
         scheduleTimeout();
     }
 
@@ -82,7 +121,10 @@ public class IdleResetSjavac implements Sjavac {
                                      String[] args,
                                      List<File> explicitSources,
                                      Set<URI> sourcesToCompile,
-                                     Set<URI> visibleSources) {
+                                     Set<URI> visibleSources,
+                                     CompilationListener listener) {
+        String project = projectOf(invocationId);
+        buildStarted(project);
         startCall();
         try {
             return delegate.compile(protocolId,
@@ -90,12 +132,136 @@ public class IdleResetSjavac implements Sjavac {
                                     args,
                                     explicitSources,
                                     sourcesToCompile,
-                                    visibleSources);
+                                    visibleSources,
+                                    listener);
         } finally {
+            buildEnded(project);
             endCall();
         }
     }
 
+    /**
+     * Strip the build and chunk number, as in id-build.chunk, from the
+     * invocation id.
+     */
+    static String projectOf(String invocationId) {
+        int p = invocationId.lastIndexOf('-');
+        return p > 0 ? invocationId.substring(0, p) : invocationId;
+    }
+
+    private synchronized void buildStarted(String project) {
+        Long end = lastEnd.get(project);
+        if (end == null) {
+            return;
+        }
+        long gap = System.currentTimeMillis() - end;
+        if (gap > MIN_BUILD_GAP) {
+            Long old = typicalGap.get(project);
+            // Let the latest gaps count the most.
+            typicalGap.put(project, old == null ? gap : (3 * old + gap) / 4);
+        }
+    }
+
+    private synchronized void buildEnded(String project) {
+        lastEnd.put(project, System.currentTimeMillis());
+    }
+
+    /**
+     * Stay alive until the next build of each project can be expected, with a
+     * margin of half the typical gap, within idleTimeout and maxIdleTimeout.
+     */
+    synchronized long currentTimeout() {
+        long timeout = idleTimeout;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> e : typicalGap.entrySet()) {
+            long expected = lastEnd.get(e.getKey()) + e.getValue() * 3 / 2 - now;
+            timeout = Math.max(timeout, expected);
+        }
+        return Math.min(timeout, maxIdleTimeout);
+    }
+
+    /**
+     * Load the build history saved by a previous server, if any.
+     */
+    public synchronized void loadHistory(File f) {
+        if (!f.exists()) {
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+            for (String l = in.readLine(); l != null; l = in.readLine()) {
+                String[] parts = l.split(" ");
+                if (parts.length != 3) {
+                    continue;
+                }
+                lastEnd.put(parts[0], Long.parseLong(parts[1]));
+                long gap = Long.parseLong(parts[2]);
+                if (gap > 0) {
+                    typicalGap.put(parts[0], gap);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            SjavacServer.log("Could not load build history " + f + ": " + e);
+        }
+        forgetOldProjects();
+        // A build may be expected later than the default timeout.
+        if (outstandingCalls.get() == 0 && idlenessTimerTask != null) {
+            idlenessTimerTask.cancel();
+            idlenessTimerTask = null;
+            scheduleTimeout();
+        }
+    }
+
+    /**
+     * Save the build history, one line per project with the time its last
+     * compile finished and the typical time between its builds.
+     */
+    public synchronized void saveHistory(File f) {
+        forgetOldProjects();
+        try (PrintWriter out = new PrintWriter(f)) {
+            for (Map.Entry<String, Long> e : lastEnd.entrySet()) {
+                Long gap = typicalGap.get(e.getKey());
+                out.println(e.getKey() + " " + e.getValue() + " " + (gap == null ? 0 : gap));
+            }
+        } catch (IOException e) {
+            SjavacServer.log("Could not save build history " + f + ": " + e);
+        }
+    }
+
+    /**
+     * Drop the projects that have not been built for maxIdleTimeout, or the
+     * history would grow with every project ever built on this server.
+     */
+    private void forgetOldProjects() {
+        long horizon = System.currentTimeMillis() - maxIdleTimeout;
+        Iterator<Map.Entry<String, Long>> i = lastEnd.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Long> e = i.next();
+            if (e.getValue() < horizon) {
+                typicalGap.remove(e.getKey());
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Return the time since the last call finished, 0 while calls are outstanding.
+     */
+    public long idleMillis() {
+        return outstandingCalls.get() > 0 ? 0 : System.currentTimeMillis() - idleSince;
+    }
+
+    /**
+     * Return true if the server was shut down because it was idle.
+     */
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public void cancel(String invocationId) {
+        delegate.cancel(invocationId);
+    }
+
     private void startCall() {
         // Was there no outstanding calls before this call?
         if (outstandingCalls.incrementAndGet() == 1) {
@@ -110,6 +276,7 @@ public class IdleResetSjavac implements Sjavac {
 
     private void endCall() {
         if (outstandingCalls.decrementAndGet() == 0) {
+            idleSince = System.currentTimeMillis();
             // No more outstanding calls. Schedule timeout.
             scheduleTimeout();
         }
@@ -118,12 +285,17 @@ public class IdleResetSjavac implements Sjavac {
     private void scheduleTimeout() {
         if (idlenessTimerTask != null)
             throw new IllegalStateException("Idle timeout already scheduled");
+        final long timeout = currentTimeout();
+        if (timeout != idleTimeout) {
+            SjavacServer.log("Expecting the next build within " + (timeout / 1000) + " seconds.");
+        }
         idlenessTimerTask = new TimerTask() {
             public void run() {
-                toShutdown.shutdown("Server has been idle for " + (idleTimeout / 1000) + " seconds.");
+                timedOut = true;
+                toShutdown.shutdown("Server has been idle for " + (timeout / 1000) + " seconds.");
             }
         };
-        idlenessTimer.schedule(idlenessTimerTask, idleTimeout);
+        idlenessTimer.schedule(idlenessTimerTask, timeout);
     }
 
     @Override
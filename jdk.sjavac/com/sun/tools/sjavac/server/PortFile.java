@@ -33,6 +33,13 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.FileLockInterruptionException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import com.sun.tools.javac.util.Assert;
 import com.sun.tools.sjavac.Log;
 
@@ -200,25 +207,73 @@ public class PortFile {
     /**
      * Wait for the port file to contain values that look valid.
      * Return true, if a-ok, false if the valid values did not materialize within 5 seconds.
+     * The port file is checked as soon as the file system reports a change to it,
+     * and at least every 100ms in case the file system does not report changes.
      */
     public synchronized boolean waitForValidValues() throws IOException, FileNotFoundException {
-        for (int tries = 0; tries < 50; tries++) {
-            lock();
-            getValues();
-            unlock();
-            if (containsPortInfo) {
-                Log.debug("Found valid values in port file after waiting "+(tries*100)+"ms");
-                return true;
+        long start = System.currentTimeMillis();
+        long deadline = start + 5000;
+        try (WatchService watcher = newWatchService()) {
+            for (;;) {
+                lock();
+                getValues();
+                unlock();
+                long now = System.currentTimeMillis();
+                if (containsPortInfo) {
+                    Log.debug("Found valid values in port file after waiting "+(now-start)+"ms");
+                    return true;
+                }
+                if (now >= deadline) {
+                    break;
+                }
+                long wait = Math.min(deadline - now, 100);
+                try {
+                    if (watcher != null) {
+                        WatchKey key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+                        if (key != null) {
+                            key.pollEvents();
+                            key.reset();
+                        }
+                    } else {
+                        Thread.sleep(wait);
+                    }
+                } catch (InterruptedException e)
+                {}
             }
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e)
-            {}
         }
         Log.debug("Gave up waiting for valid values in port file");
         return false;
     }
 
+    /**
+     * Watch the directory of the port file for created, modified and deleted files.
+     * Return null if the file system cannot be watched.
+     */
+    WatchService newWatchService() {
+        WatchService watcher = null;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            file.getAbsoluteFile().getParentFile().toPath().register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.debug("Cannot watch the port file directory: "+e);
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException ioe)
+                {}
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Is this file name, relative to the port file directory, the port file or its stop file?
+     */
+    boolean isPortOrStopFile(String name) {
+        return name.equals(file.getName()) || name.equals(stopFile.getName());
+    }
+
     /**
      * Check if the portfile still contains my values, assuming that I am the server.
      */
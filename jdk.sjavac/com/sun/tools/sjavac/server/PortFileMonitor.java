@@ -25,6 +25,10 @@
 package com.sun.tools.sjavac.server;
 
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -32,6 +36,10 @@ import java.util.TimerTask;
  * Monitors the presence of a port file and shuts down the given SjavacServer
  * whenever the port file is deleted or invalidated.
  *
+ * The port file directory is watched, so that the server reacts as soon as
+ * the port file is deleted or a stop file appears. The port file is also
+ * checked every 5 seconds, for file systems that do not report changes.
+ *
  * TODO: JDK-8046882
  *
  *  <p><b>This is NOT part of any supported API.
@@ -47,6 +55,7 @@ public class PortFileMonitor {
     final private Timer timer = new Timer();
     final private PortFile portFile;
     final private SjavacServer server;
+    private WatchService watcher;
 
     public PortFileMonitor(PortFile portFile,
                            SjavacServer server) {
@@ -57,32 +66,83 @@ public class PortFileMonitor {
     public void start() {
         TimerTask shutdownCheck = new TimerTask() {
             public void run() {
-                try {
-                    if (!portFile.exists()) {
-                        // Time to quit because the portfile was deleted by another
-                        // process, probably by the makefile that is done building.
-                        server.shutdown("Quitting because portfile was deleted!");
-                    } else if (portFile.markedForStop()) {
-                        // Time to quit because another process touched the file
-                        // server.port.stop to signal that the server should stop.
-                        // This is necessary on some operating systems that lock
-                        // the port file hard!
-                        server.shutdown("Quitting because a portfile.stop file was found!");
-                    } else if (!portFile.stillMyValues()) {
-                        // Time to quit because another build has started.
-                        server.shutdown("Quitting because portfile is now owned by another javac server!");
-                    }
-                } catch (IOException e) {
-                    server.log(""+e);
-                    server.flushLog();
-                }
+                check();
             }
         };
 
         timer.schedule(shutdownCheck, 0, CHECK_PORTFILE_INTERVAL);
+
+        watcher = portFile.newWatchService();
+        if (watcher != null) {
+            Thread t = new Thread("PortFileMonitor") {
+                @Override
+                public void run() {
+                    watch();
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Check the port file whenever the port file or its stop file changes.
+     */
+    private void watch() {
+        try {
+            for (;;) {
+                WatchKey key = watcher.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object name = event.context();
+                    // Overflow events have no context, check to be sure.
+                    if (name == null || portFile.isPortOrStopFile(name.toString())) {
+                        relevant = true;
+                    }
+                }
+                if (relevant) {
+                    check();
+                }
+                if (!key.reset()) {
+                    // The directory is gone, and the port file with it.
+                    check();
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Monitor shut down.
+        }
+    }
+
+    private synchronized void check() {
+        try {
+            if (!portFile.exists()) {
+                // Time to quit because the portfile was deleted by another
+                // process, probably by the makefile that is done building.
+                server.shutdown("Quitting because portfile was deleted!");
+            } else if (portFile.markedForStop()) {
+                // Time to quit because another process touched the file
+                // server.port.stop to signal that the server should stop.
+                // This is necessary on some operating systems that lock
+                // the port file hard!
+                server.shutdown("Quitting because a portfile.stop file was found!");
+            } else if (!portFile.stillMyValues()) {
+                // Time to quit because another build has started.
+                server.shutdown("Quitting because portfile is now owned by another javac server!");
+            }
+        } catch (IOException e) {
+            server.log(""+e);
+            server.flushLog();
+        }
     }
 
     public void shutdown() {
         timer.cancel();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+            }
+        }
     }
 }
@@ -36,6 +36,7 @@ import java.net.Socket;
 import java.net.URI;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.sun.tools.sjavac.Log;
 
@@ -46,6 +47,9 @@ import com.sun.tools.sjavac.Log;
  *  - Delegates the actual invocation to the given sjavac implementation
  *  - Writes the result back to the socket output stream
  *
+ * A compilation is cancelled if the client disconnects before the result
+ * has been written, for example when the client was killed.
+ *
  * None of the work performed by this class is really bound by the CPU. It
  * should be completely fine to have a large number of RequestHandlers active.
  * To limit the number of concurrent compilations, use PooledSjavac.
@@ -72,10 +76,12 @@ public class RequestHandler implements Runnable {
             String id = (String) oin.readObject();
             String cmd = (String) oin.readObject();
             Log.info("Handling request, id: " + id + " cmd: " + cmd);
+            ServerStats.recordRequest(cmd);
             switch (cmd) {
             case SjavacServer.CMD_SHUTDOWN: handleShutdown(oin, oout); break;
             case SjavacServer.CMD_SYS_INFO: handleSysInfoRequest(oin, oout); break;
-            case SjavacServer.CMD_COMPILE:  handleCompileRequest(oin, oout); break;
+            case SjavacServer.CMD_COMPILE:  handleCompileRequest(id, oin, oout); break;
+            case SjavacServer.CMD_CANCEL:   handleCancelRequest(oin, oout); break;
             case SjavacServer.CMD_GET_CLASS_LOC: handleClassLocRequest(oin, oout); break;
             case SjavacServer.CMD_GET_PUBLIC_API: handlePublicApiRequest(oin, oout); break;
             default: Log.error("Unknown command: " + cmd);
@@ -104,32 +110,126 @@ public class RequestHandler implements Runnable {
     }
 
     @SuppressWarnings("unchecked")
-    private void handleCompileRequest(ObjectInputStream oin,
-                                      ObjectOutputStream oout) throws IOException {
+    private void handleCompileRequest(String id,
+                                      final ObjectInputStream oin,
+                                      final ObjectOutputStream oout) throws IOException {
         try {
             // Read request arguments
             String protocolId = (String) oin.readObject();
-            String invocationId = (String) oin.readObject();
+            final String invocationId = (String) oin.readObject();
             String[] args = (String[]) oin.readObject();
             List<File> explicitSources = (List<File>) oin.readObject();
             Set<URI> sourcesToCompile = (Set<URI>) oin.readObject();
             Set<URI> visibleSources = (Set<URI>) oin.readObject();
 
-            // Perform compilation
-            CompilationResult cr = sjavac.compile(protocolId,
-                                                  invocationId,
-                                                  args,
-                                                  explicitSources,
-                                                  sourcesToCompile,
-                                                  visibleSources);
+            // The client sends nothing more, so a read that returns means
+            // the client has disconnected.
+            final AtomicBoolean done = new AtomicBoolean();
+            Thread watcher = new Thread("Client watcher " + invocationId) {
+                @Override
+                public void run() {
+                    try {
+                        oin.read();
+                    } catch (IOException e) {
+                        // Connection reset, same as end of stream.
+                    }
+                    if (!done.get()) {
+                        Log.info("Client disconnected, cancelling " + invocationId);
+                        sjavac.cancel(invocationId);
+                    }
+                }
+            };
+            watcher.setDaemon(true);
+            watcher.start();
+
+            // Perform compilation, streaming the output back as it is produced
+            long start = System.currentTimeMillis();
+            CompilationResult cr;
+            try {
+                cr = sjavac.compile(protocolId,
+                                    invocationId,
+                                    args,
+                                    explicitSources,
+                                    sourcesToCompile,
+                                    visibleSources,
+                                    new StreamingListener(oout, invocationId));
+            } finally {
+                done.set(true);
+            }
+            long ms = System.currentTimeMillis() - start;
+            int numSources = explicitSources.size() + sourcesToCompile.size();
+            TenantStats.record(id, numSources, ms, cr.allocatedBytes);
+            ServerStats.recordCompile(numSources, ms, cr);
             // Write request response
-            oout.writeObject(cr);
+            synchronized (oout) {
+                oout.writeObject(cr);
+                oout.flush();
+            }
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException(cnfe);
+        }
+    }
+
+    private void handleCancelRequest(ObjectInputStream oin,
+                                     ObjectOutputStream oout) throws IOException {
+        try {
+            // Read request arguments
+            String invocationId = (String) oin.readObject();
+            sjavac.cancel(invocationId);
+            oout.writeObject("Cancelled " + invocationId);
             oout.flush();
         } catch (ClassNotFoundException cnfe) {
             throw new IOException(cnfe);
         }
     }
 
+    /**
+     * Writes each piece of compiler output to the client as a
+     * CompilationMessage, before the final CompilationResult.
+     * The compilation is cancelled when the client can no longer be reached.
+     */
+    private class StreamingListener implements CompilationListener {
+        final ObjectOutputStream oout;
+        final String invocationId;
+        boolean failed;
+
+        StreamingListener(ObjectOutputStream oout, String invocationId) {
+            this.oout = oout;
+            this.invocationId = invocationId;
+        }
+
+        public void stdout(String line) {
+            send(new CompilationMessage(CompilationMessage.STDOUT, line));
+        }
+
+        public void stderr(String line) {
+            send(new CompilationMessage(CompilationMessage.STDERR, line));
+        }
+
+        public void sourceCompiled(URI source) {
+            send(new CompilationMessage(CompilationMessage.SOURCE_COMPILED, source.toString()));
+        }
+
+        private void send(CompilationMessage msg) {
+            synchronized (oout) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    oout.writeObject(msg);
+                    oout.flush();
+                    // The messages are never referenced again, do not let
+                    // the stream keep them all in its handle table.
+                    oout.reset();
+                } catch (IOException e) {
+                    Log.error("Could not send compilation output to client: " + e);
+                    failed = true;
+                    sjavac.cancel(invocationId);
+                }
+            }
+        }
+    }
+
     private void handleClassLocRequest(ObjectInputStream oin,
                                      ObjectOutputStream oout) throws IOException {
         try {
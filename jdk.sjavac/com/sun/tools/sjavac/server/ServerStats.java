@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.tools.sjavac.comp.PooledSjavac;
+
+/**
+ * Counts the requests and compiles served by a server and publishes them,
+ * together with the state of the pool, the heap and the idle timeout, as
+ * an MXBean. The totals are written to the server log on shutdown.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class ServerStats implements ServerStatsMXBean {
+
+    private static long requests;
+    private static long classpathRequests;
+    private static long compiles;
+    private static long failedCompiles;
+    private static long compiledSources;
+    private static long compileMillis;
+    private static long lastCompileMillis;
+    private static long maxCompileMillis;
+    private static long lastSources;
+    private static long allocatedBytes;
+    private static long lastAllocatedBytes;
+    private static long writtenClassFiles;
+    private static long unchangedClassFiles;
+
+    private final PooledSjavac pool;
+    private final IdleResetSjavac idle;
+    private final long started = System.currentTimeMillis();
+    private ObjectName name;
+
+    public ServerStats(PooledSjavac pool, IdleResetSjavac idle) {
+        this.pool = pool;
+        this.idle = idle;
+    }
+
+    /**
+     * Count a request of any kind.
+     */
+    public static synchronized void recordRequest(String cmd) {
+        requests++;
+        if (cmd.equals(SjavacServer.CMD_GET_PUBLIC_API) || cmd.equals(SjavacServer.CMD_GET_CLASS_LOC)) {
+            classpathRequests++;
+        }
+    }
+
+    /**
+     * Add a finished compile request to the totals.
+     */
+    public static synchronized void recordCompile(int numSources, long ms, CompilationResult cr) {
+        compiles++;
+        if (cr.returnCode != 0) {
+            failedCompiles++;
+        }
+        compiledSources += numSources;
+        compileMillis += ms;
+        lastCompileMillis = ms;
+        maxCompileMillis = Math.max(maxCompileMillis, ms);
+        lastSources = numSources;
+        lastAllocatedBytes = Math.max(cr.allocatedBytes, 0);
+        allocatedBytes += lastAllocatedBytes;
+        for (Set<URI> artifacts : cr.packageArtifacts.values()) {
+            for (URI u : artifacts) {
+                if (u.getPath().endsWith(".class")) {
+                    writtenClassFiles++;
+                }
+            }
+        }
+        unchangedClassFiles += cr.unchangedArtifacts.size();
+    }
+
+    /**
+     * Publish the statistics of the server with the given port file.
+     */
+    public void register(String portfile) {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("com.sun.tools.sjavac:type=Server,portfile=" + ObjectName.quote(portfile));
+            mbs.registerMBean(this, name);
+        } catch (JMException e) {
+            name = null;
+            SjavacServer.log("Could not register the server statistics: " + e);
+        }
+    }
+
+    /**
+     * Stop publishing the statistics.
+     */
+    public void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            SjavacServer.log("Could not unregister the server statistics: " + e);
+        }
+        name = null;
+    }
+
+    /**
+     * Write the totals to the server log.
+     */
+    public void logSummary() {
+        SjavacServer.log("    requests: " + getRequests() + " of which " + getCompileRequests() +
+                         " compiles (" + getFailedCompiles() + " failed) and " +
+                         getClasspathRequests() + " classpath lookups");
+        SjavacServer.log("    compiled " + getCompiledSources() + " sources in " + getCompileMillis() +
+                         "ms giving " + Math.round(getSourcesPerSecond()) + " sources/s, slowest compile " +
+                         getMaxCompileMillis() + "ms, allocating " + (getAllocatedBytes() >> 20) + "MiB");
+    }
+
+    @Override
+    public long getUptimeMillis() {
+        return System.currentTimeMillis() - started;
+    }
+
+    @Override
+    public long getRequests() {
+        synchronized (ServerStats.class) {
+            return requests;
+        }
+    }
+
+    @Override
+    public long getCompileRequests() {
+        synchronized (ServerStats.class) {
+            return compiles;
+        }
+    }
+
+    @Override
+    public long getFailedCompiles() {
+        synchronized (ServerStats.class) {
+            return failedCompiles;
+        }
+    }
+
+    @Override
+    public long getClasspathRequests() {
+        synchronized (ServerStats.class) {
+            return classpathRequests;
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool.poolSize();
+    }
+
+    @Override
+    public int getActiveCompiles() {
+        return pool.activeCompiles();
+    }
+
+    @Override
+    public int getQueuedCompiles() {
+        return pool.queuedCompiles();
+    }
+
+    @Override
+    public long getCompiledSources() {
+        synchronized (ServerStats.class) {
+            return compiledSources;
+        }
+    }
+
+    @Override
+    public long getCompileMillis() {
+        synchronized (ServerStats.class) {
+            return compileMillis;
+        }
+    }
+
+    @Override
+    public long getLastCompileMillis() {
+        synchronized (ServerStats.class) {
+            return lastCompileMillis;
+        }
+    }
+
+    @Override
+    public long getMaxCompileMillis() {
+        synchronized (ServerStats.class) {
+            return maxCompileMillis;
+        }
+    }
+
+    @Override
+    public double getSourcesPerSecond() {
+        synchronized (ServerStats.class) {
+            return perSecond(compiledSources, compileMillis);
+        }
+    }
+
+    @Override
+    public double getLastSourcesPerSecond() {
+        synchronized (ServerStats.class) {
+            return perSecond(lastSources, lastCompileMillis);
+        }
+    }
+
+    private static double perSecond(long n, long ms) {
+        return ms > 0 ? n * 1000.0 / ms : 0;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        synchronized (ServerStats.class) {
+            return allocatedBytes;
+        }
+    }
+
+    @Override
+    public long getLastAllocatedBytes() {
+        synchronized (ServerStats.class) {
+            return lastAllocatedBytes;
+        }
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return heap().getUsed();
+    }
+
+    @Override
+    public long getHeapMaxBytes() {
+        return heap().getMax();
+    }
+
+    private static MemoryUsage heap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    @Override
+    public long getWrittenClassFiles() {
+        synchronized (ServerStats.class) {
+            return writtenClassFiles;
+        }
+    }
+
+    @Override
+    public double getUnchangedClassFileRatio() {
+        synchronized (ServerStats.class) {
+            return writtenClassFiles > 0 ? (double) unchangedClassFiles / writtenClassFiles : 0;
+        }
+    }
+
+    @Override
+    public long getIdleMillis() {
+        return idle.idleMillis();
+    }
+
+    @Override
+    public long getIdleTimeoutMillis() {
+        return idle.currentTimeout();
+    }
+}
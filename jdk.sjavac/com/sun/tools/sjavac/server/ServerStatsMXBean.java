@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.server;
+
+/**
+ * The attributes of a running sjavac server, published through JMX under
+ * {@code com.sun.tools.sjavac:type=Server,portfile=<port file>}, for
+ * example to jconsole or a metrics agent attached to the server jvm.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public interface ServerStatsMXBean {
+
+    /** Milliseconds since the server started. */
+    long getUptimeMillis();
+
+    /** Requests of any kind served. */
+    long getRequests();
+
+    /** Compile requests served. */
+    long getCompileRequests();
+
+    /** Compiles that failed or were cancelled. */
+    long getFailedCompiles();
+
+    /** Public api and class location requests served. */
+    long getClasspathRequests();
+
+    /** Maximum number of concurrent compiles. */
+    int getPoolSize();
+
+    /** Compiles running now. */
+    int getActiveCompiles();
+
+    /** Compiles waiting for a thread in the pool now. */
+    int getQueuedCompiles();
+
+    /** Sources compiled by all compiles. */
+    long getCompiledSources();
+
+    /** Milliseconds spent in all compiles. */
+    long getCompileMillis();
+
+    /** Milliseconds spent in the latest compile. */
+    long getLastCompileMillis();
+
+    /** Milliseconds spent in the slowest compile. */
+    long getMaxCompileMillis();
+
+    /** Sources compiled per second by all compiles. */
+    double getSourcesPerSecond();
+
+    /** Sources compiled per second by the latest compile. */
+    double getLastSourcesPerSecond();
+
+    /** Heap allocated by all compiles. */
+    long getAllocatedBytes();
+
+    /** Heap allocated by the latest compile. */
+    long getLastAllocatedBytes();
+
+    /** Heap in use now. */
+    long getHeapUsedBytes();
+
+    /** Maximum heap of the server. */
+    long getHeapMaxBytes();
+
+    /** Class files written by all compiles. */
+    long getWrittenClassFiles();
+
+    /** The part of the written class files that kept their old content (with -Xwrite-if-changed). */
+    double getUnchangedClassFileRatio();
+
+    /** Milliseconds since the last request finished, 0 while requests are served. */
+    long getIdleMillis();
+
+    /** Milliseconds the server waits for the next request before it shuts down. */
+    long getIdleTimeoutMillis();
+}
@@ -47,7 +47,13 @@ public interface Sjavac {
                               String[] args,
                               List<File> explicitSources,
                               Set<URI> sourcesToCompile,
-                              Set<URI> visibleSources);
+                              Set<URI> visibleSources,
+                              CompilationListener listener);
+    /**
+     * Abort the compile with the given invocation id, if it is queued or
+     * running. The aborted compile returns CompilationResult.ERROR_CANCELLED.
+     */
+    void cancel(String invocationId);
 
     void shutdown();
     String serverSettings();
@@ -28,9 +28,11 @@ package com.sun.tools.sjavac.server;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -45,6 +47,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import com.sun.tools.sjavac.Log;
 import com.sun.tools.sjavac.ProblemException;
 import com.sun.tools.sjavac.Util;
+import com.sun.tools.sjavac.client.ForkCommand;
 import com.sun.tools.sjavac.comp.SjavacImpl;
 import com.sun.tools.sjavac.comp.PooledSjavac;
 
@@ -62,6 +65,7 @@ public class SjavacServer implements Terminable {
     public final static String CMD_SHUTDOWN = "shutdown";
     public final static String CMD_SYS_INFO = "sys-info";
     public final static String CMD_COMPILE = "compile";
+    public final static String CMD_CANCEL = "cancel";
     public final static String CMD_GET_CLASS_LOC = "class-loc";
     public final static String CMD_GET_PUBLIC_API = "public-api";
 
@@ -70,6 +74,9 @@ public class SjavacServer implements Terminable {
     final private String stdouterrfile;
     final private int poolsize;
     final private int keepalive;
+    final private int maxkeepalive;
+    final private int warmup;
+    final private boolean prespawn;
     final private PrintStream err;
 
     // The secret cookie shared between server and client through the port file.
@@ -82,10 +89,13 @@ public class SjavacServer implements Terminable {
     private long totalBuildTime;
 
     // The javac server specific log file.
-    private static PrintWriter theLog;
+    private static PrintStream theLog;
 
     // The sjavac implementation to delegate requests to
     Sjavac sjavac;
+    private PooledSjavac pooledSjavac;
+    private IdleResetSjavac idleResetSjavac;
+    private ServerStats stats;
 
     private ServerSocket serverSocket;
 
@@ -106,12 +116,15 @@ public class SjavacServer implements Terminable {
         logfile = Util.extractStringOption("logfile", settings);
         stdouterrfile = Util.extractStringOption("stdouterrfile", settings);
         keepalive = Util.extractIntOption("keepalive", settings, 120);
+        maxkeepalive = Util.extractIntOption("maxkeepalive", settings, keepalive);
+        warmup = Util.extractIntOption("warmup", settings, 0);
+        prespawn = Util.extractBooleanOption("prespawn", settings, false);
         poolsize = Util.extractIntOption("poolsize", settings,
                                          Runtime.getRuntime().availableProcessors());
         this.err = err;
 
         myCookie = new Random().nextLong();
-        theLog = new PrintWriter(logfile);
+        theLog = new PrintStream(new FileOutputStream(logfile));
     }
 
     /**
@@ -154,6 +167,13 @@ public class SjavacServer implements Terminable {
         return serverSocket.getLocalPort();
     }
 
+    /**
+     * Return true until the server has started to shut down.
+     */
+    boolean isAcceptingRequests() {
+        return keepAcceptingRequests.get();
+    }
+
     /**
      * Sum up the total build time for this javac server.
      */
@@ -165,21 +185,24 @@ public class SjavacServer implements Terminable {
      * Log this message.
      */
     public static void log(String msg) {
-        if (theLog != null) {
-            theLog.println(msg);
-            theLog.flush();
-        } else {
-            System.err.println(msg);
-        }
+        Log.log(theLog != null ? theLog : System.err, msg);
+    }
+
+    /**
+     * Log this message and the stack trace of the exception, in order with
+     * the other messages written to the log.
+     */
+    public static void log(String msg, Throwable t) {
+        StringWriter trace = new StringWriter();
+        t.printStackTrace(new PrintWriter(trace));
+        log(msg+System.lineSeparator()+trace.toString().trim());
     }
 
     /**
      * Make sure the log is flushed.
      */
     public static void flushLog() {
-        if (theLog != null) {
-            theLog.flush();
-        }
+        Log.flush();
     }
 
     /**
@@ -205,10 +228,18 @@ public class SjavacServer implements Terminable {
             // socket -->| IdleReset |-->| Pooled |-->| Impl |--> javac
             //           '-----------'   '--------'   '------'
             sjavac = new SjavacImpl();
-            sjavac = new PooledSjavac(sjavac, poolsize);
-            sjavac = new IdleResetSjavac(sjavac,
-                                         this,
-                                         keepalive * 1000);
+            pooledSjavac = new PooledSjavac(sjavac, poolsize);
+            sjavac = pooledSjavac;
+            idleResetSjavac = new IdleResetSjavac(sjavac,
+                                                  this,
+                                                  keepalive * 1000L,
+                                                  maxkeepalive * 1000L);
+            sjavac = idleResetSjavac;
+            if (maxkeepalive > keepalive) {
+                idleResetSjavac.loadHistory(historyFile());
+            }
+            stats = new ServerStats(pooledSjavac, idleResetSjavac);
+            stats.register(portfilename);
 
             serverSocket = new ServerSocket();
             InetAddress localhost = InetAddress.getByName(null);
@@ -229,6 +260,14 @@ public class SjavacServer implements Terminable {
         log("    poolsize: " + poolsize);
 
         keepAcceptingRequests.set(true);
+
+        if (warmup > 0) {
+            // Warm up javac while waiting for the first request. The warm-up
+            // bypasses the idle reset, it is not a build to keep alive for.
+            Thread t = new Thread(new Warmup(pooledSjavac, warmup, this), "Warmup");
+            t.setDaemon(true);
+            t.start();
+        }
         do {
             try {
                 Socket socket = serverSocket.accept();
@@ -247,23 +286,61 @@ public class SjavacServer implements Terminable {
 
         long realTime = System.currentTimeMillis() - serverStart;
         log("Total wall clock time " + realTime + "ms build time " + totalBuildTime + "ms");
+        stats.logSummary();
+        TenantStats.logSummary();
+        stats.unregister();
 
         // Shut down
         sjavac.shutdown();
 
+        if (maxkeepalive > keepalive) {
+            idleResetSjavac.saveHistory(historyFile());
+        }
+        if (prespawn && idleResetSjavac.hasTimedOut() && TenantStats.totalCompiles() > 0) {
+            respawn();
+        }
         return 0;
     }
 
+    /**
+     * The build history for the adaptive keepalive is kept next to the port file.
+     */
+    private File historyFile() {
+        return new File(portfilename + ".history");
+    }
+
+    /**
+     * Start a replacement server with the same settings, to be ready for the
+     * next build. The replacement has a fresh heap and, with warmup, has
+     * already compiled before the next build arrives. It only respawns in
+     * turn if it serves a compile, so an unused server is not kept around.
+     */
+    private void respawn() {
+        String cmd = ForkCommand.getCommandLine();
+        if (cmd == null) {
+            log("Cannot respawn, the java launcher command line could not be recreated.");
+            return;
+        }
+        try {
+            log("Respawning: " + fork(cmd + " com.sun.tools.sjavac.Main", portfilename, logfile,
+                                      poolsize, keepalive, maxkeepalive, warmup, prespawn,
+                                      err, stdouterrfile, true));
+        } catch (IOException | ProblemException e) {
+            log("Respawn failed: " + e);
+        }
+    }
+
     /**
      * Fork a background process. Returns the command line used that can be printed if something failed.
      */
     public static String fork(String sjavac, String portfile, String logfile, int poolsize, int keepalive,
+            int maxkeepalive, int warmup, boolean prespawn,
             final PrintStream err, String stdouterrfile, boolean background)
             throws IOException, ProblemException {
         if (stdouterrfile != null && stdouterrfile.trim().equals("")) {
             stdouterrfile = null;
         }
-        final String startserver = "-startserver:portfile=" + portfile + ",logfile=" + logfile + ",stdouterrfile=" + stdouterrfile + ",poolsize=" + poolsize + ",keepalive="+ keepalive;
+        final String startserver = "-startserver:portfile=" + portfile + ",logfile=" + logfile + ",stdouterrfile=" + stdouterrfile + ",poolsize=" + poolsize + ",keepalive="+ keepalive + ",maxkeepalive=" + maxkeepalive + ",warmup=" + warmup + ",prespawn=" + prespawn;
 
         if (background) {
             sjavac += "%20" + startserver;
@@ -329,14 +406,14 @@ public class SjavacServer implements Terminable {
             portFile.delete();
             log("Deleted portfile.");
         } catch (IOException e) {
-            e.printStackTrace(theLog);
+            log("Could not delete portfile.", e);
             e.printStackTrace(System.err);
         }
         try {
             serverSocket.close();
             log("Closed socket.");
         } catch (IOException e) {
-            e.printStackTrace(theLog);
+            log("Could not close socket.", e);
         }
     }
 
@@ -48,6 +48,8 @@ public class SysInfo implements Serializable {
 
     public int numCores;
     public long maxMemory;
+    // The number of servers the cores and memory are spread over.
+    public int numServers = 1;
 
     public SysInfo(int nc, long mm) {
         numCores = nc;
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accounts the work done by a server per tenant, i.e. per client id.
+ * A server shared by all builds on a host (-server:shared=true) gives each
+ * project its own id, so the log shows which projects use the server most.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class TenantStats {
+
+    private static final Map<String, TenantStats> tenants = new TreeMap<>();
+
+    int compiles;
+    long sources;
+    long millis;
+    long allocatedBytes;
+
+    /**
+     * Add a finished compile request to the totals of the tenant.
+     */
+    public static synchronized void record(String tenant, int numSources, long ms, long allocated) {
+        TenantStats ts = tenants.get(tenant);
+        if (ts == null) {
+            ts = new TenantStats();
+            tenants.put(tenant, ts);
+        }
+        ts.compiles++;
+        ts.sources += numSources;
+        ts.millis += ms;
+        if (allocated > 0) {
+            ts.allocatedBytes += allocated;
+        }
+    }
+
+    /**
+     * Return the number of compile requests served for all tenants.
+     */
+    public static synchronized int totalCompiles() {
+        int n = 0;
+        for (TenantStats ts : tenants.values()) {
+            n += ts.compiles;
+        }
+        return n;
+    }
+
+    /**
+     * Write the totals of all tenants to the server log.
+     */
+    public static synchronized void logSummary() {
+        for (Map.Entry<String, TenantStats> e : tenants.entrySet()) {
+            TenantStats ts = e.getValue();
+            SjavacServer.log("    tenant " + e.getKey() + ": " + ts.compiles + " compiles of " +
+                             ts.sources + " sources in " + ts.millis + "ms allocating " +
+                             (ts.allocatedBytes >> 20) + "MiB");
+        }
+    }
+}
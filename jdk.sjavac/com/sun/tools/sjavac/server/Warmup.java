@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package com.sun.tools.sjavac.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiles a small synthetic project a number of times when the server has
+ * started, so that javac is class loaded and jit compiled before the first
+ * real compile request arrives. Enabled with -server:warmup=N where N is
+ * the number of rounds.
+ *
+ * The warm-up compiles go through the same pool as the real compiles, but
+ * not through the idle reset, so they neither keep the server alive nor end
+ * up in the build history of the adaptive keepalive.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class Warmup implements Runnable {
+
+    private final Sjavac sjavac;
+    private final int rounds;
+    private final SjavacServer server;
+
+    // The synthetic project, a few packages using generics, inner classes,
+    // enums, annotations and lambdas.
+    private final static String[][] SOURCES = {
+        { "w/a/Shape.java",
+          "package w.a; public interface Shape extends Comparable<Shape> {\n" +
+          "    double area();\n" +
+          "    default int compareTo(Shape o) { return Double.compare(area(), o.area()); }\n" +
+          "}\n" },
+        { "w/a/Circle.java",
+          "package w.a; public class Circle implements Shape {\n" +
+          "    private final double r;\n" +
+          "    public Circle(double r) { this.r = r; }\n" +
+          "    public double area() { return Math.PI * r * r; }\n" +
+          "    @Override public String toString() { return \"Circle(\" + r + \")\"; }\n" +
+          "}\n" },
+        { "w/a/Kind.java",
+          "package w.a; public enum Kind { CIRCLE, SQUARE;\n" +
+          "    public Shape make(double d) {\n" +
+          "        switch (this) {\n" +
+          "        case CIRCLE: return new Circle(d);\n" +
+          "        default: return () -> d * d;\n" +
+          "        }\n" +
+          "    }\n" +
+          "}\n" },
+        { "w/b/Registry.java",
+          "package w.b; import java.util.*; import java.util.function.*; import w.a.*;\n" +
+          "public class Registry<K extends Comparable<K>, V extends Shape> {\n" +
+          "    private final Map<K, List<V>> map = new TreeMap<>();\n" +
+          "    public void add(K k, V v) { map.computeIfAbsent(k, x -> new ArrayList<>()).add(v); }\n" +
+          "    public <R> List<R> collect(Function<? super V, ? extends R> f) {\n" +
+          "        List<R> res = new ArrayList<>();\n" +
+          "        for (List<V> vs : map.values()) for (V v : vs) res.add(f.apply(v));\n" +
+          "        return res;\n" +
+          "    }\n" +
+          "    public class Entry { public K key; public V value; }\n" +
+          "    @FunctionalInterface public interface Visitor<T> { void visit(T t) throws Exception; }\n" +
+          "}\n" },
+        { "w/b/Main.java",
+          "package w.b; import java.util.stream.*; import w.a.*;\n" +
+          "public class Main {\n" +
+          "    @SuppressWarnings(\"unchecked\")\n" +
+          "    public static void main(String... args) {\n" +
+          "        Registry<String, Shape> reg = new Registry<>();\n" +
+          "        for (Kind k : Kind.values()) reg.add(k.name(), k.make(args.length));\n" +
+          "        String s = reg.collect(Shape::area).stream().map(String::valueOf).collect(Collectors.joining(\",\"));\n" +
+          "        Runnable r = new Runnable() { public void run() { System.out.println(s); } };\n" +
+          "        r.run();\n" +
+          "    }\n" +
+          "}\n" },
+    };
+
+    public Warmup(Sjavac sjavac, int rounds, SjavacServer server) {
+        this.sjavac = sjavac;
+        this.rounds = rounds;
+        this.server = server;
+    }
+
+    @Override
+    public void run() {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("sjavac_warmup");
+            Set<URI> sources = new HashSet<>();
+            for (String[] src : SOURCES) {
+                Path p = dir.resolve("src").resolve(src[0]);
+                Files.createDirectories(p.getParent());
+                try (PrintWriter out = new PrintWriter(p.toFile())) {
+                    out.print(src[1]);
+                }
+                sources.add(p.toUri());
+            }
+            Path classes = dir.resolve("classes");
+            Files.createDirectories(classes);
+            String[] args = { "-d", classes.toString() };
+            for (int i = 0; i < rounds && server.isAcceptingRequests(); i++) {
+                long start = System.currentTimeMillis();
+                CompilationResult cr = sjavac.compile("n/a",
+                                                      "warmup-" + i,
+                                                      args,
+                                                      Collections.<File>emptyList(),
+                                                      sources,
+                                                      sources,
+                                                      null);
+                if (cr.returnCode != 0) {
+                    SjavacServer.log("Warm-up compile failed: " + cr.stderr);
+                    break;
+                }
+                SjavacServer.log("Warm-up round " + (i+1) + " of " + rounds + " took " +
+                                 (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (Exception e) {
+            SjavacServer.log("Warm-up failed: " + e);
+        } finally {
+            if (dir != null) {
+                deleteTree(dir);
+            }
+        }
+    }
+
+    private static void deleteTree(Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            SjavacServer.log("Could not remove warm-up dir " + root + ": " + e);
+        }
+    }
+}
@@ -14,3 +14,16 @@ echo With Smart Javac Wrapper
 time sjavac -cp $JAVA_HOME/lib/tools.jar jdk.sjavac sjavac.transforms -d /tmp/bon -log:timing
 
 diff -rq /tmp/ban /tmp/bon
+
+# Compare the throughput of a single server jvm with several server jvms.
+# Every setup compiles the sources twice, first with a cold and then with a warm server.
+for jvms in 1 2 4; do
+    rm -rf /tmp/bjvm* /tmp/sjvm
+    mkdir -p /tmp/sjvm
+    for run in cold warm; do
+        rm -rf /tmp/bjvm*
+        echo With $jvms server jvm\(s\), $run
+        time sjavac -server:jvms=$jvms -server-dir:/tmp/sjvm -cp $JAVA_HOME/lib/tools.jar jdk.sjavac sjavac.transforms -d /tmp/bjvm -log:timing
+    done
+    sjavac -server:jvms=$jvms -server-dir:/tmp/sjvm -stopserver -d /tmp/bjvm
+done
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package sjavac.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.tools.sjavac.Log;
+import com.sun.tools.sjavac.Util;
+
+/**
+ * Runs the benchmarks of the hot paths of sjavac on generated projects of
+ * different sizes, and reports the time and heap allocation of each
+ * operation. With -save the results are stored, with -compare a later run
+ * fails if an operation became slower than the stored result by more than
+ * the tolerance.
+ *
+ * <pre>
+ * java -cp sjavac.jar:$JAVA_HOME/lib/tools.jar sjavac.bench.Bench -scales 1000,10000,100000
+ * </pre>
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class Bench {
+
+    int[] scales = { 1000, 10000 };
+    String only;
+    int warmup = 5;
+    int iterations = 10;
+    Path workDir = Paths.get(System.getProperty("java.io.tmpdir"), "sjavac_bench");
+    String saveFile;
+    String compareFile;
+    int tolerance = 20;
+
+    // The average nanos per operation, by benchmark and scale.
+    final Map<String,Long> results = new HashMap<>();
+
+    public static void main(String... args) throws Exception {
+        Bench bench = new Bench();
+        if (!bench.parseArgs(args)) {
+            System.err.println("Usage: sjavac.bench.Bench [-scales n,n,..] [-only name] [-warmup n] [-iterations n]");
+            System.err.println("                          [-work dir] [-save file] [-compare file] [-tolerance percent]");
+            System.exit(2);
+        }
+        System.exit(bench.runAll() ? 0 : 1);
+    }
+
+    boolean parseArgs(String... args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i+1 == args.length) return false;
+            String value = args[++i];
+            switch (args[i-1]) {
+                case "-scales":
+                    String[] ss = value.split(",");
+                    scales = new int[ss.length];
+                    for (int j = 0; j < ss.length; j++) {
+                        scales[j] = Integer.parseInt(ss[j]);
+                    }
+                    break;
+                case "-only": only = value; break;
+                case "-warmup": warmup = Integer.parseInt(value); break;
+                case "-iterations": iterations = Integer.parseInt(value); break;
+                case "-work": workDir = Paths.get(value); break;
+                case "-save": saveFile = value; break;
+                case "-compare": compareFile = value; break;
+                case "-tolerance": tolerance = Integer.parseInt(value); break;
+                default: return false;
+            }
+        }
+        return iterations > 0;
+    }
+
+    static List<Benchmark> benchmarks() {
+        List<Benchmark> bs = new ArrayList<>();
+        bs.addAll(StateBenchmarks.all());
+        bs.addAll(PubapiBenchmarks.all());
+        return bs;
+    }
+
+    boolean runAll() throws Exception {
+        Log.initializeLog(System.out, System.err);
+        for (int scale : scales) {
+            SyntheticProject project = SyntheticProject.create(workDir, scale);
+            for (Benchmark b : benchmarks()) {
+                if (only == null || b.name().contains(only)) {
+                    measure(b, project);
+                }
+            }
+        }
+        if (saveFile != null) {
+            save();
+        }
+        return compareFile == null || compare();
+    }
+
+    void measure(Benchmark b, SyntheticProject project) throws Exception {
+        b.setup(project);
+        for (int i = 0; i < warmup; i++) {
+            b.reset();
+            b.run();
+        }
+        long total = 0, min = Long.MAX_VALUE, max = 0, allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            b.reset();
+            System.gc();
+            long alloc = Util.threadAllocatedBytes();
+            long start = System.nanoTime();
+            b.run();
+            long t = System.nanoTime()-start;
+            allocated += Util.threadAllocatedBytes()-alloc;
+            total += t;
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        b.tearDown();
+        long avg = total/iterations;
+        results.put(b.name()+" "+project.numSources, avg);
+        System.out.printf("%-30s %7d sources %10.2f ms/op (min %.2f, max %.2f) %8.2f MiB/op%n",
+                          b.name(), project.numSources, avg/1e6, min/1e6, max/1e6,
+                          allocated/(double)iterations/(1024*1024));
+    }
+
+    void save() throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(saveFile))) {
+            for (Map.Entry<String,Long> e : results.entrySet()) {
+                out.println(e.getKey()+" "+e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Compare the results with the results saved earlier.
+     * @return false if an operation became slower by more than the tolerance.
+     */
+    boolean compare() throws IOException {
+        boolean ok = true;
+        try (BufferedReader in = new BufferedReader(new FileReader(compareFile))) {
+            for (String l = in.readLine(); l != null; l = in.readLine()) {
+                int p = l.lastIndexOf(' ');
+                String key = l.substring(0, p);
+                long baseline = Long.parseLong(l.substring(p+1));
+                Long now = results.get(key);
+                if (now == null) {
+                    continue;
+                }
+                if (now > baseline*(100+tolerance)/100) {
+                    System.out.printf("REGRESSION %s: %.2f ms/op, was %.2f ms/op%n", key, now/1e6, baseline/1e6);
+                    ok = false;
+                }
+            }
+        }
+        return ok;
+    }
+}
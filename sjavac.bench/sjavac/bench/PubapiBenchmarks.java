@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package sjavac.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.sjavac.comp.Dependencies;
+
+/**
+ * Benchmarks of the public api extraction, done by the server after
+ * every compile. The sources are analyzed once by javac in the setup.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class PubapiBenchmarks {
+
+    static List<Benchmark> all() {
+        List<Benchmark> bs = new ArrayList<>();
+        bs.add(new Construct());
+        bs.add(new GetPublicApis());
+        return bs;
+    }
+
+    /**
+     * Analyze the sources of the project and return the classes.
+     */
+    static List<TypeElement> analyze(SyntheticProject project, JavacTaskImpl[] taskOut) throws Exception {
+        JavacTool tool = JavacTool.create();
+        StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null);
+        Iterable<? extends JavaFileObject> files = fm.getJavaFileObjectsFromFiles(project.sourceFiles());
+        JavacTaskImpl task = (JavacTaskImpl) tool.getTask(null, fm, null,
+                                                          Arrays.asList("-proc:none", "-implicit:none"),
+                                                          null, files);
+        List<TypeElement> classes = new ArrayList<>();
+        for (Element e : task.analyze()) {
+            if (e instanceof TypeElement) {
+                classes.add((TypeElement) e);
+            }
+        }
+        taskOut[0] = task;
+        return classes;
+    }
+
+    /**
+     * PubapiVisitor.construct of every class.
+     */
+    static class Construct extends Benchmark {
+        List<TypeElement> classes;
+
+        Construct() {
+            super("PubapiVisitor.construct");
+        }
+
+        public void setup(SyntheticProject project) throws Exception {
+            classes = analyze(project, new JavacTaskImpl[1]);
+        }
+
+        public void run() {
+            for (TypeElement e : classes) {
+                Dependencies.constructPubapi(e, null);
+            }
+        }
+
+        public void tearDown() {
+            classes = null;
+        }
+    }
+
+    /**
+     * Dependencies.getPublicApis, turning the pubapis of all classes
+     * into the pubapis of their packages.
+     */
+    static class GetPublicApis extends Benchmark {
+        Dependencies deps;
+
+        GetPublicApis() {
+            super("Dependencies.getPublicApis");
+        }
+
+        public void setup(SyntheticProject project) throws Exception {
+            JavacTaskImpl[] task = new JavacTaskImpl[1];
+            List<TypeElement> classes = analyze(project, task);
+            deps = Dependencies.instance(task[0].getContext());
+            for (TypeElement e : classes) {
+                deps.visitPubapiOfSource(e);
+            }
+        }
+
+        public void run() {
+            deps.getPublicApis();
+        }
+
+        public void tearDown() {
+            deps = null;
+        }
+    }
+}
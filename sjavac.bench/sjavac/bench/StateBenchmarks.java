@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package sjavac.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.tools.sjavac.JavacState;
+import com.sun.tools.sjavac.Module;
+import com.sun.tools.sjavac.Package;
+import com.sun.tools.sjavac.Source;
+import com.sun.tools.sjavac.Util;
+import com.sun.tools.sjavac.options.Options;
+import com.sun.tools.sjavac.server.CompilationResult;
+
+/**
+ * Benchmarks of the build state: loading and saving javac_state, scanning
+ * the source tree, propagating taint through the package dependencies and
+ * sending a compilation result between server and client.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class StateBenchmarks {
+
+    static List<Benchmark> all() {
+        List<Benchmark> bs = new ArrayList<>();
+        bs.add(new Load());
+        bs.add(new Save());
+        bs.add(new ScanRoot());
+        bs.add(new Taint());
+        bs.add(new SerializeResult());
+        return bs;
+    }
+
+    /**
+     * JavacState.load of an up to date javac_state.
+     */
+    static class Load extends Benchmark {
+        Options options;
+
+        Load() {
+            super("JavacState.load");
+        }
+
+        public void setup(SyntheticProject project) {
+            options = Options.parseArgs(project.args());
+        }
+
+        public void run() {
+            JavacState.load(options, System.out, System.err);
+        }
+    }
+
+    /**
+     * JavacState.save after all sources have been checked against the state.
+     */
+    static class Save extends Benchmark {
+        JavacState state;
+        String somePackage;
+
+        Save() {
+            super("JavacState.save");
+        }
+
+        public void setup(SyntheticProject project) {
+            state = project.loadState();
+            somePackage = ":"+SyntheticProject.packageName(0);
+        }
+
+        public void run() throws Exception {
+            state.save();
+        }
+
+        public void reset() {
+            // Save does nothing unless something has changed.
+            state.clearTaintedPackages();
+            state.taintPackage(somePackage, null);
+        }
+
+        public void tearDown() {
+            state = null;
+        }
+    }
+
+    /**
+     * Source.scanRoot of the source tree.
+     */
+    static class ScanRoot extends Benchmark {
+        File root;
+
+        ScanRoot() {
+            super("Source.scanRoot");
+        }
+
+        public void setup(SyntheticProject project) {
+            root = project.src.toFile();
+        }
+
+        public void run() throws Exception {
+            Map<String,Source> found = new HashMap<>();
+            Map<String,Module> modules = new HashMap<>();
+            Module current = new Module("", "");
+            modules.put("", current);
+            Source.scanRoot(root, Util.set(".java"), null, null, null, null,
+                            found, modules, current, false, false, false);
+        }
+    }
+
+    /**
+     * Propagate the change of every tenth package to the packages that depend on it.
+     */
+    static class Taint extends Benchmark {
+        JavacState state;
+        Set<String> changed = new HashSet<>();
+
+        Taint() {
+            super("JavacState.taint");
+        }
+
+        public void setup(SyntheticProject project) {
+            state = project.loadState();
+            changed.clear();
+            for (int i = 0; i < project.numPackages; i += 10) {
+                changed.add(":"+SyntheticProject.packageName(i));
+            }
+        }
+
+        public void run() {
+            for (String pkg : changed) {
+                state.taintPackage(pkg, null);
+            }
+            state.taintPackagesDependingOnChangedPackages(changed, Collections.<String>emptySet());
+        }
+
+        public void reset() {
+            state.clearTaintedPackages();
+        }
+
+        public void tearDown() {
+            state = null;
+        }
+    }
+
+    /**
+     * Write and read back a CompilationResult for all packages, as the
+     * server and client do after a compile.
+     */
+    static class SerializeResult extends Benchmark {
+        CompilationResult result;
+
+        SerializeResult() {
+            super("CompilationResult.serialize");
+        }
+
+        public void setup(SyntheticProject project) {
+            JavacState state = project.loadState();
+            result = new CompilationResult(0);
+            for (Package p : state.prev().packages().values()) {
+                Set<URI> artifacts = new HashSet<>();
+                for (File f : p.artifacts().values()) {
+                    artifacts.add(f.toURI());
+                }
+                result.packageArtifacts.put(p.name(), artifacts);
+                result.packageDependencies.put(p.name(), new HashSet<>(p.dependencies()));
+                result.packagePublicApis.put(p.name(), new ArrayList<>(p.pubapiForCompiledSources()));
+            }
+        }
+
+        public void run() throws Exception {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(result);
+            }
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                ois.readObject();
+            }
+        }
+
+        public void tearDown() {
+            result = null;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/* Contains sources copyright Fredrik Öhrström 2014, 
+ * licensed from Fredrik to you under the above license. */
+package sjavac.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.tools.sjavac.JavacState;
+import com.sun.tools.sjavac.Main;
+import com.sun.tools.sjavac.Module;
+import com.sun.tools.sjavac.Source;
+import com.sun.tools.sjavac.options.Options;
+import sjavac.test.util.ProjectGenerator;
+
+/**
+ * A generated project of a given number of sources, built once with sjavac
+ * so that it has a javac_state. The sources come from the ProjectGenerator
+ * of the incremental scenarios: every package has ten classes and depends
+ * on two packages with lower numbers, and every class has a richer api than
+ * the scenarios need, for the pubapi benchmarks.
+ *
+ *  <p><b>This is NOT part of any supported API.
+ *  If you write code that depends on this, you do so at your own risk.
+ *  This code and its internal interfaces are subject to change or
+ *  deletion without notice.</b>
+ */
+public class SyntheticProject {
+
+    final static int SOURCES_PER_PACKAGE = 10;
+
+    public final Path dir;
+    public final Path src;
+    public final Path bin;
+    public final int numSources;
+    public final int numPackages;
+
+    private SyntheticProject(Path dir, int numSources) {
+        this.dir = dir;
+        this.src = dir.resolve("src");
+        this.bin = dir.resolve("bin");
+        this.numPackages = (numSources+SOURCES_PER_PACKAGE-1)/SOURCES_PER_PACKAGE;
+        this.numSources = numPackages*SOURCES_PER_PACKAGE;
+    }
+
+    /**
+     * The project with numSources sources below workDir, generated and built
+     * unless an earlier run of the benchmarks left it there.
+     */
+    public static SyntheticProject create(Path workDir, int numSources) throws IOException {
+        SyntheticProject p = new SyntheticProject(workDir.resolve("p"+numSources).toAbsolutePath(), numSources);
+        if (!Files.exists(p.stateFile())) {
+            p.generate();
+            p.build();
+        }
+        return p;
+    }
+
+    public Path stateFile() {
+        return dir.resolve("bin_state").resolve("javac_state");
+    }
+
+    /**
+     * The command line the project was built with. The javac_state is only
+     * valid for the same command line.
+     */
+    public String[] args() {
+        return new String[] { src.toString(), "-d", bin.toString(),
+                              "-state-dir:"+dir.resolve("bin_state"),
+                              "-server:portfile="+dir.resolve("port")+",background=false" };
+    }
+
+    public static String packageName(int i) {
+        return ProjectGenerator.packageName(i);
+    }
+
+    void generate() throws IOException {
+        System.out.println("Generating "+numSources+" sources in "+dir);
+        new ProjectGenerator().packages(numPackages)
+                              .classesPerPackage(SOURCES_PER_PACKAGE)
+                              .fanOut(2)
+                              .richApi(true)
+                              .generate(src);
+    }
+
+    void build() throws IOException {
+        System.out.println("Building "+numSources+" sources, this is not measured");
+        long start = System.currentTimeMillis();
+        int rc = new Main().go(args(), System.out, System.err);
+        if (rc != 0) {
+            throw new IOException("Could not build the synthetic project in "+dir);
+        }
+        System.out.println("Built "+numSources+" sources in "+(System.currentTimeMillis()-start)+"ms");
+    }
+
+    /**
+     * Load the javac_state and check the sources against it, the way
+     * sjavac does before it decides what to compile.
+     */
+    public JavacState loadState() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        Options options = Options.parseArgs(args());
+        JavacState state = JavacState.load(options, out, err);
+        Map<String,Module> modules = new HashMap<>();
+        Module current = new Module("", "");
+        modules.put("", current);
+        Map<String,Source> sources = new HashMap<>();
+        Main.findSourceFiles(options.getSources(), Collections.singleton(".java"),
+                             sources, modules, current, false, false);
+        state.now().flattenPackagesSourcesAndArtifacts(modules);
+        state.setVisibleSources(sources);
+        state.checkSourceStatus(false);
+        state.findAllArtifacts();
+        return state;
+    }
+
+    /**
+     * All the sources of the project.
+     */
+    public Iterable<File> sourceFiles() {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < numPackages; i++) {
+            for (int j = 0; j < SOURCES_PER_PACKAGE; j++) {
+                files.add(src.resolve(packageName(i)).resolve("C"+j+".java").toFile());
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Tests that the idle timeout of the sjavac server adapts to the
+ *          build history, and that warm-up compiles are not part of it.
+ * @build Wrapper
+ * @run main Wrapper AdaptiveKeepalive
+ */
+import java.io.File;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+import com.sun.tools.sjavac.server.IdleResetSjavac;
+import com.sun.tools.sjavac.server.PublicApiResult;
+import com.sun.tools.sjavac.server.Sjavac;
+import com.sun.tools.sjavac.server.SjavacServer;
+import com.sun.tools.sjavac.server.SysInfo;
+import com.sun.tools.sjavac.server.Terminable;
+
+
+public class AdaptiveKeepalive {
+
+    final static long TEST_START = System.currentTimeMillis();
+    final static long IDLE_TIMEOUT = 500;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File("adaptive");
+        dir.mkdirs();
+        checkHistoryExtendsTimeout(dir);
+        checkTimeoutIsCapped(dir);
+        checkHistoryIsSaved(dir);
+        checkOldProjectsDropped(dir);
+        checkWarmupNotInHistory(dir);
+    }
+
+    // A project expected to build again in 3 seconds keeps the server alive
+    // for that long, plus a margin of half the gap.
+    static void checkHistoryExtendsTimeout(File dir) throws Exception {
+        File history = writeHistory(dir, "extend", "proj " + System.currentTimeMillis() + " 2000");
+        long start = System.currentTimeMillis();
+        AtomicLong timedOut = new AtomicLong(-1);
+        IdleResetSjavac service = newService(timedOut, 10000);
+        service.loadHistory(history);
+        long elapsed = awaitTimeout(timedOut, 10000) - start;
+        log("Timed out after " + elapsed + "ms with a build expected within 3000ms");
+        if (elapsed < 2500 || elapsed > 5000) {
+            throw new AssertionError("The timeout did not follow the build history: " + elapsed + "ms");
+        }
+        if (!service.hasTimedOut()) {
+            throw new AssertionError("The timeout was not recorded.");
+        }
+        service.shutdown();
+    }
+
+    // However late the next build is expected, the server gives up after
+    // the max idle timeout.
+    static void checkTimeoutIsCapped(File dir) throws Exception {
+        File history = writeHistory(dir, "capped", "proj " + System.currentTimeMillis() + " 100000");
+        long start = System.currentTimeMillis();
+        AtomicLong timedOut = new AtomicLong(-1);
+        IdleResetSjavac service = newService(timedOut, 1500);
+        service.loadHistory(history);
+        long elapsed = awaitTimeout(timedOut, 10000) - start;
+        log("Timed out after " + elapsed + "ms with a max idle timeout of 1500ms");
+        if (elapsed < 1200 || elapsed > 3000) {
+            throw new AssertionError("The timeout was not capped: " + elapsed + "ms");
+        }
+        service.shutdown();
+    }
+
+    // Builds are recorded per project, the build and chunk number are stripped.
+    static void checkHistoryIsSaved(File dir) throws Exception {
+        AtomicLong timedOut = new AtomicLong(-1);
+        IdleResetSjavac service = newService(timedOut, 10000);
+        compile(service, "proj-5e1f.0");
+        compile(service, "proj-5e1f.1");
+        compile(service, "proj-c03a.0");
+        File history = new File(dir, "saved.history");
+        service.saveHistory(history);
+        service.shutdown();
+        List<String> lines = Files.readAllLines(history.toPath());
+        log("Saved history " + lines);
+        if (lines.size() != 1 || !lines.get(0).startsWith("proj ")) {
+            throw new AssertionError("Expected a single project in the history: " + lines);
+        }
+    }
+
+    // A project not built for the max idle timeout is dropped from the
+    // history, otherwise the history only ever grows.
+    static void checkOldProjectsDropped(File dir) throws Exception {
+        long now = System.currentTimeMillis();
+        File old = writeHistory(dir, "old", "gone " + (now - 20000) + " 2000\n" +
+                                            "kept " + now + " 2000");
+        AtomicLong timedOut = new AtomicLong(-1);
+        IdleResetSjavac service = newService(timedOut, 10000);
+        service.loadHistory(old);
+        File history = new File(dir, "pruned.history");
+        service.saveHistory(history);
+        service.shutdown();
+        List<String> lines = Files.readAllLines(history.toPath());
+        log("Pruned history " + lines);
+        if (lines.size() != 1 || !lines.get(0).startsWith("kept ")) {
+            throw new AssertionError("Expected only the recent project in the history: " + lines);
+        }
+    }
+
+    // Warm-up compiles of a server must not be taken for a project, or the
+    // time between the warm-ups of prespawned servers becomes its build gap.
+    static void checkWarmupNotInHistory(File dir) throws Exception {
+        String portfile = new File(dir, "portfile").getAbsolutePath();
+        final SjavacServer server = new SjavacServer("portfile=" + portfile +
+                                                     ",logfile=" + portfile + "_log" +
+                                                     ",poolsize=1,keepalive=2,maxkeepalive=30,warmup=1",
+                                                     System.err);
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    server.startServer();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        t.join(60000);
+        if (t.isAlive()) {
+            throw new AssertionError("The server did not time out.");
+        }
+        String log = new String(Files.readAllBytes(new File(portfile + "_log").toPath()));
+        if (!log.contains("Warm-up round 1 of 1")) {
+            throw new AssertionError("No warm-up compile in the server log:\n" + log);
+        }
+        List<String> lines = Files.readAllLines(new File(portfile + ".history").toPath());
+        log("Server history " + lines);
+        for (String l : lines) {
+            if (l.startsWith("warmup ")) {
+                throw new AssertionError("The warm-up ended up in the build history: " + l);
+            }
+        }
+    }
+
+    static File writeHistory(File dir, String name, String line) throws Exception {
+        File f = new File(dir, name + ".history");
+        try (PrintWriter out = new PrintWriter(f)) {
+            out.println(line);
+        }
+        return f;
+    }
+
+    static IdleResetSjavac newService(final AtomicLong timedOut, long maxIdleTimeout) {
+        return new IdleResetSjavac(new NoopJavacService(),
+                                   new Terminable() {
+                                       public void shutdown(String msg) {
+                                           log("Timeout detected: " + msg);
+                                           timedOut.compareAndSet(-1, System.currentTimeMillis());
+                                       }
+                                   },
+                                   IDLE_TIMEOUT,
+                                   maxIdleTimeout);
+    }
+
+    static long awaitTimeout(AtomicLong timedOut, long maxWait) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWait;
+        while (timedOut.get() == -1) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timeout never occurred");
+            }
+            Thread.sleep(50);
+        }
+        return timedOut.get();
+    }
+
+    static void compile(Sjavac service, String invocationId) {
+        service.compile("n/a",
+                        invocationId,
+                        new String[0],
+                        Collections.<File>emptyList(),
+                        Collections.<URI>emptySet(),
+                        Collections.<URI>emptySet(),
+                        null);
+    }
+
+    private static void log(String msg) {
+        long logTime = System.currentTimeMillis() - TEST_START;
+        System.out.printf("After %5d ms: %s%n", logTime, msg);
+    }
+
+    private static class NoopJavacService implements Sjavac {
+        @Override
+        public SysInfo getSysInfo() {
+            return null;
+        }
+        @Override
+        public void shutdown() {
+        }
+        @Override
+        public CompilationResult compile(String protocolId,
+                                         String invocationId,
+                                         String[] args,
+                                         List<File> explicitSources,
+                                         Set<URI> sourcesToCompile,
+                                         Set<URI> visibleSources,
+                                         CompilationListener listener) {
+            return null;
+        }
+        @Override
+        public void cancel(String invocationId) {
+        }
+        @Override
+        public String serverSettings() {
+            return "";
+        }
+        @Override
+        public String getClassLoc(String c) {
+            return "";
+        }
+        @Override
+        public PublicApiResult getPublicApi(String c) {
+            return null;
+        }
+    }
+}
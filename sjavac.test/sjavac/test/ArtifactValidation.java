@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure an artifact that was modified or removed since the
+ *          previous build is rebuilt, and that the other artifacts are kept.
+ *
+ * @build Wrapper
+ * @run main Wrapper ArtifactValidation
+ */
+
+import static sjavac.test.util.BuildTestUtil.checkState;
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class ArtifactValidation {
+    public static void main(String... args) throws Exception {
+        ArtifactValidation test = new ArtifactValidation();
+        test.run();
+    }
+
+    void run() throws Exception {
+        write("src/a/A.java", "package a; public class A { }");
+        write("src/b/B.java", "package b; public class B { }");
+        write("src/c/C.java", "package c; public class C { }");
+        compile();
+        File modified = new File("bin/a/A.class");
+        File missing = new File("bin/b/B.class");
+        File untouched = new File("bin/c/C.class");
+        long untouchedTimestamp = untouched.lastModified();
+
+        // Someone else writes A.class and removes B.class.
+        write(modified.getPath(), "not a class");
+        Files.delete(missing.toPath());
+        String out = compile();
+        if (!out.contains("Removing " + modified.getAbsolutePath() + " since its timestamp does not match"))
+            error("the modified artifact was not removed:\n" + out);
+        if (!out.contains("Tainting a because " + modified.getAbsolutePath() + " is missing"))
+            error("the package of the modified artifact was not rebuilt:\n" + out);
+        if (!out.contains("Tainting b because " + missing.getAbsolutePath() + " is missing"))
+            error("the package of the missing artifact was not rebuilt:\n" + out);
+        if (out.contains("Tainting c "))
+            error("a package with valid artifacts was rebuilt:\n" + out);
+        for (File f : new File[] { modified, missing }) {
+            if (!f.exists() || f.length() < 100)
+                error(f + " was not rebuilt");
+        }
+        if (untouched.lastModified() != untouchedTimestamp)
+            error(untouched + " was rewritten");
+        checkState("bin/javac_state");
+
+        // The rebuilt artifacts are valid in the next build.
+        out = compile();
+        if (out.contains("Tainting a ") || out.contains("Tainting b "))
+            error("the rebuilt artifacts were not accepted:\n" + out);
+    }
+
+    String compile() throws Exception {
+        String[] args = { "src", "-d", "bin", "-state-dir:bin", "-log:debug",
+                          "-server:portfile=testserver,background=false" };
+        return BuildTestUtil.compile(args);
+    }
+}
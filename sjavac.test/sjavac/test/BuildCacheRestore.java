@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure packages compiled before are restored from the build cache
+ *          when their sources and the pubapis they depend upon are the same again.
+ *
+ * @build Wrapper
+ * @run main Wrapper BuildCacheRestore
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class BuildCacheRestore {
+    public static void main(String... args) throws Exception {
+        BuildCacheRestore test = new BuildCacheRestore();
+        test.run();
+    }
+
+    void run() throws Exception {
+        String b1 = "package b; public class B { public static final int VALUE = 1; }";
+        String b2 = "package b; public class B { public static final int VALUE = 2; public int y; }";
+        write("src/a/A.java", "package a; public class A { public int x = b.B.VALUE; }");
+        write("src/b/B.java", b1);
+
+        check(compile(), "Compiling 2 files");
+        write("src/b/B.java", b2);
+        check(compile(), "The pubapi of b has changed!");
+
+        // Switching back restores b, and then a compiled against the old b.
+        write("src/b/B.java", b1);
+        String out = compile();
+        check(out, "Restored 1 packages from the build cache.");
+        if (out.contains("Compiling"))
+            error("nothing should have been compiled: " + out);
+
+        // A clean build restores everything.
+        delete(Paths.get("bin"));
+        delete(Paths.get("bin_state"));
+        check(compile(), "Restored 2 packages from the build cache.");
+        if (!Files.exists(Paths.get("bin/a/A.class")) || !Files.exists(Paths.get("bin/b/B.class")))
+            error("classes were not restored");
+    }
+
+    String compile() throws Exception {
+        return BuildTestUtil.compile("src", "-d", "bin", "-cache-dir:cache",
+                                     "-server:portfile=testserver,background=false");
+    }
+
+    void check(String out, String expected) {
+        if (!out.contains(expected))
+            error("expected \"" + expected + "\" in: " + out);
+    }
+
+    void delete(Path dir) throws IOException {
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds)
+                    delete(p);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure queued and running compiles can be cancelled, also
+ *          when the cancel arrives before the compile has registered itself.
+ *
+ * @build Wrapper
+ * @run main Wrapper Cancellation
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.tools.sjavac.comp.PooledSjavac;
+import com.sun.tools.sjavac.comp.SjavacImpl;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+
+public class Cancellation {
+    public static void main(String... args) throws Exception {
+        Cancellation test = new Cancellation();
+        test.runningCompile();
+        test.queuedCompile();
+        test.startingCompile();
+        test.runningPooledCompile();
+        if (test.errors > 0)
+            throw new Exception(test.errors + " errors occurred");
+    }
+
+    /**
+     * Cancel a compile of ten sources as soon as the first source has been
+     * compiled. The remaining sources must not be compiled.
+     */
+    void runningCompile() throws Exception {
+        Set<URI> sources = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            String f = "src/p/A" + i + ".java";
+            writeFile(f, "package p; public class A" + i + " { }");
+            sources.add(new File(f).getAbsoluteFile().toURI());
+        }
+        new File("classes").mkdirs();
+
+        final SjavacImpl sjavac = new SjavacImpl();
+        final AtomicInteger compiled = new AtomicInteger();
+        CompilationListener listener = new CompilationListener() {
+            public void stdout(String line) {
+            }
+            public void stderr(String line) {
+                System.err.println(line);
+            }
+            public void sourceCompiled(URI source) {
+                compiled.incrementAndGet();
+                sjavac.cancel("running");
+            }
+        };
+        CompilationResult cr = sjavac.compile("n/a",
+                                              "running",
+                                              new String[] { "-d", "classes" },
+                                              Collections.<File>emptyList(),
+                                              sources,
+                                              sources,
+                                              listener);
+        if (cr.returnCode != CompilationResult.ERROR_CANCELLED)
+            error("running compile not cancelled, rc=" + cr.returnCode);
+        if (compiled.get() != 1)
+            error("expected 1 compiled source, got " + compiled.get());
+    }
+
+    /**
+     * Cancel a compile that waits for the only thread of the pool.
+     */
+    void queuedCompile() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SjavacImpl blocking = new SjavacImpl() {
+            @Override
+            protected CompilationResult compile(String protocolId,
+                                                String invocationId,
+                                                String[] args,
+                                                List<File> explicitSources,
+                                                Set<URI> sourcesToCompile,
+                                                Set<URI> visibleSources,
+                                                CompilationListener listener,
+                                                AtomicBoolean cancelled) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                return new CompilationResult(0);
+            }
+        };
+        final PooledSjavac pooled = new PooledSjavac(blocking, 1);
+        final CompilationResult[] first = new CompilationResult[1];
+        Thread t = new Thread() {
+            public void run() {
+                first[0] = pooled.compile("n/a", "first", new String[0],
+                                          Collections.<File>emptyList(),
+                                          Collections.<URI>emptySet(),
+                                          Collections.<URI>emptySet(),
+                                          null);
+            }
+        };
+        t.start();
+        started.await();
+
+        Thread canceller = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                }
+                pooled.cancel("queued");
+            }
+        };
+        canceller.start();
+        CompilationResult cr = pooled.compile("n/a", "queued", new String[0],
+                                              Collections.<File>emptyList(),
+                                              Collections.<URI>emptySet(),
+                                              Collections.<URI>emptySet(),
+                                              null);
+        if (cr.returnCode != CompilationResult.ERROR_CANCELLED)
+            error("queued compile not cancelled, rc=" + cr.returnCode);
+
+        release.countDown();
+        t.join();
+        if (first[0].returnCode != 0)
+            error("running compile affected by cancel, rc=" + first[0].returnCode);
+        pooled.shutdown();
+    }
+
+    /**
+     * Cancel a compile after its pool thread has picked it up, but before
+     * the compiler has registered it as running. It must not compile anything.
+     */
+    void startingCompile() throws Exception {
+        final Set<URI> sources = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            String f = "src/q/B" + i + ".java";
+            writeFile(f, "package q; public class B" + i + " { }");
+            sources.add(new File(f).getAbsoluteFile().toURI());
+        }
+        final AtomicInteger compiled = new AtomicInteger();
+        final CompilationResult[] inner = new CompilationResult[1];
+        final PooledSjavac[] pooled = new PooledSjavac[1];
+        SjavacImpl cancelFirst = new SjavacImpl() {
+            @Override
+            protected CompilationResult compile(String protocolId,
+                                                String invocationId,
+                                                String[] args,
+                                                List<File> explicitSources,
+                                                Set<URI> sourcesToCompile,
+                                                Set<URI> visibleSources,
+                                                CompilationListener listener,
+                                                AtomicBoolean cancelled) {
+                pooled[0].cancel(invocationId);
+                inner[0] = super.compile(protocolId, invocationId, args, explicitSources,
+                                         sourcesToCompile, visibleSources, listener,
+                                         cancelled);
+                return inner[0];
+            }
+        };
+        CompilationListener listener = new CompilationListener() {
+            public void stdout(String line) {
+            }
+            public void stderr(String line) {
+                System.err.println(line);
+            }
+            public void sourceCompiled(URI source) {
+                compiled.incrementAndGet();
+            }
+        };
+        pooled[0] = new PooledSjavac(cancelFirst, 1);
+        CompilationResult cr = pooled[0].compile("n/a", "starting",
+                                                 new String[] { "-d", "classes" },
+                                                 Collections.<File>emptyList(),
+                                                 sources,
+                                                 sources,
+                                                 listener);
+        pooled[0].shutdown();
+        if (cr.returnCode != CompilationResult.ERROR_CANCELLED)
+            error("starting compile not reported as cancelled, rc=" + cr.returnCode);
+        if (inner[0].returnCode != CompilationResult.ERROR_CANCELLED)
+            error("starting compile not cancelled, rc=" + inner[0].returnCode);
+        if (compiled.get() != 0)
+            error("expected no compiled sources, got " + compiled.get());
+    }
+
+    /**
+     * Cancel a compile that is running in the pool. The cancel must not
+     * return its result before the compiler has stopped, since the compiler
+     * might still write class files until then.
+     */
+    void runningPooledCompile() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        SjavacImpl slowToStop = new SjavacImpl() {
+            @Override
+            protected CompilationResult compile(String protocolId,
+                                                String invocationId,
+                                                String[] args,
+                                                List<File> explicitSources,
+                                                Set<URI> sourcesToCompile,
+                                                Set<URI> visibleSources,
+                                                CompilationListener listener,
+                                                AtomicBoolean cancelled) {
+                started.countDown();
+                try {
+                    while (!cancelled.get()) {
+                        Thread.sleep(10);
+                    }
+                    // Still writing the last class file.
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                }
+                stopped.set(true);
+                return new CompilationResult(CompilationResult.ERROR_CANCELLED);
+            }
+        };
+        final PooledSjavac pooled = new PooledSjavac(slowToStop, 1);
+        Thread canceller = new Thread() {
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                }
+                pooled.cancel("running");
+            }
+        };
+        canceller.start();
+        CompilationResult cr = pooled.compile("n/a", "running", new String[0],
+                                              Collections.<File>emptyList(),
+                                              Collections.<URI>emptySet(),
+                                              Collections.<URI>emptySet(),
+                                              null);
+        if (!stopped.get())
+            error("cancelled compile returned before the compiler stopped");
+        if (cr.returnCode != CompilationResult.ERROR_CANCELLED)
+            error("running pooled compile not cancelled, rc=" + cr.returnCode);
+        canceller.join();
+        pooled.shutdown();
+    }
+
+    void writeFile(String path, String body) throws IOException {
+        File f = new File(path);
+        if (f.getParentFile() != null)
+            f.getParentFile().mkdirs();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(body);
+        }
+    }
+
+    void error(String msg) {
+        System.err.println("Error: " + msg);
+        errors++;
+    }
+
+    int errors;
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure a copy that is up to date is not copied again, and
+ *          that -Xlink-copies makes the copies hard links to the sources.
+ *
+ * @build Wrapper
+ * @run main Wrapper CopyResources
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class CopyResources {
+    public static void main(String... args) throws Exception {
+        CopyResources test = new CopyResources();
+        test.checkSkip();
+        test.checkLinks();
+    }
+
+    final static String COPYING = "Copying a" + File.separator + "data.txt";
+
+    void checkSkip() throws Exception {
+        Path src = Paths.get("src/a/data.txt");
+        Path dest = Paths.get("bin/a/data.txt");
+        write("src/a/A.java", "package a; public class A { }");
+        write(src.toString(), "version 1");
+        String out = compile();
+        if (!out.contains(COPYING))
+            error("the resource was not copied:\n" + out);
+        if (Files.getLastModifiedTime(dest).toMillis() != Files.getLastModifiedTime(src).toMillis())
+            error("the copy did not keep the timestamp of its source");
+
+        // The package is recompiled, but its copy is up to date.
+        write("src/a/A.java", "package a; public class A { public int x; }");
+        out = compile();
+        if (out.contains(COPYING))
+            error("an up to date copy was copied again:\n" + out);
+
+        // A source of the same size, but with a new timestamp, is copied.
+        write(src.toString(), "version 2");
+        out = compile();
+        if (!out.contains(COPYING))
+            error("a modified resource was not copied:\n" + out);
+        if (!read(dest).equals(read(src)))
+            error("the copy does not have the new content");
+        if (Files.isSameFile(src, dest))
+            error("the copy is a link without -Xlink-copies");
+    }
+
+    void checkLinks() throws Exception {
+        Path src = Paths.get("src/a/data.txt");
+        Path dest = Paths.get("bin/a/data.txt");
+        String out = compile("-Xlink-copies");
+        if (!out.contains(COPYING))
+            error("the resource was not linked:\n" + out);
+        if (!Files.isSameFile(src, dest))
+            error("the copy is not a link to its source");
+
+        // A link is always up to date with its source.
+        write("src/a/A.java", "package a; public class A { public int y; }");
+        out = compile("-Xlink-copies");
+        if (out.contains(COPYING))
+            error("a link was copied again:\n" + out);
+
+        // As documented, editing the link in place edits the source.
+        Files.write(dest, Collections.singletonList("edited in bin"), Charset.defaultCharset(),
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        if (!read(src).equals("edited in bin"))
+            error("the link does not share the content of its source");
+
+        // A source replaced by an editor gets a new link.
+        Files.delete(src);
+        write(src.toString(), "version 3");
+        out = compile("-Xlink-copies");
+        if (!out.contains(COPYING) || !Files.isSameFile(src, dest))
+            error("the replaced source was not linked again:\n" + out);
+
+        // Without -Xlink-copies again, the link is replaced by a copy.
+        out = compile();
+        if (Files.isSameFile(src, dest))
+            error("the link was kept without -Xlink-copies:\n" + out);
+        if (!read(dest).equals("version 3"))
+            error("the copy does not have the content of its source");
+    }
+
+    String compile(String... extra) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(
+            "-copy", ".txt", "src", "-d", "bin", "-server:portfile=testserver,background=false"));
+        args.addAll(Arrays.asList(extra));
+        return BuildTestUtil.compile(args.toArray(new String[args.size()]));
+    }
+
+    String read(Path p) throws IOException {
+        return Files.readAllLines(p, Charset.defaultCharset()).get(0);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure compiles are spread over several sjavac servers.
+ * @build Wrapper
+ * @run main Wrapper DistributedExecution
+ */
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.tools.sjavac.client.DistributedSjavac;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+import com.sun.tools.sjavac.server.PublicApiResult;
+import com.sun.tools.sjavac.server.Sjavac;
+import com.sun.tools.sjavac.server.SysInfo;
+
+
+public class DistributedExecution {
+
+    final static int NUM_SERVERS = 3;
+    final static int COMPILES_PER_SERVER = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int numCompiles = NUM_SERVERS * COMPILES_PER_SERVER;
+        // All compiles are kept running until every compile has started.
+        final CountDownLatch allStarted = new CountDownLatch(numCompiles);
+        List<Sjavac> backends = new ArrayList<>();
+        final List<RecordingServer> servers = new ArrayList<>();
+        for (int i = 0; i < NUM_SERVERS; i++) {
+            RecordingServer s = new RecordingServer(allStarted);
+            servers.add(s);
+            backends.add(s);
+        }
+        final Sjavac service = new DistributedSjavac(backends);
+
+        SysInfo si = service.getSysInfo();
+        if (si.numCores != 2*NUM_SERVERS || si.maxMemory != 1024*NUM_SERVERS || si.numServers != NUM_SERVERS) {
+            throw new AssertionError("Wrong combined sysinfo: "+si.numCores+" cores, "+
+                                     si.maxMemory+" bytes, "+si.numServers+" servers");
+        }
+
+        Thread[] tasks = new Thread[numCompiles];
+        for (int i = 0; i < numCompiles; i++) {
+            final String invocationId = "test-"+i;
+            tasks[i] = new Thread() {
+                public void run() {
+                    service.compile("n/a",
+                                    invocationId,
+                                    new String[0],
+                                    Collections.<File>emptyList(),
+                                    Collections.<URI>emptySet(),
+                                    Collections.<URI>emptySet(),
+                                    null);
+                }
+            };
+            tasks[i].start();
+        }
+        allStarted.await();
+
+        // A cancel goes to the server running the compile.
+        service.cancel("test-0");
+        for (Thread t : tasks)
+            t.join();
+
+        int numCancels = 0;
+        for (RecordingServer s : servers) {
+            System.out.println("Server ran "+s.compiles+" compiles and got cancels "+s.cancels);
+            if (s.compiles.get() != COMPILES_PER_SERVER) {
+                throw new AssertionError("Compiles not spread evenly: "+s.compiles+
+                                         " instead of "+COMPILES_PER_SERVER);
+            }
+            if (!s.cancels.isEmpty() && !s.compiled.contains("test-0")) {
+                throw new AssertionError("Cancel sent to the wrong server.");
+            }
+            numCancels += s.cancels.size();
+        }
+        if (numCancels != 1) {
+            throw new AssertionError("Expected a single cancel, got "+numCancels);
+        }
+
+        service.shutdown();
+        for (RecordingServer s : servers) {
+            if (!s.isShutdown) {
+                throw new AssertionError("Server not shut down.");
+            }
+        }
+    }
+
+    static class RecordingServer implements Sjavac {
+
+        final CountDownLatch allStarted;
+        final AtomicInteger compiles = new AtomicInteger();
+        final List<String> compiled = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> cancels = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean isShutdown;
+
+        RecordingServer(CountDownLatch allStarted) {
+            this.allStarted = allStarted;
+        }
+
+        @Override
+        public CompilationResult compile(String protocolId,
+                                         String invocationId,
+                                         String[] args,
+                                         List<File> explicitSources,
+                                         Set<URI> sourcesToCompile,
+                                         Set<URI> visibleSources,
+                                         CompilationListener listener) {
+            compiles.incrementAndGet();
+            compiled.add(invocationId);
+            allStarted.countDown();
+            try {
+                allStarted.await();
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                throw new RuntimeException("Interrupted", ie);
+            }
+            return new CompilationResult(0);
+        }
+
+        @Override
+        public SysInfo getSysInfo() {
+            return new SysInfo(2, 1024);
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        @Override
+        public void cancel(String invocationId) {
+            cancels.add(invocationId);
+        }
+
+        @Override
+        public String serverSettings() {
+            return "";
+        }
+
+        @Override
+        public String getClassLoc(String c) {
+            return "";
+        }
+
+        @Override
+        public PublicApiResult getPublicApi(String c) {
+            return null;
+        }
+    }
+}
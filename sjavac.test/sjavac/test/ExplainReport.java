@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure -Xexplain reports why each package was recompiled,
+ *          following the taint from the root cause through changed pubapis.
+ *
+ * @build Wrapper
+ * @run main Wrapper ExplainReport
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.sun.tools.sjavac.Main;
+import com.sun.tools.sjavac.Explain;
+
+public class ExplainReport {
+    public static void main(String... args) throws Exception {
+        ExplainReport test = new ExplainReport();
+        test.run();
+    }
+
+    void run() throws Exception {
+        writeFile("src/a/A.java", "package a; public class A { }");
+        writeFile("src/b/B.java", "package b; public class B { public a.A a; }");
+        writeFile("src/c/C.java", "package c; public class C { public b.B b; }");
+        writeFile("src/d/D.java", "package d; public class D { }");
+        build();
+
+        // A changed pubapi of a recompiles b, but not c, since the pubapi of b is unchanged.
+        writeFile("src/a/A.java", "package a; public class A { public int x; }");
+        build();
+        String report = readFile(new File("bin_state", Explain.REPORT));
+        System.out.println(report);
+        String cause = "source " + new File("src/a/A.java").getPath();
+        expect(report, "Recompiled 2 packages in 2 waves");
+        expect(report, "1 sources  wave 1  a: " + cause + " was modified, pubapi changed");
+        expect(report, "wave 2  b via a (pubapi changed), root cause: " + cause);
+        if (report.contains("  c") || report.contains("  d"))
+            error("unchanged package c or d in report");
+        String pubapis = report.substring(report.indexOf("Packages whose pubapi changed"),
+                                          report.indexOf("Packages, in the order"));
+        if (!pubapis.contains("1 packages  a"))
+            error("expected a to have caused 1 recompile:\n" + pubapis);
+
+        if (errors > 0)
+            throw new Exception(errors + " errors occurred");
+    }
+
+    void expect(String report, String s) {
+        if (!report.contains(s))
+            error("report lacks " + s);
+    }
+
+    void build() {
+        String[] args = { "src", "-d", "bin", "-Xexplain", "-server:portfile=testserver,background=false" };
+        int rc = new Main().go(args, System.out, System.err);
+        if (rc != 0)
+            error("build failed with " + rc);
+    }
+
+    String readFile(File f) throws IOException {
+        if (!f.exists()) {
+            error(f + " was not written");
+            return "";
+        }
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    void writeFile(String path, String body) throws IOException {
+        File f = new File(path);
+        if (f.getParentFile() != null)
+            f.getParentFile().mkdirs();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(body);
+        }
+    }
+
+    void error(String msg) {
+        System.err.println("Error: " + msg);
+        errors++;
+    }
+
+    int errors;
+}
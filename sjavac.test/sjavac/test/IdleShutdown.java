@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.sun.tools.sjavac.server.CompilationListener;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.IdleResetSjavac;
 import com.sun.tools.sjavac.server.PublicApiResult;
@@ -90,7 +91,8 @@ public class IdleShutdown {
                         new String[0],
                         Collections.<File>emptyList(),
                         Collections.<URI>emptySet(),
-                        Collections.<URI>emptySet());
+                        Collections.<URI>emptySet(),
+                        null);
 
         Thread.sleep(TIMEOUT_MS - 1000);
         log("Compiling");
@@ -99,7 +101,8 @@ public class IdleShutdown {
                         new String[0],
                         Collections.<File>emptyList(),
                         Collections.<URI>emptySet(),
-                        Collections.<URI>emptySet());
+                        Collections.<URI>emptySet(),
+                        null);
 
         if (timeoutTimestamp.get() != -1)
             throw new AssertionError("Premature timeout detected.");
@@ -147,10 +150,14 @@ public class IdleShutdown {
                                          String[] args,
                                          List<File> explicitSources,
                                          Set<URI> sourcesToCompile,
-                                         Set<URI> visibleSources) {
+                                         Set<URI> visibleSources,
+                                         CompilationListener listener) {
             return null;
         }
         @Override
+        public void cancel(String invocationId) {
+        }
+        @Override
         public String serverSettings() {
             return "";
         }
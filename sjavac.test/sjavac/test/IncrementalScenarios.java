@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Runs the scripted edits of a generated project through sjavac and
+ *          checks that exactly the affected packages are recompiled.
+ *
+ * @build Wrapper
+ * @run main Wrapper IncrementalScenarios
+ */
+
+import java.nio.file.Paths;
+
+import sjavac.test.util.ProjectGenerator;
+import sjavac.test.util.ScenarioDriver;
+
+public class IncrementalScenarios {
+    public static void main(String... args) throws Exception {
+        ProjectGenerator gen = new ProjectGenerator()
+            .packages(12)
+            .classesPerPackage(2)
+            .fanOut(2)
+            .cycleSize(3)
+            .resourcesPerPackage(1)
+            .propertiesPerPackage(1)
+            .libraryEvery(4);
+        ScenarioDriver driver = new ScenarioDriver(gen, Paths.get("scenarios"));
+        driver.runScenarios();
+        // Packages compiled because of their dependencies keep their copies and translations.
+        driver.build("nochange-again");
+        driver.print(System.out);
+
+        int mid = gen.numPackages()/2;
+        int[] expected = {
+            gen.numPackages(),
+            0,
+            1,
+            1 + gen.dependents(0).size(),
+            1 + gen.dependents(mid).size(),
+            1 + gen.dependents(mid).size(),
+            gen.libraryUsers().size(),
+            0
+        };
+        if (driver.steps().size() != expected.length) {
+            throw new AssertionError("Expected "+expected.length+" steps, ran "+driver.steps().size());
+        }
+        for (int i = 0; i < expected.length; i++) {
+            ScenarioDriver.Step s = driver.steps().get(i);
+            if (s.rc != 0) {
+                System.out.print(s.output);
+                throw new AssertionError(s.name+" failed");
+            }
+            if (s.recompiledPackages != expected[i]) {
+                System.out.print(s.output);
+                throw new AssertionError(s.name+" recompiled "+s.recompiledPackages+
+                                         " packages, expected "+expected[i]);
+            }
+        }
+    }
+}
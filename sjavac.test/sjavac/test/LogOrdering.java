@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure the asynchronous log keeps the order of the messages
+ *          of every thread, writes a warning before it returns, and loses
+ *          nothing when sjavac returns or the jvm exits.
+ *
+ * @build Wrapper
+ * @run main Wrapper LogOrdering
+ */
+
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import com.sun.tools.sjavac.Log;
+import com.sun.tools.sjavac.Main;
+import sjavac.test.util.ThreadedLogger;
+
+public class LogOrdering {
+
+    final static String EXIT_MESSAGE = "written by the shutdown hook";
+
+    public static void main(String... args) throws Exception {
+        if (args.length > 0 && args[0].equals("exit")) {
+            // Only the shutdown hook can write the message.
+            Log.setLogLevel("info");
+            suspendLogWriter();
+            Log.info(EXIT_MESSAGE);
+            System.exit(0);
+        }
+        checkOrderAndCompleteness();
+        checkFlushAtExit();
+    }
+
+    static void checkOrderAndCompleteness() throws Exception {
+        write("src/a/A.java", "package a; public class A { }");
+        write("src/a/A.spam", "log a lot");
+        // The single stream sjavac logs to, both as out and as err.
+        PrintStream ps = ThreadedLogger.stream();
+        String[] args = { "-tr", ".spam=" + ThreadedLogger.class.getName(),
+                          "src", "-d", "bin", "-s", "gensrc", "-log:info",
+                          "-server:portfile=testserver,background=false" };
+        int rc = new Main().go(args, ps, ps);
+        if (rc != 0)
+            throw new AssertionError("sjavac failed:\n" + ThreadedLogger.written);
+        if (!ThreadedLogger.failures.isEmpty())
+            throw new AssertionError(ThreadedLogger.failures.get(0));
+        if (ThreadedLogger.fallbackWrites.get() == 0)
+            throw new AssertionError("the threads never wrote for the slow writer thread");
+
+        // Every message is there, once, and in the order its thread logged it.
+        int[] next = new int[ThreadedLogger.THREADS];
+        for (String line : ThreadedLogger.written.toString().split("\\r?\\n")) {
+            if (!line.startsWith("thread "))
+                continue;
+            String[] parts = line.split(" ");
+            int t = Integer.parseInt(parts[1]);
+            int k = Integer.parseInt(parts[3]);
+            if (k != next[t])
+                throw new AssertionError("thread " + t + " message " + next[t] + " expected, found: " + line);
+            String kind = ThreadedLogger.isWarning(k) ? "warn" : "info";
+            if (!parts[2].equals(kind))
+                throw new AssertionError("expected a " + kind + " message: " + line);
+            next[t]++;
+        }
+        for (int t = 0; t < ThreadedLogger.THREADS; t++) {
+            if (next[t] != ThreadedLogger.MESSAGES)
+                throw new AssertionError("thread " + t + " lost its messages from " + next[t] + " on");
+        }
+    }
+
+    static void checkFlushAtExit() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                               LogOrdering.class.getName(), "exit");
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[4096];
+        for (int n; (n = p.getInputStream().read(b)) != -1; ) {
+            out.write(b, 0, n);
+        }
+        p.waitFor();
+        if (!out.toString().contains(EXIT_MESSAGE))
+            throw new AssertionError("the queued message was lost at exit: " + out);
+    }
+
+    // Suspend the writer thread of the log while it is parked waiting for
+    // messages, not while it holds a lock that the shutdown hook needs.
+    @SuppressWarnings("deprecation")
+    static void suspendLogWriter() throws InterruptedException {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (!t.getName().equals("sjavac log writer"))
+                continue;
+            for (;;) {
+                t.suspend();
+                if (t.getState() == Thread.State.TIMED_WAITING)
+                    return;
+                t.resume();
+                Thread.sleep(1);
+            }
+        }
+        throw new AssertionError("no log writer thread");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure -Xmetrics writes a report and a trace of the build
+ *          phases and compile chunks into the state dir.
+ *
+ * @build Wrapper
+ * @run main Wrapper MetricsExport
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.sun.tools.sjavac.Main;
+import com.sun.tools.sjavac.Metrics;
+
+public class MetricsExport {
+    public static void main(String... args) throws Exception {
+        MetricsExport test = new MetricsExport();
+        test.run();
+    }
+
+    void run() throws Exception {
+        writeFile("src/a/A.java", "package a; public class A { }");
+        writeFile("src/b/B.java", "package b; public class B extends a.A { }");
+
+        build(false);
+        if (new File("bin_state", Metrics.REPORT).exists())
+            error("metrics written without -Xmetrics");
+
+        writeFile("src/b/B.java", "package b; public class B extends a.A { int x; }");
+        build(true);
+        String report = readFile(new File("bin_state", Metrics.REPORT));
+        for (String s : new String[] { "\"Loading javac_state\"", "\"Scanning sources\"",
+                                       "\"Tainting packages\"", "\"Compiling wave 1\"",
+                                       "\"Saving javac_state\"", "\"chunk\"",
+                                       "\"compiled sources\": 1", "\"recompiled packages\": 1" }) {
+            if (!report.contains(s))
+                error("report lacks " + s + ":\n" + report);
+        }
+        String trace = readFile(new File("bin_state", Metrics.TRACE));
+        if (!trace.contains("\"traceEvents\"") || !trace.contains("\"ph\": \"X\"") || !trace.contains("\"thread_name\""))
+            error("not a trace:\n" + trace);
+
+        if (errors > 0)
+            throw new Exception(errors + " errors occurred");
+    }
+
+    void build(boolean metrics) {
+        String[] args = metrics
+            ? new String[] { "src", "-d", "bin", "-Xmetrics", "-server:portfile=testserver,background=false" }
+            : new String[] { "src", "-d", "bin", "-server:portfile=testserver,background=false" };
+        int rc = new Main().go(args, System.out, System.err);
+        if (rc != 0)
+            error("build failed with " + rc);
+    }
+
+    String readFile(File f) throws IOException {
+        if (!f.exists()) {
+            error(f + " was not written");
+            return "";
+        }
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    void writeFile(String path, String body) throws IOException {
+        File f = new File(path);
+        if (f.getParentFile() != null)
+            f.getParentFile().mkdirs();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(body);
+        }
+    }
+
+    void error(String msg) {
+        System.err.println("Error: " + msg);
+        errors++;
+    }
+
+    int errors;
+}
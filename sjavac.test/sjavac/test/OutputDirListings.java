@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure the output dir listings stored in javac_state are only
+ *          reused while the dirs are unchanged, and that a javac_state
+ *          without listings is still loaded.
+ *
+ * @build Wrapper
+ * @run main Wrapper OutputDirListings
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class OutputDirListings {
+    public static void main(String... args) throws Exception {
+        OutputDirListings test = new OutputDirListings();
+        test.run();
+    }
+
+    final static Path STATE = Paths.get("bin/javac_state");
+
+    void run() throws Exception {
+        write("src/a/A.java", "package a; public class A { }");
+        write("src/b/B.java", "package b; public class B { }");
+        compile();
+        if (listings().isEmpty())
+            error("javac_state has no output dir listings");
+
+        // A javac_state written before the listings were stored.
+        List<String> old = new ArrayList<>();
+        for (String l : Files.readAllLines(STATE, Charset.defaultCharset())) {
+            if (!l.startsWith("O ") && !l.startsWith("# O "))
+                old.add(l);
+        }
+        Files.write(STATE, old, Charset.defaultCharset());
+
+        // Every dir is listed, and a class file that appeared since the
+        // previous build is found and removed.
+        File stray = new File("bin/a/Stray.class");
+        write(stray.getPath(), "not a class");
+        String out = compile();
+        if (!out.contains("reused 0 unchanged listings"))
+            error("listings were reused from a javac_state without them:\n" + out);
+        if (stray.exists())
+            error("the stray class file was not found without listings in javac_state:\n" + out);
+        if (out.contains("Compiling sources"))
+            error("the old javac_state was not used:\n" + out);
+
+        // Make the next build save javac_state with listings again.
+        write("src/b/B.java", "package b; public class B { public int x; }");
+        compile();
+        if (listings().isEmpty())
+            error("javac_state has no output dir listings after an incremental build");
+
+        // Unchanged dirs are not listed again.
+        out = compile();
+        if (out.contains("reused 0 unchanged listings"))
+            error("no listing was reused:\n" + out);
+
+        // But a dir whose listing changed since the previous build is.
+        write(stray.getPath(), "not a class");
+        out = compile();
+        if (stray.exists())
+            error("the stray class file was hidden by a stored listing:\n" + out);
+    }
+
+    List<String> listings() throws IOException {
+        List<String> ls = new ArrayList<>();
+        for (String l : Files.readAllLines(STATE, Charset.defaultCharset())) {
+            if (l.startsWith("O "))
+                ls.add(l);
+        }
+        return ls;
+    }
+
+    String compile() throws Exception {
+        String[] args = { "src", "-d", "bin", "-state-dir:bin", "-log:debug",
+                          "-server:portfile=testserver,background=false" };
+        return BuildTestUtil.compile(args);
+    }
+}
@@ -40,6 +40,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.tools.sjavac.comp.PooledSjavac;
+import com.sun.tools.sjavac.server.CompilationListener;
 import com.sun.tools.sjavac.server.CompilationResult;
 import com.sun.tools.sjavac.server.PublicApiResult;
 import com.sun.tools.sjavac.server.Sjavac;
@@ -80,7 +81,8 @@ public class PooledExecution {
                                         new String[0],
                                         Collections.<File>emptyList(),
                                         Collections.<URI>emptySet(),
-                                        Collections.<URI>emptySet());
+                                        Collections.<URI>emptySet(),
+                                        null);
                         tasksFinished.incrementAndGet();
                     }
                 };
@@ -127,7 +129,8 @@ public class PooledExecution {
                                              String[] args,
                                              List<File> explicitSources,
                                              Set<URI> sourcesToCompile,
-                                             Set<URI> visibleSources) {
+                                             Set<URI> visibleSources,
+                                             CompilationListener listener) {
                 leftToStart.countDown();
                 int numActiveRequests = activeRequests.incrementAndGet();
                 System.out.printf("Left to start: %2d / Currently active: %2d%n",
@@ -153,6 +156,10 @@ public class PooledExecution {
             public void shutdown() {
             }
 
+            @Override
+            public void cancel(String invocationId) {
+            }
+
             @Override
             public String serverSettings() {
                 return "";
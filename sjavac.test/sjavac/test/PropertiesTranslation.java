@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure a properties file that translates to the same java
+ *          source leaves the source as it is, and is not translated again
+ *          by the following builds.
+ *
+ * @build Wrapper
+ * @run main Wrapper PropertiesTranslation
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class PropertiesTranslation {
+    public static void main(String... args) throws Exception {
+        PropertiesTranslation test = new PropertiesTranslation();
+        test.run();
+    }
+
+    final static String UNCHANGED = "gave an unchanged Msgs.java";
+
+    void run() throws Exception {
+        File props = new File("src/a/Msgs.properties");
+        File generated = new File("gensrc/a/Msgs.java");
+        write("src/a/Msgs.properties", "greeting=hello");
+        write("src/a/A.java", "package a; public class A { }");
+        compile();
+        if (!generated.exists())
+            error("expected " + generated);
+
+        // A touched properties file is not translated again, its generated
+        // source keeps its timestamp.
+        long generatedModified = generated.lastModified();
+        props.setLastModified(System.currentTimeMillis());
+        String out = compile();
+        if (out.contains("Translating Msgs.properties"))
+            error("the touched properties file was translated again:\n" + out);
+
+        // A new comment gives the same source, which is not rewritten.
+        write("src/a/Msgs.properties", "# Greetings.\ngreeting=hello");
+        out = compile();
+        if (!out.contains(UNCHANGED))
+            error("the properties file was not translated again:\n" + out);
+        if (generated.lastModified() != generatedModified)
+            error("the unchanged source got a new timestamp");
+
+        // The package is recompiled, but the properties file is skipped.
+        write("src/a/A.java", "package a; public class A { public int x; }");
+        out = compile();
+        if (out.contains(UNCHANGED) || out.contains("Translating Msgs.properties"))
+            error("the properties file was translated again:\n" + out);
+        if (!out.contains("Compiling a(2)"))
+            error("package a was not recompiled:\n" + out);
+        if (generated.lastModified() != generatedModified)
+            error("the unchanged source got a new timestamp");
+    }
+
+    String compile() throws Exception {
+        String[] args = { "-tr", ".properties=com.sun.tools.sjavac.CompileProperties",
+                          "-s", "gensrc", "src", "-d", "bin", "-log:debug",
+                          "-server:portfile=testserver,background=false" };
+        return BuildTestUtil.compile(args);
+    }
+}
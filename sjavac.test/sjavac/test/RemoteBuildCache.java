@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure packages compiled by one build are sent to the remote
+ *          cache and restored from it by another build with an empty local cache,
+ *          also when sjavac runs from the command line and exits right after the build.
+ *          An entry with artifacts outside of the output dirs is refused.
+ *
+ * @build Wrapper
+ * @run main Wrapper RemoteBuildCache
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.tools.sjavac.BuildCache;
+
+import sjavac.test.util.CacheServer;
+import sjavac.test.util.ForkedSjavac;
+import sjavac.test.util.BuildTestUtil;
+
+public class RemoteBuildCache {
+    public static void main(String... args) throws Exception {
+        RemoteBuildCache test = new RemoteBuildCache();
+        test.run();
+    }
+
+    CacheServer server;
+
+    void run() throws Exception {
+        server = new CacheServer();
+        try {
+            write("src/a/A.java", "package a; public class A { public b.B b; public java.util.List<String> l; }");
+            write("src/b/B.java", "package b; public class B { public int x; }");
+
+            // The first host compiles and sends the packages in the background.
+            check(compile("cache1"), "Compiling 2 files");
+            long timeout = System.currentTimeMillis() + 20000;
+            while (server.size() < 2 && System.currentTimeMillis() < timeout)
+                Thread.sleep(100);
+            if (server.size() != 2)
+                error("expected 2 entries in the remote cache, found " + server.size());
+
+            // The second host has an empty local cache and fetches them instead of compiling.
+            delete(Paths.get("bin"));
+            delete(Paths.get("bin_state"));
+            String out = compile("cache2");
+            check(out, "Restored 2 packages from the build cache.");
+            if (out.contains("Compiling"))
+                error("nothing should have been compiled: " + out);
+            if (!Files.exists(Paths.get("bin/a/A.class")))
+                error("classes were not restored");
+
+            // From the command line, the jvm waits for the new package to be sent before it exits.
+            server.putDelayMillis = 2000;
+            write("src/c/C.java", "package c; public class C { public a.A a; }");
+            ForkedSjavac f = ForkedSjavac.run(new File("."), "src", "-d", "bin", "-cache-dir:cache2",
+                                              "-remote-cache:" + server.url(),
+                                              "-server:portfile=forkserver,background=false");
+            if (f.rc != 0)
+                error("forked compilation failed");
+            check(f.output, "Compiling c(1)");
+            if (server.size() != 3)
+                error("expected 3 entries in the remote cache when sjavac has exited, found " + server.size());
+        } finally {
+            server.stop();
+        }
+
+        checkArtifactNames();
+
+        // An unreachable remote cache does not break the build.
+        delete(Paths.get("bin"));
+        delete(Paths.get("bin_state"));
+        check(compile("cache3"), "Compiling 3 files");
+    }
+
+    /**
+     * An entry from a remote cache must not write outside of the output dirs.
+     */
+    void checkArtifactNames() throws Exception {
+        String key = "0123456789abcdef";
+        String evil = "P :evil\nB ../../evil.txt\n";
+        BuildCache cache = new BuildCache(Paths.get("evilcache"), "");
+
+        // Refused when it is fetched.
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(packed)) {
+            zip.putNextEntry(new ZipEntry("entry"));
+            zip.write(evil.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("b/x"));
+            zip.write(1);
+            zip.closeEntry();
+        }
+        try {
+            cache.unpack(key, "00ff", packed.toByteArray());
+            error("an entry with an artifact outside the bin dir was unpacked");
+        } catch (IOException e) {
+            System.out.println("Refused as expected: " + e.getMessage());
+        }
+        if (!cache.lookup(key).isEmpty())
+            error("the refused entry was stored");
+
+        // And refused when a tampered entry is restored.
+        write("evilcache/01/" + key + "/00ff/entry", evil);
+        write("evilcache/01/" + key + "/00ff/b/x", "x");
+        List<BuildCache.Entry> entries = cache.lookup(key);
+        if (entries.size() != 1)
+            error("expected the tampered entry, found " + entries.size());
+        try {
+            cache.restore(entries.get(0), new File("evilbin/bin"), null);
+            error("an artifact outside the bin dir was restored");
+        } catch (IOException e) {
+            System.out.println("Refused as expected: " + e.getMessage());
+        }
+        if (Files.exists(Paths.get("evil.txt")))
+            error("evil.txt was written outside of the bin dir");
+    }
+
+    String compile(String cacheDir) throws Exception {
+        return BuildTestUtil.compile("src", "-d", "bin", "-cache-dir:" + cacheDir,
+                                     "-remote-cache:" + server.url(),
+                                     "-server:portfile=testserver,background=false");
+    }
+
+    void check(String out, String expected) {
+        if (!out.contains(expected))
+            error("expected \"" + expected + "\" in: " + out);
+    }
+
+    void delete(Path dir) throws IOException {
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds)
+                    delete(p);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+}
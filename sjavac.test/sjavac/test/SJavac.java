@@ -109,6 +109,7 @@ public class SJavac {
         compileWithAtFile();
         testStateDir();
         testServerDir();
+        testSharedServer();
         testPermittedArtifact();
         incrementalCompileTestSourceRootChange();
         testCopy();
@@ -649,6 +650,54 @@ public class SJavac {
         delete(bar);
     }
 
+    /**
+     * Tests that two projects with -server:shared=true use the same server,
+     * with the port file etc in the host wide server dir.
+     * @throws Exception If test fails
+     */
+    void testSharedServer() throws Exception {
+        System.out.println("\nVerify that -server:shared=true works.");
+        System.out.println("----------------------------------------");
+
+        // Keep the host wide server dir inside the test dir.
+        Path tmp = defaultfs.getPath("tmp").toAbsolutePath();
+        if (!Files.exists(tmp)) Files.createDirectory(tmp);
+        String oldTmpDir = System.getProperty("java.io.tmpdir");
+        System.setProperty("java.io.tmpdir", tmp.toString());
+        Path shared = tmp.resolve("sjavac_"+System.getProperty("user.name"));
+
+        delete(gensrc);
+        delete(bin);
+        delete(bin2);
+        populate(gensrc,
+                 "alfa/omega/A.java",
+                 "package alfa.omega; public class A { }");
+        previous_bin_state = collectState(bin);
+        previous_bin2_state = collectState(bin2);
+
+        try {
+            compile("-server:shared=true", "-src", "gensrc", "-d", "bin", "-state-dir:bin");
+            compile("-server:shared=true", "-src", "gensrc", "-d", "bin2", "-state-dir:bin2");
+
+            verifyThatFilesHaveBeenAdded(previous_bin_state, collectState(bin),
+                                         "bin/alfa/omega/A.class",
+                                         "bin/javac_state");
+            verifyThatFilesHaveBeenAdded(previous_bin2_state, collectState(bin2),
+                                         "bin2/alfa/omega/A.class",
+                                         "bin2/javac_state");
+            if (!Files.exists(shared.resolve("javac_portfile"))) {
+                throw new Exception("Expected the port file in "+shared);
+            }
+            compile("-server:shared=true", "-state-dir:bin", "-stopserver");
+            waitForRemoval(shared.resolve("javac_portfile"));
+        } finally {
+            System.setProperty("java.io.tmpdir", oldTmpDir);
+        }
+        delete(bin);
+        delete(bin2);
+        delete(tmp);
+    }
+
     /**
      * Test white listing of external artifacts inside the destination dir.
      * @throws Exception If test fails
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure -server:jvms=2 spawns two server jvms that split the
+ *          cores and heap of the host, and that both compile chunks.
+ * @build Wrapper
+ * @run main Wrapper ServerJvms
+ */
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.tools.sjavac.Main;
+
+public class ServerJvms {
+
+    final static int JVMS = 2;
+
+    public static void main(String... args) throws Exception {
+        for (String p : new String[] { "a", "b", "c", "d" }) {
+            write("src/" + p + "/C.java", "package " + p + "; public class C { public int x; }");
+        }
+        File portfile = new File("server/portfile").getAbsoluteFile();
+        portfile.getParentFile().mkdirs();
+        String conf = "-server:portfile=" + portfile + ",keepalive=120,jvms=" + JVMS;
+
+        String out = sjavac(conf, "src", "-d", "bin", "-jj", "2", "-log:debug");
+        if (!out.contains("Compiling sources in 2 chunk(s)"))
+            throw new AssertionError("The build was not split in two chunks:\n" + out);
+        if (!out.contains(JVMS + " servers report"))
+            throw new AssertionError("The build did not see " + JVMS + " servers:\n" + out);
+
+        // One jvm per port file, with its share of the cores and heap.
+        int cores = Runtime.getRuntime().availableProcessors();
+        String poolsize = "poolsize=" + Math.max(1, (cores + JVMS - 1) / JVMS) + ",";
+        List<String> spawned = new ArrayList<>();
+        Matcher m = Pattern.compile("Spawning server: (.*)").matcher(out);
+        while (m.find()) {
+            spawned.add(m.group(1));
+        }
+        if (spawned.size() != JVMS)
+            throw new AssertionError("Expected " + JVMS + " spawned servers:\n" + out);
+        for (int i = 1; i <= JVMS; i++) {
+            String cmd = spawned.get(0).contains("portfile=" + portfile + "-" + i + ",")
+                       ? spawned.get(0) : spawned.get(1);
+            if (!cmd.contains("portfile=" + portfile + "-" + i + ","))
+                throw new AssertionError("No server spawned for port file " + i + ":\n" + spawned);
+            if (!cmd.contains(" -Xmx"))
+                throw new AssertionError("The heap was not split: " + cmd);
+            if (!cmd.contains(poolsize))
+                throw new AssertionError("The cores were not split, expected " + poolsize + " in " + cmd);
+        }
+
+        // Both servers have compiled when they are stopped.
+        sjavac(conf, "-stopserver", "-d", "bin");
+        for (int i = 1; i <= JVMS; i++) {
+            File log = new File(portfile + "-" + i + "_log");
+            String summary = awaitSummary(log);
+            System.out.println("Server " + i + ": " + summary);
+            if (summary.startsWith("compiled 0 "))
+                throw new AssertionError("Server " + i + " did not compile any chunk: " + summary);
+        }
+    }
+
+    // The compile totals a server writes to its log when it shuts down.
+    static String awaitSummary(File log) throws Exception {
+        Pattern p = Pattern.compile("(compiled \\d+ sources.*)");
+        long deadline = System.currentTimeMillis() + 60000;
+        while (System.currentTimeMillis() < deadline) {
+            if (log.exists()) {
+                Matcher m = p.matcher(new String(Files.readAllBytes(log.toPath())));
+                if (m.find())
+                    return m.group(1);
+            }
+            Thread.sleep(200);
+        }
+        throw new AssertionError("The server did not shut down, see " + log);
+    }
+
+    static String sjavac(String... args) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(buf);
+        int rc = new Main().go(args, ps, ps);
+        ps.flush();
+        if (rc != 0)
+            throw new AssertionError("sjavac failed:\n" + buf);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure a prespawning sjavac server that has served a build
+ *          starts a replacement when it times out, and that an unused
+ *          replacement times out without starting another one.
+ * @build Wrapper
+ * @run main Wrapper ServerRespawn
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import com.sun.tools.sjavac.Main;
+
+public class ServerRespawn {
+
+    final static long TEST_START = System.currentTimeMillis();
+
+    public static void main(String[] args) throws Exception {
+        File src = new File("src/a/A.java");
+        src.getParentFile().mkdirs();
+        try (PrintWriter out = new PrintWriter(src)) {
+            out.println("package a; public class A { }");
+        }
+        File portfile = new File("server/portfile").getAbsoluteFile();
+        portfile.getParentFile().mkdirs();
+        String conf = "-server:portfile=" + portfile +
+                      ",logfile=" + portfile + "_log" +
+                      ",stdouterrfile=" + portfile + "_outerr" +
+                      ",poolsize=1,keepalive=3,prespawn=true";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int rc = new Main().go(new String[] { "src", "-d", "bin", conf },
+                               new PrintStream(out), new PrintStream(err));
+        System.out.print(out);
+        System.out.print(err);
+        if (rc != 0) {
+            throw new AssertionError("Build failed: " + rc);
+        }
+        Long first = cookie(portfile);
+        if (first == null) {
+            throw new AssertionError("No server is running after the build.");
+        }
+        log("Build done, server " + first);
+
+        // The server times out and starts a replacement.
+        Long second = null;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (second == null && System.currentTimeMillis() < deadline) {
+            Long c = cookie(portfile);
+            if (c != null && !c.equals(first)) {
+                second = c;
+            }
+            Thread.sleep(50);
+        }
+        if (second == null) {
+            throw new AssertionError("The server was not respawned:\n" + outerr(portfile));
+        }
+        log("Respawned as server " + second);
+
+        // The replacement serves no compile, so it times out for good.
+        deadline = System.currentTimeMillis() + 30000;
+        while (cookie(portfile) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        if (cookie(portfile) != null) {
+            throw new AssertionError("The respawned server did not time out.");
+        }
+        log("Respawned server timed out");
+        Thread.sleep(5000);
+        if (cookie(portfile) != null) {
+            throw new AssertionError("An unused server was respawned:\n" + outerr(portfile));
+        }
+    }
+
+    /**
+     * The cookie of the server in the port file, or null if no server has
+     * published itself there.
+     */
+    static Long cookie(File portfile) throws IOException {
+        if (portfile.length() < 16) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(portfile))) {
+            if (in.readInt() != 0x1174) {
+                return null;
+            }
+            in.readInt();
+            return in.readLong();
+        } catch (IOException e) {
+            // Deleted or rewritten while reading.
+            return null;
+        }
+    }
+
+    static String outerr(File portfile) throws IOException {
+        File f = new File(portfile + "_outerr");
+        return f.exists() ? new String(Files.readAllBytes(f.toPath())) : "";
+    }
+
+    private static void log(String msg) {
+        long logTime = System.currentTimeMillis() - TEST_START;
+        System.out.printf("After %5d ms: %s%n", logTime, msg);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure the server statistics are published through JMX,
+ *          including the compiles queued in the pool.
+ *
+ * @build Wrapper
+ * @run main Wrapper ServerStatistics
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.tools.sjavac.comp.PooledSjavac;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+import com.sun.tools.sjavac.server.IdleResetSjavac;
+import com.sun.tools.sjavac.server.PublicApiResult;
+import com.sun.tools.sjavac.server.ServerStats;
+import com.sun.tools.sjavac.server.Sjavac;
+import com.sun.tools.sjavac.server.SysInfo;
+import com.sun.tools.sjavac.server.Terminable;
+
+public class ServerStatistics {
+
+    public static void main(String... args) throws Exception {
+        new ServerStatistics().run();
+    }
+
+    final int POOL_SIZE = 2;
+    final int NUM_REQUESTS = 5;
+
+    final CountDownLatch started = new CountDownLatch(POOL_SIZE);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    void run() throws Exception {
+        PooledSjavac pool = new PooledSjavac(new BlockingService(), POOL_SIZE);
+        IdleResetSjavac idle = new IdleResetSjavac(pool, new Terminable() {
+            public void shutdown(String quitMsg) {
+            }
+        }, 60000);
+        final Sjavac service = idle;
+        ServerStats stats = new ServerStats(pool, idle);
+        stats.register("statstest");
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.sun.tools.sjavac:type=Server,portfile=" +
+                                         ObjectName.quote("statstest"));
+        check(mbs, name, "PoolSize", 2);
+
+        Thread[] tasks = new Thread[NUM_REQUESTS];
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            final int n = i;
+            tasks[i] = new Thread() {
+                public void run() {
+                    Set<URI> sources = new HashSet<>();
+                    sources.add(URI.create("file:///src/p/A" + n + ".java"));
+                    sources.add(URI.create("file:///src/p/B" + n + ".java"));
+                    long start = System.currentTimeMillis();
+                    CompilationResult cr = service.compile("", "stats-" + n, new String[0],
+                                                           Collections.<File>emptyList(),
+                                                           sources, sources, null);
+                    ServerStats.recordCompile(sources.size(), System.currentTimeMillis() - start, cr);
+                }
+            };
+            tasks[i].start();
+        }
+
+        // The pool is full, the other compiles wait for it.
+        started.await();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (((Integer) mbs.getAttribute(name, "QueuedCompiles")) < NUM_REQUESTS - POOL_SIZE
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        check(mbs, name, "ActiveCompiles", POOL_SIZE);
+        check(mbs, name, "QueuedCompiles", NUM_REQUESTS - POOL_SIZE);
+        check(mbs, name, "IdleMillis", 0L);
+
+        release.countDown();
+        for (Thread t : tasks)
+            t.join();
+
+        check(mbs, name, "ActiveCompiles", 0);
+        check(mbs, name, "QueuedCompiles", 0);
+        check(mbs, name, "CompileRequests", (long) NUM_REQUESTS);
+        check(mbs, name, "CompiledSources", 2L * NUM_REQUESTS);
+        check(mbs, name, "WrittenClassFiles", (long) NUM_REQUESTS);
+        check(mbs, name, "UnchangedClassFileRatio", 1.0);
+        if ((Long) mbs.getAttribute(name, "HeapUsedBytes") <= 0)
+            throw new AssertionError("No heap usage reported");
+
+        stats.unregister();
+        if (mbs.isRegistered(name))
+            throw new AssertionError("Statistics still published after unregister");
+        service.shutdown();
+    }
+
+    void check(MBeanServer mbs, ObjectName name, String attribute, Object expected) throws Exception {
+        Object value = mbs.getAttribute(name, attribute);
+        System.out.println(attribute + " = " + value);
+        if (!expected.equals(value))
+            throw new AssertionError(attribute + " is " + value + ", expected " + expected);
+    }
+
+    private class BlockingService implements Sjavac {
+
+        @Override
+        public CompilationResult compile(String protocolId,
+                                         String invocationId,
+                                         String[] args,
+                                         List<File> explicitSources,
+                                         Set<URI> sourcesToCompile,
+                                         Set<URI> visibleSources,
+                                         CompilationListener listener) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                throw new RuntimeException("Interrupted", ie);
+            }
+            CompilationResult cr = new CompilationResult(0);
+            URI classFile = URI.create("file:///bin/p/" + invocationId + ".class");
+            cr.packageArtifacts.put(":p", Collections.singleton(classFile));
+            cr.unchangedArtifacts.add(classFile);
+            return cr;
+        }
+
+        @Override
+        public SysInfo getSysInfo() {
+            return null;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void cancel(String invocationId) {
+        }
+
+        @Override
+        public String serverSettings() {
+            return "";
+        }
+
+        @Override
+        public String getClassLoc(String c) {
+            return "";
+        }
+
+        @Override
+        public PublicApiResult getPublicApi(String c) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure a failed compile with -Xstage-output leaves the
+ *          class files of the previous build in bin.
+ *
+ * @build Wrapper
+ * @run main Wrapper StageOutput
+ */
+
+import static sjavac.test.util.BuildTestUtil.checkExists;
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class StageOutput {
+    public static void main(String... args) throws Exception {
+        StageOutput test = new StageOutput();
+        test.run();
+    }
+
+    void run() throws Exception {
+        write("src/a/A.java", "package a; public class A { public int x; }");
+        write("src/a/B.java", "package a; public class B { class Inner { } }");
+        write("src/b/C.java", "package b; public class C { public int y = new a.A().x; }");
+        compile(true);
+        byte[] a = read("bin/a/A.class");
+        byte[] b = read("bin/a/B.class");
+        byte[] c = read("bin/b/C.class");
+
+        // A syntax error, the old class files of the package are put back.
+        write("src/a/A.java", "package a; public class A { public int x; broken }");
+        write("src/a/B.java", "package a; public class B { }");
+        compile(false);
+        same("bin/a/A.class", a);
+        same("bin/a/B.class", b);
+        checkExists("bin/a/B$Inner.class");
+        same("bin/b/C.class", c);
+        noneMovedAside();
+
+        // The first wave succeeds and the second fails, only the packages
+        // of the failed wave get their old class files back.
+        write("src/a/A.java", "package a; public class A { public int z; }");
+        write("src/a/B.java", "package a; public class B { class Inner { } }");
+        compile(false);
+        if (Arrays.equals(read("bin/a/A.class"), a))
+            error("the class file of the successful wave was not written");
+        same("bin/b/C.class", c);
+        noneMovedAside();
+
+        // Once fixed, the build goes through.
+        write("src/b/C.java", "package b; public class C { public int y = new a.A().z; }");
+        compile(true);
+        if (Arrays.equals(read("bin/b/C.class"), c))
+            error("bin/b/C.class was not recompiled");
+    }
+
+    void compile(boolean expectSuccess) throws Exception {
+        BuildTestUtil.compile(expectSuccess, "src", "-d", "bin", "-Xstage-output",
+                              "-server:portfile=testserver,background=false");
+    }
+
+    void same(String file, byte[] expected) throws IOException {
+        checkExists(file);
+        if (!Arrays.equals(read(file), expected))
+            error(file + " is not the class file of the previous build");
+    }
+
+    void noneMovedAside() throws IOException {
+        for (String dir : new String[] { "bin/a", "bin/b" }) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(dir))) {
+                for (Path p : ds) {
+                    if (!p.toString().endsWith(".class"))
+                        error("left behind in bin: " + p);
+                }
+            }
+        }
+    }
+
+    byte[] read(String file) throws IOException {
+        return Files.readAllBytes(Paths.get(file));
+    }
+}
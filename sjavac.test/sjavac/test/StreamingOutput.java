@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure compiler output and progress are streamed to the listener
+ *          while compiling, and not repeated in the compilation result.
+ *
+ * @build Wrapper
+ * @run main Wrapper StreamingOutput
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.tools.sjavac.comp.SjavacImpl;
+import com.sun.tools.sjavac.server.CompilationListener;
+import com.sun.tools.sjavac.server.CompilationResult;
+
+public class StreamingOutput {
+    public static void main(String... args) throws Exception {
+        StreamingOutput test = new StreamingOutput();
+        test.run();
+    }
+
+    final List<String> stderr = new CopyOnWriteArrayList<>();
+    final List<URI> compiled = new CopyOnWriteArrayList<>();
+
+    final CompilationListener listener = new CompilationListener() {
+        public void stdout(String line) {
+        }
+        public void stderr(String line) {
+            stderr.add(line);
+        }
+        public void sourceCompiled(URI source) {
+            compiled.add(source);
+        }
+    };
+
+    void run() throws Exception {
+        writeFile("src/p/A.java", "package p; public class A { class Inner { } }");
+        writeFile("src/p/B.java", "package p; public class B extends A { }");
+        new File("classes").mkdirs();
+
+        CompilationResult cr = compile("src/p/A.java", "src/p/B.java");
+        if (cr.returnCode != 0)
+            error("compilation failed unexpectedly: " + stderr);
+        if (compiled.size() != 2)
+            error("expected progress for 2 sources, got " + compiled);
+
+        writeFile("src/p/C.java", "package p; public class C { Missing m; }");
+        stderr.clear();
+        compiled.clear();
+        cr = compile("src/p/C.java");
+        if (cr.returnCode == 0)
+            error("compilation succeeded unexpectedly");
+        if (stderr.isEmpty() || !stderr.get(0).contains("C.java"))
+            error("expected diagnostic for C.java, got " + stderr);
+        if (!cr.stderr.isEmpty())
+            error("streamed output repeated in result: " + cr.stderr);
+        if (!compiled.isEmpty())
+            error("unexpected progress for failed compile: " + compiled);
+
+        if (errors > 0)
+            throw new Exception(errors + " errors occurred");
+    }
+
+    CompilationResult compile(String... files) {
+        Set<URI> sources = new HashSet<>();
+        for (String f : files) {
+            sources.add(new File(f).getAbsoluteFile().toURI());
+        }
+        return new SjavacImpl().compile("n/a",
+                                        "streaming",
+                                        new String[] { "-d", "classes", "-sourcepath", "src" },
+                                        Collections.<File>emptyList(),
+                                        sources,
+                                        sources,
+                                        listener);
+    }
+
+    void writeFile(String path, String body) throws IOException {
+        File f = new File(path);
+        if (f.getParentFile() != null)
+            f.getParentFile().mkdirs();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(body);
+        }
+    }
+
+    void error(String msg) {
+        System.err.println("Error: " + msg);
+        errors++;
+    }
+
+    int errors;
+}
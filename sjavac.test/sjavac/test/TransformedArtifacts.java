@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure a package that is recompiled only because a package it
+ *          depends upon changed its public api keeps its copied resources and
+ *          its translated sources.
+ *
+ * @build Wrapper
+ * @run main Wrapper TransformedArtifacts
+ */
+
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class TransformedArtifacts {
+    public static void main(String... args) throws Exception {
+        TransformedArtifacts test = new TransformedArtifacts();
+        test.run();
+    }
+
+    final static String COPIED = "bin/a/data.txt";
+    final static String TRANSLATED = "gensrc/a/Msgs.java";
+
+    void run() throws Exception {
+        write("src/b/B.java", "package b; public class B { }");
+        write("src/a/A.java", "package a; public class A { public b.B dep; }");
+        write("src/a/data.txt", "some data");
+        write("src/a/Msgs.properties", "greeting=hello");
+        compile();
+        check(COPIED);
+        check(TRANSLATED);
+
+        // A new public member of b taints a in the second wave, a is
+        // neither copied nor translated in this build.
+        write("src/b/B.java", "package b; public class B { public int x; }");
+        String out = compile();
+        if (out.contains("Copying data.txt") || out.contains("Translating Msgs.properties"))
+            error("package a was copied or translated again:\n" + out);
+        if (!out.contains("Compiling a(2)"))
+            error("package a was not recompiled as a dependent:\n" + out);
+        check(COPIED);
+        check(TRANSLATED);
+
+        // And the next build finds everything in place.
+        out = compile();
+        if (out.contains("Compiling sources"))
+            error("a build without changes compiled:\n" + out);
+        check(COPIED);
+        check(TRANSLATED);
+    }
+
+    // The artifact is on disk and recorded in javac_state.
+    void check(String artifact) throws IOException {
+        File f = new File(artifact);
+        if (!f.exists())
+            error(artifact + " was removed");
+        String path = f.getAbsolutePath();
+        for (String line : Files.readAllLines(Paths.get("bin/javac_state"), Charset.defaultCharset())) {
+            if (line.startsWith("A " + path + " "))
+                return;
+        }
+        error(artifact + " is missing from javac_state");
+    }
+
+    String compile() throws Exception {
+        String[] args = { "-copy", ".txt",
+                          "-tr", ".properties=com.sun.tools.sjavac.CompileProperties",
+                          "-s", "gensrc", "src", "-d", "bin", "-state-dir:bin", "-log:debug",
+                          "-server:portfile=testserver,background=false" };
+        return BuildTestUtil.compile(args);
+    }
+}
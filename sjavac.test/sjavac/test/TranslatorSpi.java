@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure translators are found by name through the ServiceLoader
+ *          or by class name, and that a changed cache key forces a rebuild.
+ *          A touched source that gives the same output is skipped by the
+ *          following builds, and undeclared outputs are reported.
+ *
+ * @build Wrapper
+ * @run main Wrapper TranslatorSpi
+ */
+
+import static sjavac.test.util.BuildTestUtil.checkExists;
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.tools.sjavac.Translator;
+
+import sjavac.test.util.BuildTestUtil;
+import sjavac.test.util.ConstantsTranslator;
+
+public class TranslatorSpi {
+    public static void main(String... args) throws Exception {
+        TranslatorSpi test = new TranslatorSpi();
+        test.run();
+    }
+
+    final Path gensrc = Paths.get("gensrc");
+
+    void run() throws Exception {
+        write("src/p/Greetings.consts", "HELLO=hello");
+        write("src/q/Use.java", "package q; public class Use { String s = p.Greetings.HELLO; }");
+        write("src/p/Other.java", "package p; class Other { void m() { } }");
+
+        // The translator given by its class name.
+        compile("-tr", ".consts=sjavac.test.util.ConstantsTranslator");
+        checkExists("bin/p/Greetings.class");
+        checkExists("bin/q/Use.class");
+        if (!read(gensrc.resolve("p/Greetings.java")).contains("\"hello\""))
+            error("unexpected translation: " + read(gensrc.resolve("p/Greetings.java")));
+        long translated = Files.getLastModifiedTime(gensrc.resolve("p/Greetings.java")).toMillis();
+
+        // The same translator found by its name through the ServiceLoader.
+        // Its cache key is unchanged, thus nothing has to be rebuilt.
+        Path services = Paths.get("services/META-INF/services/" + Translator.class.getName());
+        Files.createDirectories(services.getParent());
+        Files.write(services, Arrays.asList(ConstantsTranslator.class.getName()), Charset.defaultCharset());
+        ClassLoader prev = Thread.currentThread().getContextClassLoader();
+        URL[] urls = { new File("services").toURI().toURL() };
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(urls, prev));
+        try {
+            compile("-tr", ".consts=constants");
+            if (Files.getLastModifiedTime(gensrc.resolve("p/Greetings.java")).toMillis() != translated)
+                error("translation was not up to date");
+
+            // A different cache key throws away the old state and translates again.
+            compile("-tr", ".consts=constants,upper");
+            if (!read(gensrc.resolve("p/Greetings.java")).contains("\"HELLO\""))
+                error("not translated again after the cache key changed");
+            checkExists("bin/q/Use.class");
+        } finally {
+            Thread.currentThread().setContextClassLoader(prev);
+        }
+
+        // A touched source with the same content is not translated again.
+        String tr = ".consts=sjavac.test.util.ConstantsTranslator,upper";
+        File consts = new File("src/p/Greetings.consts");
+        File generated = gensrc.resolve("p/Greetings.java").toFile();
+        long generatedModified = generated.lastModified();
+        consts.setLastModified(System.currentTimeMillis());
+        String out = compile("-tr", tr);
+        if (out.contains("Translating Greetings.consts"))
+            error("the touched source was translated again:\n" + out);
+
+        // A changed source that gives the same output leaves the output as it is.
+        write("src/p/Greetings.consts", "HELLO=hello\n# A comment.");
+        out = compile("-tr", tr);
+        if (!out.contains("gave an unchanged Greetings.java"))
+            error("the changed source was not translated again:\n" + out);
+        if (generated.lastModified() != generatedModified)
+            error("the unchanged output got a new timestamp");
+
+        // When its package is rebuilt, the source is skipped without translating it.
+        write("src/p/Other.java", "package p; class Other { void m() { int x = 1; } }");
+        out = compile("-tr", tr);
+        if (out.contains("Translating Greetings.consts"))
+            error("the up to date source was translated again:\n" + out);
+        checkExists("bin/p/Other.class");
+
+        // An output with another name than the declared one is reported.
+        out = compile(false, "-tr", ".consts=sjavac.test.util.ConstantsTranslator,rename");
+        if (!out.contains("undeclared outputs [Greetings_.java]"))
+            error("the undeclared output was not reported:\n" + out);
+    }
+
+    String compile(String... trArgs) throws Exception {
+        return compile(true, trArgs);
+    }
+
+    String compile(boolean expectSuccess, String... trArgs) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(trArgs));
+        args.addAll(Arrays.asList("-s", "gensrc", "src", "-d", "bin", "-state-dir:bin", "-log:debug",
+                                  "-server:portfile=testserver,background=false"));
+        return BuildTestUtil.compile(expectSuccess, args.toArray(new String[args.size()]));
+    }
+
+    String read(Path p) throws IOException {
+        return new String(Files.readAllBytes(p), Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package sjavac.test;
+/*
+ * @test
+ * @summary Makes sure -Xwrite-if-changed keeps the timestamps of class files
+ *          that are generated unchanged, and that javac_state agrees.
+ *
+ * @build Wrapper
+ * @run main Wrapper WriteIfChanged
+ */
+
+import static sjavac.test.util.BuildTestUtil.checkState;
+import static sjavac.test.util.BuildTestUtil.error;
+import static sjavac.test.util.BuildTestUtil.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import sjavac.test.util.BuildTestUtil;
+
+public class WriteIfChanged {
+    public static void main(String... args) throws Exception {
+        WriteIfChanged test = new WriteIfChanged();
+        test.run();
+    }
+
+    final static String[] CLASSES = { "bin/a/A.class", "bin/a/B.class", "bin/b/C.class" };
+
+    void run() throws Exception {
+        write("src/a/A.java", "package a; public class A { public int x() { return 1; } }");
+        write("src/a/B.java", "package a; public class B { }");
+        write("src/b/C.java", "package b; public class C { public a.A a; }");
+        compile();
+        Map<String,Long> first = timestamps();
+
+        // A touched source recompiles its package to the very same class files.
+        new File("src/a/A.java").setLastModified(System.currentTimeMillis());
+        String out = compile();
+        if (!out.contains("Compiling a(2)"))
+            error("package a was not recompiled:\n" + out);
+        if (!out.contains("Kept 2 class files"))
+            error("the class files were not reported as kept:\n" + out);
+        same(first, timestamps(), "bin/a/A.class", "bin/a/B.class", "bin/b/C.class");
+        checkState("bin/javac_state");
+        noneMovedAside();
+
+        // Only the class file whose bytes changed gets a new timestamp.
+        write("src/a/A.java", "package a; public class A { public int x() { return 2; } }");
+        out = compile();
+        Map<String,Long> second = timestamps();
+        same(first, second, "bin/a/B.class", "bin/b/C.class");
+        if (second.get("bin/a/A.class") <= first.get("bin/a/A.class"))
+            error("bin/a/A.class was not written");
+        checkState("bin/javac_state");
+        noneMovedAside();
+
+        // The state agrees with the kept timestamps, nothing is rebuilt.
+        out = compile();
+        if (out.contains("Compiling"))
+            error("unexpected recompile:\n" + out);
+        same(second, timestamps(), CLASSES);
+    }
+
+    String compile() throws Exception {
+        String[] args = { "src", "-d", "bin", "-state-dir:bin", "-Xwrite-if-changed",
+                          "-server:portfile=testserver,background=false" };
+        return BuildTestUtil.compile(args);
+    }
+
+    Map<String,Long> timestamps() {
+        Map<String,Long> ts = new HashMap<>();
+        for (String c : CLASSES) {
+            File f = new File(c);
+            if (!f.exists())
+                error("expected " + c);
+            ts.put(c, f.lastModified());
+        }
+        return ts;
+    }
+
+    void same(Map<String,Long> before, Map<String,Long> after, String... files) {
+        for (String f : files) {
+            if (!before.get(f).equals(after.get(f)))
+                error(f + " got a new timestamp");
+        }
+    }
+
+    void noneMovedAside() throws IOException {
+        for (String dir : new String[] { "bin/a", "bin/b" }) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(dir))) {
+                for (Path p : ds) {
+                    if (!p.toString().endsWith(".class"))
+                        error("left behind in bin: " + p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.sun.tools.sjavac.Main;
+
+
+public class BuildTestUtil {
+
+    // Runs sjavac in this jvm, echoes its output and returns it.
+    public static String compile(String... args) throws Exception {
+        return compile(true, args);
+    }
+
+    public static String compile(boolean expectSuccess, String... args) throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(buf);
+        int rc = new Main().go(args, ps, ps);
+        ps.flush();
+        System.out.print(buf);
+        if ((rc == 0) != expectSuccess)
+            error("compilation " + (expectSuccess ? "failed: " : "succeeded: ") + Arrays.asList(args));
+        // Get around second resolution timestamps.
+        Thread.sleep(1000);
+        return buf.toString();
+    }
+
+    public static void write(String file, String content) throws IOException {
+        Path p = Paths.get(file);
+        Files.createDirectories(p.getParent());
+        Files.write(p, Collections.singletonList(content), Charset.defaultCharset());
+    }
+
+    public static void checkExists(String file) {
+        if (!new File(file).exists())
+            error("expected " + file);
+    }
+
+    // The artifact timestamps recorded in the state file are those on disk.
+    public static void checkState(String stateFile) throws IOException {
+        for (String line : Files.readAllLines(Paths.get(stateFile), Charset.defaultCharset())) {
+            if (!line.startsWith("A "))
+                continue;
+            String[] parts = line.split(" ");
+            long onDisk = new File(parts[1]).lastModified();
+            if (Long.parseLong(parts[2]) != onDisk)
+                error("javac_state does not agree with " + parts[1] + ": " + line + " vs " + onDisk);
+        }
+    }
+
+    public static void error(String msg) {
+        throw new AssertionError(msg);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in memory stand-in for a remote build cache, speaking the protocol
+ * of com.sun.tools.sjavac.HttpRemoteCache.
+ */
+public class CacheServer {
+
+    final HttpServer server;
+    // Maps key/variant to the packed entry.
+    final Map<String,byte[]> entries = new TreeMap<>();
+    public final AtomicInteger gets = new AtomicInteger();
+    public final AtomicInteger puts = new AtomicInteger();
+    // A slow network, every PUT is stored only after this delay.
+    public volatile int putDelayMillis;
+
+    public CacheServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cache/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange t) throws IOException {
+                try {
+                    serve(t);
+                } finally {
+                    t.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/cache/";
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    void serve(HttpExchange t) throws IOException {
+        String path = t.getRequestURI().getPath().substring("/cache/".length());
+        if (t.getRequestMethod().equals("PUT")) {
+            byte[] packed = readAll(t.getRequestBody());
+            try {
+                Thread.sleep(putDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                entries.put(path, packed);
+            }
+            puts.incrementAndGet();
+            t.sendResponseHeaders(201, -1);
+            return;
+        }
+        gets.incrementAndGet();
+        byte[] response = null;
+        synchronized (this) {
+            if (path.endsWith("/")) {
+                StringBuilder variants = new StringBuilder();
+                for (String e : entries.keySet()) {
+                    if (e.startsWith(path)) {
+                        variants.append(e.substring(path.length())).append("\n");
+                    }
+                }
+                if (variants.length() > 0) {
+                    response = variants.toString().getBytes(StandardCharsets.UTF_8);
+                }
+            } else {
+                response = entries.get(path);
+            }
+        }
+        if (response == null) {
+            t.sendResponseHeaders(404, -1);
+            return;
+        }
+        t.sendResponseHeaders(200, response.length);
+        try (OutputStream out = t.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.tools.sjavac.Translator;
+
+/**
+ * Translates lines NAME=value into a class with string constants.
+ * The extra information "upper" turns the values into upper case, and
+ * "rename" makes it produce another file than the one it declares.
+ */
+public class ConstantsTranslator implements Translator {
+    boolean upper;
+    boolean rename;
+
+    public String name() {
+        return "constants";
+    }
+
+    public void setExtra(String extra) {
+        upper = "upper".equals(extra);
+        rename = "rename".equals(extra);
+    }
+
+    public String cacheKey() {
+        return "1" + (upper ? ",upper" : "") + (rename ? ",rename" : "");
+    }
+
+    public List<String> outputs(String pkgName, String srcName) {
+        return Collections.singletonList(className(srcName) + ".java");
+    }
+
+    public Map<String,byte[]> translate(String pkgName, File src) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(pkgName).append(";\n");
+        sb.append("public class ").append(className(src.getName())).append(" {\n");
+        for (String line : Files.readAllLines(src.toPath(), Charset.defaultCharset())) {
+            int eq = line.indexOf('=');
+            if (eq == -1)
+                continue;
+            String value = line.substring(eq + 1);
+            if (upper)
+                value = value.toUpperCase();
+            sb.append("    public static final String ").append(line.substring(0, eq))
+              .append(" = \"").append(value).append("\";\n");
+        }
+        sb.append("}\n");
+        Map<String,byte[]> result = new HashMap<>();
+        result.put(className(src.getName()) + (rename ? "_" : "") + ".java", sb.toString().getBytes(Charset.defaultCharset()));
+        return result;
+    }
+
+    private static String className(String srcName) {
+        return srcName.substring(0, srcName.lastIndexOf('.'));
+    }
+}
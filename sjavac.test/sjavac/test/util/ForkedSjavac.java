@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs sjavac in a separate jvm, as it runs from the command line, thus
+ * Main.main and its System.exit are part of the test.
+ */
+public class ForkedSjavac {
+
+    public int rc;
+    public String output;
+
+    /**
+     * Run sjavac with the given arguments in dir, and wait for the jvm to exit.
+     */
+    public static ForkedSjavac run(File dir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("com.sun.tools.sjavac.Main");
+        cmd.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(cmd).directory(dir).redirectErrorStream(true).start();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (InputStream in = p.getInputStream()) {
+            byte[] b = new byte[8192];
+            for (int n = in.read(b); n != -1; n = in.read(b)) {
+                buf.write(b, 0, n);
+            }
+        }
+        ForkedSjavac f = new ForkedSjavac();
+        f.rc = p.waitFor();
+        f.output = buf.toString();
+        System.out.print(f.output);
+        return f;
+    }
+}
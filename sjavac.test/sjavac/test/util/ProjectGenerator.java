@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a Java source tree of a configurable shape, and edits it the
+ * way developers do. Package i depends on fanOut packages with a lower
+ * number, picked at random from a fixed seed, thus the same settings
+ * always generate the same tree. With cycleSize > 1 consecutive packages
+ * also form cycles of that size. Every libraryEvery:th package uses the
+ * class lib.Lib from a jar on the classpath. The scenarios in
+ * IncrementalScenarios and the benchmarks in sjavac.bench both build
+ * their trees with it.
+ */
+public class ProjectGenerator {
+
+    int numPackages = 50;
+    int classesPerPackage = 5;
+    int fanOut = 3;
+    int cycleSize = 0;
+    int resourcesPerPackage = 0;
+    int propertiesPerPackage = 0;
+    int libraryEvery = 0;
+    boolean richApi = false;
+    long seed = 4711;
+
+    // The packages each package depends upon, by package number.
+    private List<Set<Integer>> deps;
+    // The number of body and api edits made to the first class of each package.
+    private int[] bodyEdits;
+    private int[] apiEdits;
+
+    public ProjectGenerator packages(int n) { numPackages = n; return this; }
+    public ProjectGenerator classesPerPackage(int n) { classesPerPackage = n; return this; }
+    public ProjectGenerator fanOut(int n) { fanOut = n; return this; }
+    public ProjectGenerator cycleSize(int n) { cycleSize = n; return this; }
+    public ProjectGenerator resourcesPerPackage(int n) { resourcesPerPackage = n; return this; }
+    public ProjectGenerator propertiesPerPackage(int n) { propertiesPerPackage = n; return this; }
+    public ProjectGenerator libraryEvery(int n) { libraryEvery = n; return this; }
+    public ProjectGenerator seed(long s) { seed = s; return this; }
+    public ProjectGenerator richApi(boolean b) { richApi = b; return this; }
+
+    public int numPackages() {
+        return numPackages;
+    }
+
+    public boolean usesResources() {
+        return resourcesPerPackage > 0;
+    }
+
+    public boolean usesProperties() {
+        return propertiesPerPackage > 0;
+    }
+
+    public boolean usesLibrary() {
+        return libraryEvery > 0;
+    }
+
+    public static String packageName(int i) {
+        return String.format("p%04d", i);
+    }
+
+    /**
+     * Write the sources below src.
+     */
+    public void generate(Path src) throws IOException {
+        Random random = new Random(seed);
+        deps = new ArrayList<>();
+        bodyEdits = new int[numPackages];
+        apiEdits = new int[numPackages];
+        for (int i = 0; i < numPackages; i++) {
+            Set<Integer> ds = new TreeSet<>();
+            for (int k = 0; k < fanOut && i > 0; k++) {
+                ds.add(random.nextInt(i));
+            }
+            if (cycleSize > 1) {
+                // The next package in the cycle, the last closes the cycle.
+                int first = i - i%cycleSize;
+                int next = (i+1)%cycleSize == 0 || i+1 == numPackages ? first : i+1;
+                if (next != i) {
+                    ds.add(next);
+                }
+            }
+            deps.add(ds);
+        }
+        for (int i = 0; i < numPackages; i++) {
+            Path dir = src.resolve(packageName(i));
+            Files.createDirectories(dir);
+            for (int j = 0; j < classesPerPackage; j++) {
+                writeClass(src, i, j);
+            }
+            for (int j = 0; j < resourcesPerPackage; j++) {
+                write(dir.resolve("res"+j+".xml"), "<resource package=\""+packageName(i)+"\" n=\""+j+"\"/>\n");
+            }
+            for (int j = 0; j < propertiesPerPackage; j++) {
+                write(dir.resolve("Msg"+j+".properties"), "name="+packageName(i)+"\ncount="+j+"\n");
+            }
+        }
+    }
+
+    /**
+     * The packages that depend directly on package i.
+     */
+    public Set<String> dependents(int i) {
+        Set<String> ds = new TreeSet<>();
+        for (int p = 0; p < numPackages; p++) {
+            if (deps.get(p).contains(i)) {
+                ds.add(packageName(p));
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * The packages that use the library.
+     */
+    public Set<String> libraryUsers() {
+        Set<String> us = new TreeSet<>();
+        for (int p = 0; p < numPackages; p++) {
+            if (usesLibrary(p)) {
+                us.add(packageName(p));
+            }
+        }
+        return us;
+    }
+
+    boolean usesLibrary(int i) {
+        return libraryEvery > 0 && i%libraryEvery == 0;
+    }
+
+    void writeClass(Path src, int i, int j) throws IOException {
+        StringBuilder b = new StringBuilder();
+        b.append("package ").append(packageName(i)).append(";\n\n");
+        b.append("public class C").append(j).append(" {\n");
+        b.append("    public static final String NAME = \"").append(packageName(i)).append(".C").append(j).append("\";\n");
+        if (j == 0) {
+            for (int d : deps.get(i)) {
+                b.append("    public ").append(packageName(d)).append(".C0 dep").append(d).append(";\n");
+            }
+            if (usesLibrary(i)) {
+                b.append("    public int lib() { return new lib.Lib().v1(); }\n");
+            }
+        } else {
+            b.append("    public C0 first;\n");
+        }
+        int edits = j == 0 ? bodyEdits[i] : 0;
+        b.append("    public int compute(int x) { return x * ").append(j+1).append(" + ").append(edits).append("; }\n");
+        if (richApi) {
+            // More of the api kinds that the pubapi has to describe.
+            b.append("    protected java.util.List<String> names;\n");
+            b.append("    public static class Inner implements Comparable<Inner> {\n");
+            b.append("        public int compareTo(Inner o) { return 0; }\n");
+            b.append("    }\n");
+        }
+        for (int k = 0; j == 0 && k < apiEdits[i]; k++) {
+            b.append("    public int added").append(k).append("() { return ").append(k).append("; }\n");
+        }
+        b.append("}\n");
+        write(src.resolve(packageName(i)).resolve("C"+j+".java"), b.toString());
+    }
+
+    /**
+     * Change a method body in package i, its public api stays the same.
+     */
+    public void editBody(Path src, int i) throws IOException {
+        bodyEdits[i]++;
+        writeClass(src, i, 0);
+    }
+
+    /**
+     * Add a public method to package i.
+     */
+    public void editApi(Path src, int i) throws IOException {
+        apiEdits[i]++;
+        writeClass(src, i, 0);
+    }
+
+    /**
+     * Add a public class to package i.
+     */
+    public void addClass(Path src, int i) throws IOException {
+        write(src.resolve(packageName(i)).resolve("Added.java"),
+              "package "+packageName(i)+";\n\npublic class Added {\n    public C0 first;\n}\n");
+    }
+
+    /**
+     * Remove the class added to package i.
+     */
+    public void removeClass(Path src, int i) throws IOException {
+        Files.delete(src.resolve(packageName(i)).resolve("Added.java"));
+    }
+
+    /**
+     * Write the jar with lib.Lib. Version 2 and later of the library have a
+     * larger public api than version 1.
+     */
+    public static void writeLibrary(Path jar, int version) throws IOException {
+        Path tmp = Files.createTempDirectory("sjavac_lib");
+        try {
+            StringBuilder b = new StringBuilder();
+            b.append("package lib;\n\npublic class Lib {\n");
+            b.append("    public int v1() { return 1; }\n");
+            for (int v = 2; v <= version; v++) {
+                b.append("    public int v").append(v).append("() { return ").append(v).append("; }\n");
+            }
+            b.append("}\n");
+            Path src = tmp.resolve("Lib.java");
+            write(src, b.toString());
+            JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+            int rc = javac.run(null, null, null, "-d", tmp.toString(), src.toString());
+            if (rc != 0) {
+                throw new IOException("Could not compile the library");
+            }
+            Files.createDirectories(jar.toAbsolutePath().getParent());
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+                out.putNextEntry(new JarEntry("lib/Lib.class"));
+                out.write(Files.readAllBytes(tmp.resolve("lib").resolve("Lib.class")));
+                out.closeEntry();
+            }
+        } finally {
+            for (Path p : Arrays.asList(tmp.resolve("lib").resolve("Lib.class"), tmp.resolve("lib"),
+                                        tmp.resolve("Lib.java"), tmp)) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
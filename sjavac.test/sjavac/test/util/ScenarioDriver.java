@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.tools.sjavac.Main;
+
+/**
+ * Runs scripted edits of a generated project through sjavac and records,
+ * for every step, the wall time, the time of each phase that sjavac reports
+ * with -log:timing and the number of recompiled packages. The results can
+ * be saved as a baseline, a later run fails if a step recompiles a
+ * different number of packages than the baseline, and warns if it
+ * became slower by more than the tolerance.
+ *
+ * <pre>
+ * java -cp sjavac.jar:$JAVA_HOME/lib/tools.jar sjavac.test.util.ScenarioDriver \
+ *      -packages 1000 -classes 10 -fanout 4 -cycles 5 -work /tmp/scenarios -save baseline.txt
+ * </pre>
+ */
+public class ScenarioDriver {
+
+    public static class Step {
+        public final String name;
+        public final int rc;
+        public final long wallMillis;
+        public final int recompiledPackages;
+        // Milliseconds per phase, in the order sjavac reported them.
+        public final Map<String,Long> phases;
+        public final String output;
+
+        Step(String name, int rc, long wallMillis, int recompiledPackages,
+             Map<String,Long> phases, String output) {
+            this.name = name;
+            this.rc = rc;
+            this.wallMillis = wallMillis;
+            this.recompiledPackages = recompiledPackages;
+            this.phases = phases;
+            this.output = output;
+        }
+    }
+
+    // "Compiling 12 files in 3 packages (p0001 to p0003)" when building from scratch
+    // or many packages, "Compiling p0001(4) p0002(4) " otherwise.
+    static final Pattern COMPILING_COUNT =
+        Pattern.compile("^Compiling \\d+ files (?:\\(with \\d+ dependents\\) )?in (\\d+) packages");
+    static final Pattern COMPILING_NAMES = Pattern.compile("^Compiling ((?:\\S+\\(\\d+\\) )+)");
+    static final Pattern TIMING = Pattern.compile("^(.*) took (\\d+)ms");
+
+    final ProjectGenerator generator;
+    final Path dir;
+    final Path src;
+    final Path jar;
+    final List<Step> steps = new ArrayList<>();
+    boolean verbose;
+    int libraryVersion = 1;
+
+    public ScenarioDriver(ProjectGenerator generator, Path dir) {
+        this.generator = generator;
+        this.dir = dir.toAbsolutePath();
+        this.src = this.dir.resolve("src");
+        this.jar = this.dir.resolve("lib.jar");
+    }
+
+    public void setVerbose(boolean v) {
+        verbose = v;
+    }
+
+    public List<Step> steps() {
+        return steps;
+    }
+
+    String[] args() {
+        List<String> args = new ArrayList<>();
+        args.add(src.toString());
+        args.add("-d");
+        args.add(dir.resolve("bin").toString());
+        args.add("-s");
+        args.add(dir.resolve("gensrc").toString());
+        args.add("-state-dir:"+dir.resolve("state"));
+        if (generator.usesResources()) {
+            args.add("-copy");
+            args.add(".xml");
+        }
+        if (generator.usesProperties()) {
+            args.add("-tr");
+            args.add(".properties=sjavac.transforms.CompileProperties");
+        }
+        if (generator.usesLibrary()) {
+            args.add("-cp");
+            args.add(jar.toString());
+        }
+        args.add("-log:timing");
+        args.add("-server:portfile="+dir.resolve("port")+",background=false");
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Run sjavac on the project and record the step.
+     */
+    public Step build(String name) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buf, true);
+        long start = System.currentTimeMillis();
+        int rc = new Main().go(args(), out, out);
+        long wall = System.currentTimeMillis()-start;
+        String output = buf.toString();
+        if (verbose) {
+            System.out.print(output);
+        }
+        int recompiled = 0;
+        Map<String,Long> phases = new LinkedHashMap<>();
+        for (String l : output.split("\n")) {
+            Matcher m = COMPILING_COUNT.matcher(l);
+            if (m.find()) {
+                recompiled += Integer.parseInt(m.group(1));
+                continue;
+            }
+            m = COMPILING_NAMES.matcher(l);
+            if (m.find()) {
+                recompiled += m.group(1).trim().split(" ").length;
+                continue;
+            }
+            m = TIMING.matcher(l);
+            if (m.find()) {
+                // Phases that report sizes are accounted together.
+                String phase = m.group(1).replaceAll("\\d+", "N");
+                Long t = phases.get(phase);
+                phases.put(phase, (t == null ? 0 : t)+Long.parseLong(m.group(2)));
+            }
+        }
+        Step s = new Step(name, rc, wall, recompiled, phases, output);
+        steps.add(s);
+        return s;
+    }
+
+    /**
+     * Generate the project and run the standard scenario: a clean build,
+     * a build without changes, a body edit, an api edit, adding and
+     * removing a class and swapping the library jar.
+     */
+    public void runScenarios() throws IOException {
+        int mid = generator.numPackages()/2;
+        generator.generate(src);
+        if (generator.usesLibrary()) {
+            ProjectGenerator.writeLibrary(jar, libraryVersion);
+        }
+        build("clean");
+        build("nochange");
+        generator.editBody(src, mid);
+        build("body-edit");
+        generator.editApi(src, 0);
+        build("api-edit");
+        generator.addClass(src, mid);
+        build("add-class");
+        generator.removeClass(src, mid);
+        build("remove-class");
+        if (generator.usesLibrary()) {
+            ProjectGenerator.writeLibrary(jar, ++libraryVersion);
+            build("jar-swap");
+        }
+    }
+
+    public void print(PrintStream out) {
+        for (Step s : steps) {
+            out.printf("%-14s rc %d %7dms %6d packages recompiled%n",
+                       s.name, s.rc, s.wallMillis, s.recompiledPackages);
+            for (Map.Entry<String,Long> p : s.phases.entrySet()) {
+                out.printf("    %-70s %7dms%n", p.getKey(), p.getValue());
+            }
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file.toFile()))) {
+            for (Step s : steps) {
+                out.println(s.name+" "+s.recompiledPackages+" "+s.wallMillis);
+            }
+        }
+    }
+
+    /**
+     * Compare the steps with a saved baseline.
+     * @return false if a step recompiled a different number of packages.
+     */
+    public boolean compare(Path file, int tolerance, PrintStream out) throws IOException {
+        boolean ok = true;
+        try (BufferedReader in = new BufferedReader(new FileReader(file.toFile()))) {
+            for (String l = in.readLine(); l != null; l = in.readLine()) {
+                String[] f = l.split(" ");
+                for (Step s : steps) {
+                    if (!s.name.equals(f[0])) continue;
+                    int packages = Integer.parseInt(f[1]);
+                    long wall = Long.parseLong(f[2]);
+                    if (s.recompiledPackages != packages) {
+                        out.println("REGRESSION "+s.name+": recompiled "+s.recompiledPackages+
+                                    " packages, the baseline recompiled "+packages);
+                        ok = false;
+                    }
+                    if (s.wallMillis > wall*(100+tolerance)/100) {
+                        out.println("SLOWER "+s.name+": "+s.wallMillis+"ms, the baseline took "+wall+"ms");
+                    }
+                }
+            }
+        }
+        return ok;
+    }
+
+    public static void main(String... args) throws IOException {
+        ProjectGenerator gen = new ProjectGenerator();
+        Path work = Paths.get(System.getProperty("java.io.tmpdir"), "sjavac_scenarios");
+        Path save = null, compare = null;
+        int tolerance = 20;
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-verbose")) {
+                verbose = true;
+                continue;
+            }
+            if (i+1 == args.length) {
+                usage();
+            }
+            String v = args[++i];
+            switch (a) {
+                case "-packages": gen.packages(Integer.parseInt(v)); break;
+                case "-classes": gen.classesPerPackage(Integer.parseInt(v)); break;
+                case "-fanout": gen.fanOut(Integer.parseInt(v)); break;
+                case "-cycles": gen.cycleSize(Integer.parseInt(v)); break;
+                case "-resources": gen.resourcesPerPackage(Integer.parseInt(v)); break;
+                case "-properties": gen.propertiesPerPackage(Integer.parseInt(v)); break;
+                case "-library": gen.libraryEvery(Integer.parseInt(v)); break;
+                case "-seed": gen.seed(Long.parseLong(v)); break;
+                case "-work": work = Paths.get(v); break;
+                case "-save": save = Paths.get(v); break;
+                case "-compare": compare = Paths.get(v); break;
+                case "-tolerance": tolerance = Integer.parseInt(v); break;
+                default: usage();
+            }
+        }
+        if (Files.exists(work)) {
+            System.err.println(work+" exists, remove it or give another -work dir.");
+            System.exit(2);
+        }
+        ScenarioDriver driver = new ScenarioDriver(gen, work);
+        driver.setVerbose(verbose);
+        driver.runScenarios();
+        driver.print(System.out);
+        if (save != null) {
+            driver.save(save);
+        }
+        if (compare != null && !driver.compare(compare, tolerance, System.out)) {
+            System.exit(1);
+        }
+    }
+
+    static void usage() {
+        System.err.println("Usage: sjavac.test.util.ScenarioDriver [-packages n] [-classes n] [-fanout n] [-cycles n]");
+        System.err.println("           [-resources n] [-properties n] [-library every_nth_package] [-seed n]");
+        System.err.println("           [-work dir] [-save file] [-compare file] [-tolerance percent] [-verbose]");
+        System.exit(2);
+    }
+}
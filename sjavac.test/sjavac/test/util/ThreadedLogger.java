@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sjavac.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.tools.sjavac.Log;
+import com.sun.tools.sjavac.Transformer;
+import com.sun.tools.sjavac.options.Options;
+import com.sun.tools.sjavac.server.Sjavac;
+
+/**
+ * A transformer that logs from several threads at once, with a warning
+ * now and then, and generates nothing. Thread t logs "thread t info k"
+ * or "thread t warn k" for k from 0 to MESSAGES-1. The first INFO_ONLY
+ * messages of every thread are info, together they are more than the
+ * writer thread of the log may fall behind with.
+ */
+public class ThreadedLogger implements Transformer {
+
+    public final static int THREADS = 4;
+    public final static int INFO_ONLY = 5000;
+    public final static int MESSAGES = 10000;
+    public final static int WARN_EVERY = 100;
+    // Log.MAX_PENDING, the messages the writer thread may fall behind with.
+    final static int MAX_PENDING = 16384;
+
+    // All that is logged to stream(). A warning must be in it when warn returns.
+    public static final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    // The writes that the logging threads did themselves, other than for a warning.
+    public static final AtomicInteger fallbackWrites = new AtomicInteger();
+    public static final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+    private static volatile boolean logging;
+    // Counted down when the writer thread has started its slow write.
+    private static CountDownLatch writerBusy;
+    // The info messages the threads are about to log.
+    private static final AtomicInteger numInfos = new AtomicInteger();
+    private static final ThreadLocal<Boolean> warning = new ThreadLocal<Boolean>() {
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    public static boolean isWarning(int k) {
+        return k >= INFO_ONLY && k % WARN_EVERY == WARN_EVERY - 1;
+    }
+
+    /**
+     * A stream that writes to written. The first write of the writer thread
+     * of the log, after the threads have been told to log, waits until the
+     * threads have logged more than it may fall behind with.
+     */
+    public static PrintStream stream() {
+        return new PrintStream(new OutputStream() {
+            public void write(int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(byte[] b, int off, int len) {
+                if (logging) {
+                    String name = Thread.currentThread().getName();
+                    if (name.equals("sjavac log writer") && writerBusy.getCount() > 0) {
+                        writerBusy.countDown();
+                        long deadline = System.currentTimeMillis() + 30000;
+                        try {
+                            while (numInfos.get() <= MAX_PENDING + THREADS
+                                   && System.currentTimeMillis() < deadline) {
+                                Thread.sleep(10);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } else if (name.startsWith("logger ") && !warning.get()) {
+                        fallbackWrites.incrementAndGet();
+                    }
+                }
+                written.write(b, off, len);
+            }
+        }, true);
+    }
+
+    public void setExtra(String e) {
+    }
+
+    public void setExtra(Options a) {
+    }
+
+    public boolean transform(Sjavac sjavac,
+                             Map<String,Set<URI>> pkgSrcs,
+                             Set<URI> visibleSources,
+                             Map<URI,Set<String>> visibleClasses,
+                             Map<String,Set<String>> oldPackageDependencies,
+                             URI destRoot,
+                             Map<String,Set<URI>> packageArtifacts,
+                             Map<String,Set<String>> packageDependencies,
+                             Map<String,List<String>> packagePublicApis,
+                             Map<String,Set<String>> classpathPackageDependencies,
+                             int debugLevel,
+                             boolean incremental,
+                             int numCores,
+                             PrintStream out,
+                             PrintStream err) {
+        writerBusy = new CountDownLatch(1);
+        logging = true;
+        Log.info("Starting " + THREADS + " threads that log");
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int t = i;
+            threads[i] = new Thread("logger " + t) {
+                public void run() {
+                    for (int k = 0; k < MESSAGES; k++) {
+                        if (!isWarning(k)) {
+                            numInfos.incrementAndGet();
+                            Log.info("thread " + t + " info " + k);
+                            continue;
+                        }
+                        String msg = "thread " + t + " warn " + k;
+                        warning.set(true);
+                        Log.warn(msg);
+                        warning.set(false);
+                        if (!written.toString().contains(msg)) {
+                            failures.add("not written when warn returned: " + msg);
+                        }
+                    }
+                }
+            };
+        }
+        try {
+            writerBusy.await();
+            for (Thread th : threads) {
+                th.start();
+            }
+            for (Thread th : threads) {
+                th.join();
+            }
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            logging = false;
+        }
+        for (String pkg : pkgSrcs.keySet()) {
+            packageArtifacts.put(pkg, Collections.<URI>emptySet());
+        }
+        return true;
+    }
+}
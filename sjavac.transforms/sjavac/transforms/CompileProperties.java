@@ -27,22 +27,16 @@
 package sjavac.transforms;
 
 import java.io.*;
-import java.net.URI;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Map;
 
-import com.sun.tools.sjavac.Transformer;
-import com.sun.tools.sjavac.Log;
-import com.sun.tools.sjavac.Util;
-import com.sun.tools.sjavac.options.Options;
-import com.sun.tools.sjavac.server.Sjavac;
+import com.sun.tools.sjavac.Translator;
 
 /**
  * Compile properties transform a properties file into a Java source file.
@@ -54,78 +48,35 @@ import com.sun.tools.sjavac.server.Sjavac;
  *  This code and its internal interfaces are subject to change or
  *  deletion without notice.</b>
  */
-public class CompileProperties implements Transformer {
+public class CompileProperties implements Translator {
     // Any extra information passed from the command line, for example if:
     // -tr .proppp=com.sun.tools.javac.smart.CompileProperties,sun.util.resources.LocaleNamesBundle
     // then extra will be "sun.util.resources.LocaleNamesBundle"
     String extra;
 
+    public String name() {
+        return "properties";
+    }
+
     public void setExtra(String e) {
         extra = e;
     }
 
-    public void setExtra(Options a) {
+    public String cacheKey() {
+        return "1," + superClass();
     }
 
-    public boolean transform(Sjavac sjavac,
-                             Map<String,Set<URI>> pkgSrcs,
-                             Set<URI>             visibleSrcs,
-                             Map<URI,Set<String>> visibleClasses,
-                             Map<String,Set<String>> oldPackageDependents,
-                             URI destRoot,
-                             Map<String,Set<URI>>    packageArtifacts,
-                             Map<String,Set<String>> packageDependencies,
-                             Map<String,List<String>> packagePublicApis,
-                             Map<String,Set<String>> classpathPackageDependencies,
-                             int debugLevel,
-                             boolean incremental,
-                             int numCores,
-                             PrintStream out,
-                             PrintStream err) {
-        boolean rc = true;
-        for (String pkgName : pkgSrcs.keySet()) {
-            String pkgNameF = Util.toFileSystemPath(pkgName);
-            for (URI u : pkgSrcs.get(pkgName)) {
-                File src = new File(u);
-                boolean r = compile(pkgName, pkgNameF, src, new File(destRoot), debugLevel,
-                                    packageArtifacts);
-                if (r == false) {
-                    rc = false;
-                }
-            }
-        }
-        return rc;
+    public List<String> outputs(String pkgName, String srcName) {
+        return Collections.singletonList(className(srcName) + ".java");
     }
 
-    boolean compile(String pkgName, String pkgNameF, File src, File destRoot, int debugLevel,
-                    Map<String,Set<URI>> packageArtifacts)
-    {
-        String superClass = "java.util.ListResourceBundle";
-
-        if (extra != null) {
-            superClass = extra;
-        }
+    public Map<String,byte[]> translate(String pkgName, File src) throws IOException {
         // Load the properties file.
         Properties p = new Properties();
-        try {
-            FileInputStream in = null;
-            Properties properties = new Properties();
-            try {
-                in = new FileInputStream(src);
-                properties.load(in);
-            }
-            finally {
-                if (in != null) in.close();
-            }
-        } catch (IOException e) {
-            Log.error("Error reading file "+src.getPath());
-            return false;
+        try (InputStream in = new FileInputStream(src)) {
+            p.load(in);
         }
 
-        // Calculate the name of the Java source file to be generated.
-        int dp = src.getName().lastIndexOf(".");
-        String classname = src.getName().substring(0,dp);
-
         // Sort the properties in increasing key order.
         List<String> sortedKeys = new ArrayList<>();
         for (Object key : p.keySet()) {
@@ -142,43 +93,26 @@ public class CompileProperties implements Transformer {
                         escape((String)p.get(key)) + "\" },\n");
         }
 
-        // Create dest file name. It is derived from the properties file name.
-        String destFilename = destRoot.getPath()+File.separator+pkgNameF+File.separator+classname+".java";
-        File dest = new File(destFilename);
+        String classname = className(src.getName());
+        String packageString = "package " + pkgName + ";\n\n";
 
-        // Make sure the dest directories exist.
-        if (!dest.getParentFile().isDirectory()) {
-            if (!dest.getParentFile().mkdirs()) {
-                Log.error("Could not create the directory "+dest.getParentFile().getPath());
-                return false;
-            }
-        }
-
-        Set<URI> as = packageArtifacts.get(pkgName);
-        if (as == null) {
-            as = new HashSet<>();
-            packageArtifacts.put(pkgName, as);
-        }
-        as.add(dest.toURI());
-
-        if (dest.exists() && dest.lastModified() > src.lastModified()) {
-            // A generated file exists, and its timestamp is newer than the source.
-            // Assume that we do not need to regenerate the dest file!
-            // Thus we are done.
-            return true;
-        }
+        MessageFormat format = new MessageFormat(FORMAT);
+        String content = format.format(new Object[] { packageString, classname, superClass(), data });
+        // The same encoding as an OutputStreamWriter without an explicit charset.
+        return Collections.singletonMap(classname + ".java", content.getBytes(Charset.defaultCharset()));
+    }
 
-        String packageString = "package " + pkgNameF.replace(File.separatorChar,'.') + ";\n\n";
+    private String superClass() {
+        return extra != null ? extra : "java.util.ListResourceBundle";
+    }
 
-        Log.info("Compiling property file "+pkgNameF+File.separator+src.getName());
-        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dest)))) {
-            MessageFormat format = new MessageFormat(FORMAT);
-            writer.write(format.format(new Object[] { packageString, classname, superClass, data }));
-        } catch ( IOException e ) {
-            Log.error("Could not write file "+dest.getPath());
-            return false;
-        }
-        return true;
+    /**
+     * The name of the Java source file to be generated is derived from
+     * the properties file name.
+     */
+    private static String className(String srcName) {
+        int dp = srcName.lastIndexOf(".");
+        return srcName.substring(0,dp);
     }
 
     private static final String FORMAT =